@@ -0,0 +1,140 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.json.simple.JSONValue;
+
+/**
+ * Builds the adapters and the Elasticsearch responses the benchmarks run against.
+ */
+public class BenchmarkSupport {
+
+    private static final String[] WORDS = {
+        "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel", "india", "juliet"
+    };
+
+    /**
+     * Starts a server that answers every request with an empty 200 response, which is enough for
+     * the health check made when an adapter is initialized.
+     */
+    public static HttpServer startHealthServer() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    /**
+     * Returns an adapter initialized with the default properties against the server.
+     */
+    public static ElasticsearchAdapter initializeAdapter(HttpServer server) throws Exception {
+        ElasticsearchAdapter adapter = new ElasticsearchAdapter();
+        Map<String,String> properties = new LinkedHashMap<String,String>();
+        properties.put(ElasticsearchAdapter.Properties.API_URL, "http://127.0.0.1:" + server.getAddress().getPort());
+        properties.put(ElasticsearchAdapter.Properties.METRICS_REGISTRY, ElasticsearchAdapter.METRICS_REGISTRY_NONE);
+        adapter.setProperties(properties);
+        adapter.initialize();
+        return adapter;
+    }
+
+    /**
+     * Returns the bridge fields of the search responses, a mix of top level and nested _source
+     * properties.
+     */
+    public static List<String> fieldNames(int fieldCount) {
+        List<String> fields = new ArrayList<String>();
+        for (int i = 0; i < fieldCount; i++) {
+            fields.add(i % 3 == 2 ? "_source.details.field" + i : "_source.field" + i);
+        }
+        return fields;
+    }
+
+    /**
+     * Builds a _search response in the shape Elasticsearch 7 returns, with the given number of
+     * hits each having the given number of fields. The content is generated from a fixed seed so
+     * every run reads the same response.
+     */
+    public static String searchResponse(int hitCount, int fieldCount) {
+        Random random = new Random(hitCount * 31L + fieldCount);
+        List<Object> hits = new ArrayList<Object>();
+        for (int i = 0; i < hitCount; i++) {
+            Map<String,Object> source = new LinkedHashMap<String,Object>();
+            Map<String,Object> details = new LinkedHashMap<String,Object>();
+            for (int f = 0; f < fieldCount; f++) {
+                Object value;
+                switch (f % 4) {
+                    case 0: value = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)]; break;
+                    case 1: value = random.nextInt(100000); break;
+                    case 2: value = random.nextDouble() * 1000; break;
+                    default: value = random.nextBoolean(); break;
+                }
+                if (f % 3 == 2) {
+                    details.put("field" + f, value);
+                } else {
+                    source.put("field" + f, value);
+                }
+            }
+            source.put("details", details);
+            Map<String,Object> hit = new LinkedHashMap<String,Object>();
+            hit.put("_index", "examples");
+            hit.put("_type", "_doc");
+            hit.put("_id", "doc-" + i);
+            hit.put("_score", 1.0);
+            hit.put("_source", source);
+            hits.add(hit);
+        }
+
+        Map<String,Object> total = new LinkedHashMap<String,Object>();
+        total.put("value", hitCount);
+        total.put("relation", "eq");
+        Map<String,Object> hitsObject = new LinkedHashMap<String,Object>();
+        hitsObject.put("total", total);
+        hitsObject.put("max_score", 1.0);
+        hitsObject.put("hits", hits);
+        Map<String,Object> shards = new LinkedHashMap<String,Object>();
+        shards.put("total", 1);
+        shards.put("successful", 1);
+        shards.put("skipped", 0);
+        shards.put("failed", 0);
+        Map<String,Object> response = new LinkedHashMap<String,Object>();
+        response.put("took", 12);
+        response.put("timed_out", false);
+        response.put("_shards", shards);
+        response.put("hits", hitsObject);
+        return JSONValue.toJSONString(response);
+    }
+
+    /**
+     * Re-encodes a JSON response in a binary format, the way Elasticsearch returns it when the
+     * format is requested.
+     */
+    public static byte[] encode(String json, ElasticsearchBinaryFormat format) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonParser parser = new JsonFactory().createParser(json);
+        JsonGenerator generator = format.getFactory().createGenerator(output);
+        parser.nextToken();
+        generator.copyCurrentStructure(parser);
+        generator.close();
+        parser.close();
+        return output.toByteArray();
+    }
+
+}
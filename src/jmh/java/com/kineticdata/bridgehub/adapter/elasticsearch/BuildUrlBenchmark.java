@@ -0,0 +1,75 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import com.sun.net.httpserver.HttpServer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building the request URL of a count or search, including the query parse, pagination, source
+ * includes, sort order and filter_path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BuildUrlBenchmark {
+
+    @Param({"search", "count"})
+    public String queryMethod;
+
+    @Param({"2", "10"})
+    public int fieldCount;
+
+    private HttpServer server;
+    private ElasticsearchAdapter adapter;
+    private BridgeRequest request;
+
+    @Setup
+    public void setup() throws Exception {
+        server = BenchmarkSupport.startHealthServer();
+        adapter = BenchmarkSupport.initializeAdapter(server);
+
+        Map<String,String> parameters = new LinkedHashMap<String,String>();
+        parameters.put("Username", "jane.doe@example.com");
+        parameters.put("Status", "Active");
+        Map<String,String> metadata = new LinkedHashMap<String,String>();
+        metadata.put("pageSize", "100");
+        metadata.put("offset", "200");
+        metadata.put("order", "<%=field[\"_source.field0\"]%>:ASC,<%=field[\"_source.field1\"]%>:DESC");
+
+        request = new BridgeRequest();
+        request.setStructure("examples");
+        request.setQuery("username:<%= parameter[\"Username\"] %> AND status:<%= parameter[\"Status\"] %>");
+        request.setParameters(parameters);
+        request.setMetadata(metadata);
+        request.setFields(BenchmarkSupport.fieldNames(fieldCount));
+    }
+
+    @TearDown
+    public void tearDown() {
+        adapter.destroy();
+        server.stop(0);
+    }
+
+    @Benchmark
+    public String buildUrl() throws Exception {
+        return adapter.buildUrl(queryMethod, ElasticsearchAdapter.JSON_ROOT_DEFAULT, request, new ElasticsearchQualificationParser());
+    }
+
+}
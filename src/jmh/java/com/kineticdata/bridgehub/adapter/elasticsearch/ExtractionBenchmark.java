@@ -0,0 +1,130 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.jayway.jsonpath.JsonPath;
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import com.kineticdata.bridgehub.adapter.Record;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading the records out of _search responses, with the standard parsing that reads the whole
+ * response into a document first and with the streaming parser, from JSON and from SMILE, and
+ * with lazy records that only read the values that are used, with columnar record lists and with
+ * the records extracted in parallel.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExtractionBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int hits;
+
+    @Param({"2", "10", "25"})
+    public int fieldCount;
+
+    private String response;
+    private byte[] smileResponse;
+    private ElasticsearchAdapter adapter;
+    private BridgeRequest request;
+    private ElasticsearchParallelExtractor extractor;
+
+    @Setup
+    public void setup() throws IOException {
+        response = BenchmarkSupport.searchResponse(hits, fieldCount);
+        smileResponse = BenchmarkSupport.encode(response, ElasticsearchBinaryFormat.SMILE);
+        // Building record lists does not use the connection, so the adapter is not initialized.
+        adapter = new ElasticsearchAdapter();
+        request = new BridgeRequest();
+        request.setStructure("examples");
+        request.setFields(BenchmarkSupport.fieldNames(fieldCount));
+        // Every page is extracted in parallel, using one thread per processor.
+        extractor = new ElasticsearchParallelExtractor(1, 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        extractor.shutdown();
+    }
+
+    @Benchmark
+    public RecordList standard() {
+        return adapter.buildRecordList(JsonPath.parse(response), ElasticsearchAdapter.JSON_ROOT_DEFAULT, request);
+    }
+
+    @Benchmark
+    public ElasticsearchResponseParser streaming() throws Exception {
+        return new ElasticsearchResponseParser(request.getFields()).parse(new StringReader(response));
+    }
+
+    /**
+     * Streaming with lazy records, where the consumer only reads the first record.
+     */
+    @Benchmark
+    public Object streamingLazy() throws Exception {
+        return new ElasticsearchResponseParser(request.getFields(), true).parse(new StringReader(response))
+            .getRecords().get(0).getValue(request.getFields().get(0));
+    }
+
+    /**
+     * Standard parsing with the records extracted on a fork-join pool.
+     */
+    @Benchmark
+    public List<Record> standardParallel() {
+        List<Object> documentHits = JsonPath.parse(response).read(ElasticsearchAdapter.JSON_ROOT_DEFAULT);
+        final List<ElasticsearchFieldReader> fieldReaders = ElasticsearchFieldReader.forFields(request.getFields());
+        return extractor.extract(documentHits, new ElasticsearchParallelExtractor.Extraction<Record>() {
+            @Override
+            public Record extract(Object hit) {
+                return new Record(ElasticsearchFieldReader.readAll(fieldReaders, hit));
+            }
+        });
+    }
+
+    /**
+     * Standard parsing with the records copied into a columnar record list.
+     */
+    @Benchmark
+    public RecordList columnar() {
+        List<Object> documentHits = JsonPath.parse(response).read(ElasticsearchAdapter.JSON_ROOT_DEFAULT);
+        ElasticsearchColumnarRecordList.Builder builder = new ElasticsearchColumnarRecordList.Builder(
+            ElasticsearchFieldReader.forFields(request.getFields()));
+        for (Object hit : documentHits) {
+            builder.addHit(hit);
+        }
+        return builder.build(request.getFields(), new LinkedHashMap<String,String>());
+    }
+
+    @Benchmark
+    public RecordList standardSmile() throws Exception {
+        Object document = ElasticsearchBinaryFormat.SMILE.read(new ByteArrayInputStream(smileResponse));
+        return adapter.buildRecordList(JsonPath.parse(document), ElasticsearchAdapter.JSON_ROOT_DEFAULT, request);
+    }
+
+    @Benchmark
+    public ElasticsearchResponseParser streamingSmile() throws Exception {
+        return ElasticsearchBinaryFormat.SMILE.parse(new ByteArrayInputStream(smileResponse),
+            new ElasticsearchResponseParser(request.getFields()));
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing bridge queries into Elasticsearch queries. A parser is made for every request, so every
+ * invocation parses with a new parser.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QualificationParserBenchmark {
+
+    @Param({"lucene", "elasticsearchDsl", "kineticDsl"})
+    public String queryStyle;
+
+    private String query;
+    private Map<String,String> parameters;
+
+    @Setup
+    public void setup() {
+        parameters = new LinkedHashMap<String,String>();
+        parameters.put("Username", "jane.doe@example.com");
+        parameters.put("Status", "Active (Pending)");
+        parameters.put("Team", "Platform Engineering");
+
+        if ("lucene".equals(queryStyle)) {
+            query = "username:<%= parameter[\"Username\"] %> AND status:<%= parameter[\"Status\"] %>"
+                + " AND team:<%= parameter[\"Team\"] %>";
+        } else if ("elasticsearchDsl".equals(queryStyle)) {
+            query = "{\"type\":\"Elasticsearch DSL\",\"query\":\"{\\\"query\\\":{\\\"bool\\\":{\\\"must\\\":["
+                + "{\\\"term\\\":{\\\"username\\\":\\\"<%= parameter['Username'] %>\\\"}},"
+                + "{\\\"term\\\":{\\\"status\\\":\\\"<%= parameter['Status'] %>\\\"}},"
+                + "{\\\"term\\\":{\\\"team\\\":\\\"<%= parameter['Team'] %>\\\"}}]}}}\"}";
+        } else {
+            query = "{\"type\":\"Kinetic DSL\",\"query\":\"{"
+                + "\\\"username\\\":{\\\"value\\\":\\\"<%= parameter['Username'] %>\\\"},"
+                + "\\\"status\\\":{\\\"value\\\":\\\"<%= parameter['Status'] %>\\\"},"
+                + "\\\"team\\\":{\\\"value\\\":\\\"<%= parameter['Team'] %>\\\",\\\"matcher\\\":\\\"like\\\"}}\"}";
+        }
+    }
+
+    @Benchmark
+    public String parse() throws Exception {
+        return new ElasticsearchQualificationParser().parse(query, parameters);
+    }
+
+    @Benchmark
+    public String encodeParameterPlain() {
+        return new ElasticsearchQualificationParser().encodeParameter("Team", "Platform Engineering");
+    }
+
+    @Benchmark
+    public String encodeParameterReserved() {
+        return new ElasticsearchQualificationParser().encodeParameter("Status", "(Active && Pending) OR [Closed]: a/b*");
+    }
+
+}
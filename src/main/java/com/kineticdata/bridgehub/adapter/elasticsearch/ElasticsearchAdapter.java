@@ -1,39 +1,100 @@
 package com.kineticdata.bridgehub.adapter.elasticsearch;
 
-import com.jayway.jsonpath.InvalidPathException;
 import com.jayway.jsonpath.DocumentContext;
+import com.kineticdata.bridgehub.helpers.http.HttpDeleteWithEntity;
 import com.kineticdata.bridgehub.helpers.http.HttpGetWithEntity;
 import com.kineticdata.bridgehub.adapter.BridgeAdapter;
 import com.kineticdata.bridgehub.adapter.BridgeError;
 import com.kineticdata.bridgehub.adapter.BridgeRequest;
 import com.kineticdata.bridgehub.adapter.BridgeUtils;
 import com.kineticdata.bridgehub.adapter.Count;
+import com.kineticdata.bridgehub.adapter.DisposableAdapter;
 import com.kineticdata.bridgehub.adapter.Record;
 import com.kineticdata.bridgehub.adapter.RecordList;
 import com.kineticdata.commons.v1.config.ConfigurableProperty;
 import com.kineticdata.commons.v1.config.ConfigurablePropertyMap;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
+import java.net.UnknownHostException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.entity.ByteArrayEntity;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.ParseException;
 import org.slf4j.LoggerFactory;
 import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.PathNotFoundException;
 
-public class ElasticsearchAdapter implements BridgeAdapter {
+public class ElasticsearchAdapter implements BridgeAdapter, DisposableAdapter {
     /*----------------------------------------------------------------------------------------------
      * PROPERTIES
      *--------------------------------------------------------------------------------------------*/
@@ -41,6 +102,28 @@ public class ElasticsearchAdapter implements BridgeAdapter {
     /** Defines the adapter display name */
     public static final String NAME = "Elasticsearch Bridge";
     public static final String JSON_ROOT_DEFAULT = "$.hits.hits";
+    // JSON root paths made only of property names and array indexes, which can be sent as a filter_path.
+    private static final Pattern FILTERABLE_ROOT = Pattern.compile("^\\$(\\.[A-Za-z0-9_\\-]+(\\[(\\*|\\d+)\\])?)+$");
+    public static final String RESPONSE_PARSING_STANDARD = "Standard";
+    public static final String RESPONSE_PARSING_STREAMING = "Streaming";
+    public static final String RESPONSE_FORMAT_JSON = "JSON";
+    public static final String RESPONSE_FORMAT_SMILE = "SMILE";
+    public static final String RESPONSE_FORMAT_CBOR = "CBOR";
+    /** How long Elasticsearch keeps a point in time open between pages of a search_after search. */
+    public static final String POINT_IN_TIME_KEEP_ALIVE = "1m";
+    /** How long Elasticsearch keeps a scroll context open between batches of an export. */
+    public static final String SCROLL_KEEP_ALIVE = "1m";
+    public static final String QUERY_EXECUTION_BLOCKING = "Blocking";
+    public static final String QUERY_EXECUTION_ASYNCHRONOUS = "Asynchronous";
+    public static final String COUNT_METHOD_COUNT_API = "Count API";
+    public static final String COUNT_METHOD_SEARCH_TOTALS = "Search Totals";
+    /** The query method of a search that only reads the total number of hits. */
+    public static final String QUERY_METHOD_TOTAL = "total";
+    /** The longest a request waits before it is retried, however many times it has been retried. */
+    public static final long MAX_RETRY_BACKOFF = 10000L;
+    public static final String METRICS_REGISTRY_JMX = "JMX";
+    public static final String METRICS_REGISTRY_NONE = "None";
+    private static final String CONTENT_ENCODING_GZIP = "gzip";
 
     /** Defines the logger */
     protected static final org.slf4j.Logger logger = LoggerFactory.getLogger(ElasticsearchAdapter.class);
@@ -61,19 +144,208 @@ public class ElasticsearchAdapter implements BridgeAdapter {
 
     private String username;
     private String password;
+    /** The first configured node URL, which URLs are built with before being routed to a node. */
     private String apiEndpoint;
+    private ElasticsearchNodePool nodePool;
+    // Null unless node sniffing is enabled.
+    private ScheduledExecutorService nodeSniffer;
+    private RequestConfig requestConfig;
+    private int maxRetries;
+    private long retryBackoff;
+    // Null unless the circuit breaker is enabled.
+    private ElasticsearchCircuitBreaker circuitBreaker;
+    /** Adapter scoped HTTP client, shared by every query made through this adapter instance. */
+    private CloseableHttpClient client;
+    // Started the first time an asynchronous query is made.
+    private CloseableHttpAsyncClient asyncClient;
+    // Started with the asynchronous client, decodes and parses its responses and schedules its
+    // retries.
+    private ScheduledExecutorService responseExecutor;
+    private boolean asynchronousQueries;
+    private PoolingHttpClientConnectionManager connectionManager;
+    private boolean streamResponses;
+    private boolean lazyRecords;
+    private boolean columnarRecords;
+    // Null unless large pages are extracted in parallel.
+    private ElasticsearchParallelExtractor parallelExtractor;
+    // Null when responses are requested as JSON.
+    private ElasticsearchBinaryFormat responseFormat;
+    private int exportSlices;
+    /** Optional cache of response bodies, null when caching is disabled. */
+    private ElasticsearchResultCache resultCache;
+    /** Optional deduplication of identical concurrent requests, null when disabled. */
+    private ElasticsearchRequestCoalescer requestCoalescer;
+    // Null unless micro batching is enabled.
+    private ElasticsearchMicroBatcher microBatcher;
+    private boolean filterResponses;
+    private boolean countFromSearchTotals;
+    private int countAccuracyThreshold;
+    private boolean compressResponses;
+    // Request bodies at least this many bytes long are gzipped, 0 when they are never compressed.
+    private int requestCompressionThreshold;
+    private ElasticsearchMetricsRegistry metrics = ElasticsearchMetricsRegistry.NONE;
 
     /** Defines the collection of property names for the adapter */
     public static class Properties {
         public static final String USERNAME = "Username";
         public static final String PASSWORD = "Password";
         public static final String API_URL = "Elastic URL";
+        public static final String MAX_CONNECTIONS_PER_ROUTE = "Max Connections Per Route";
+        public static final String MAX_CONNECTIONS_TOTAL = "Max Total Connections";
+        public static final String KEEP_ALIVE = "Connection Keep Alive (Seconds)";
+        public static final String IDLE_CONNECTION_TIMEOUT = "Idle Connection Timeout (Seconds)";
+        public static final String RESPONSE_PARSING = "Response Parsing";
+        public static final String RESPONSE_FORMAT = "Response Format";
+        public static final String LAZY_RECORDS = "Lazy Records";
+        public static final String COLUMNAR_RECORDS = "Columnar Records";
+        public static final String PARALLEL_EXTRACTION_THRESHOLD = "Parallel Extraction Threshold";
+        public static final String PARALLEL_EXTRACTION_THREADS = "Parallel Extraction Threads";
+        public static final String EXPORT_SLICES = "Export Slices";
+        public static final String CACHE_TTL = "Cache TTL (Seconds)";
+        public static final String CACHE_TTL_BY_STRUCTURE = "Cache TTL By Structure";
+        public static final String CACHE_MAX_ENTRIES = "Cache Max Entries";
+        public static final String CACHE_MAX_SIZE = "Cache Max Size (MB)";
+        public static final String COALESCE_REQUESTS = "Coalesce Concurrent Requests";
+        public static final String MICRO_BATCH_WINDOW = "Micro Batch Window (Milliseconds)";
+        public static final String MICRO_BATCH_MAX_SIZE = "Micro Batch Max Size";
+        public static final String QUERY_EXECUTION = "Query Execution";
+        public static final String FILTER_RESPONSES = "Filter Responses";
+        public static final String COUNT_METHOD = "Count Method";
+        public static final String COUNT_ACCURACY_THRESHOLD = "Count Accuracy Threshold";
+        public static final String LOAD_BALANCING = "Load Balancing";
+        public static final String DEAD_NODE_BACKOFF = "Dead Node Backoff (Seconds)";
+        public static final String NODE_SNIFF_INTERVAL = "Node Sniff Interval (Seconds)";
+        public static final String CONNECT_TIMEOUT = "Connect Timeout (Milliseconds)";
+        public static final String SOCKET_TIMEOUT = "Socket Timeout (Milliseconds)";
+        public static final String CONNECTION_REQUEST_TIMEOUT = "Connection Request Timeout (Milliseconds)";
+        public static final String MAX_RETRIES = "Max Retries";
+        public static final String RETRY_BACKOFF = "Retry Backoff (Milliseconds)";
+        public static final String CIRCUIT_BREAKER_THRESHOLD = "Circuit Breaker Failure Threshold";
+        public static final String CIRCUIT_BREAKER_OPEN_DURATION = "Circuit Breaker Open Duration (Seconds)";
+        public static final String METRICS_REGISTRY = "Metrics Registry";
+        public static final String COMPRESS_RESPONSES = "Compress Responses";
+        public static final String REQUEST_COMPRESSION_THRESHOLD = "Request Compression Threshold (Bytes)";
     }
 
     private final ConfigurablePropertyMap properties = new ConfigurablePropertyMap(
         new ConfigurableProperty(Properties.USERNAME),
         new ConfigurableProperty(Properties.PASSWORD).setIsSensitive(true),
         new ConfigurableProperty(Properties.API_URL)
+            .setDescription("The URL of the Elasticsearch server, or a comma separated list of node URLs to spread requests across."),
+        new ConfigurableProperty(Properties.MAX_CONNECTIONS_PER_ROUTE)
+            .setValue("20")
+            .setDescription("The maximum number of pooled connections kept open to the Elasticsearch server."),
+        new ConfigurableProperty(Properties.MAX_CONNECTIONS_TOTAL)
+            .setValue("50")
+            .setDescription("The maximum number of pooled connections kept open across all routes."),
+        new ConfigurableProperty(Properties.KEEP_ALIVE)
+            .setValue("60")
+            .setDescription("The longest a pooled connection is kept alive when the server does not specify a keep alive timeout."),
+        new ConfigurableProperty(Properties.IDLE_CONNECTION_TIMEOUT)
+            .setValue("30")
+            .setDescription("Pooled connections that have been idle for longer than this are closed. Use 0 to disable eviction."),
+        new ConfigurableProperty(Properties.RESPONSE_PARSING)
+            .setPossibleValues(RESPONSE_PARSING_STANDARD, RESPONSE_PARSING_STREAMING)
+            .setValue(RESPONSE_PARSING_STANDARD)
+            .setDescription("Streaming reads search results in a single pass over the response instead of parsing the full response body. Only applies to queries using the default JSON root path."),
+        new ConfigurableProperty(Properties.RESPONSE_FORMAT)
+            .setPossibleValues(RESPONSE_FORMAT_JSON, RESPONSE_FORMAT_SMILE, RESPONSE_FORMAT_CBOR)
+            .setValue(RESPONSE_FORMAT_JSON)
+            .setDescription("SMILE and CBOR ask Elasticsearch for binary responses, which are decoded into the same results as JSON responses without parsing text."),
+        new ConfigurableProperty(Properties.LAZY_RECORDS)
+            .setPossibleValues("true", "false")
+            .setValue("false")
+            .setDescription("Search records read their field values from the hit the first time each value is accessed instead of when the page is built. Records keep their hit until every value has been read."),
+        new ConfigurableProperty(Properties.COLUMNAR_RECORDS)
+            .setPossibleValues("true", "false")
+            .setValue("false")
+            .setDescription("Search results are stored by field, with numbers in primitive arrays and repeated strings shared, instead of as a map per record. Takes precedence over Lazy Records."),
+        new ConfigurableProperty(Properties.PARALLEL_EXTRACTION_THRESHOLD)
+            .setValue("0")
+            .setDescription("Pages with at least this many hits have their records extracted on several threads, keeping their order. Smaller pages are extracted on the calling thread. Use 0 to always extract on the calling thread. Does not apply to Streaming parsing or Lazy Records."),
+        new ConfigurableProperty(Properties.PARALLEL_EXTRACTION_THREADS)
+            .setValue("0")
+            .setDescription("The number of threads shared by parallel extractions. Use 0 to use one thread per available processor."),
+        new ConfigurableProperty(Properties.EXPORT_SLICES)
+            .setValue("1")
+            .setDescription("The number of scroll slices an export is split into and read in parallel. Use 0 to use one slice per available processor."),
+        new ConfigurableProperty(Properties.CACHE_TTL)
+            .setValue("0")
+            .setDescription("How long count, retrieve and search results are cached for. Use 0 to disable the result cache."),
+        new ConfigurableProperty(Properties.CACHE_TTL_BY_STRUCTURE)
+            .setDescription("Comma separated structure=seconds pairs overriding the cache TTL for specific structures, for example: users=300,logs=0"),
+        new ConfigurableProperty(Properties.CACHE_MAX_ENTRIES)
+            .setValue("1000")
+            .setDescription("The maximum number of cached results. The least recently used results are evicted first."),
+        new ConfigurableProperty(Properties.CACHE_MAX_SIZE)
+            .setValue("50")
+            .setDescription("The maximum estimated memory used by cached results. The least recently used results are evicted first."),
+        new ConfigurableProperty(Properties.COALESCE_REQUESTS)
+            .setPossibleValues("true", "false")
+            .setValue("false")
+            .setDescription("When true, identical count, retrieve and search requests made at the same time share a single request to Elasticsearch."),
+        new ConfigurableProperty(Properties.MICRO_BATCH_WINDOW)
+            .setValue("0")
+            .setDescription("How long concurrent search requests, and count requests when the Count Method is Search Totals, are held so they can be sent together in a single _msearch request. Use 0 to disable micro batching."),
+        new ConfigurableProperty(Properties.MICRO_BATCH_MAX_SIZE)
+            .setValue("50")
+            .setDescription("The number of held requests that sends a micro batch before its window has passed."),
+        new ConfigurableProperty(Properties.QUERY_EXECUTION)
+            .setPossibleValues(QUERY_EXECUTION_BLOCKING, QUERY_EXECUTION_ASYNCHRONOUS)
+            .setValue(QUERY_EXECUTION_BLOCKING)
+            .setDescription("Asynchronous runs count, retrieve and search on the non-blocking HTTP client, the calling thread only waits for the result."),
+        new ConfigurableProperty(Properties.FILTER_RESPONSES)
+            .setPossibleValues("true", "false")
+            .setValue("true")
+            .setDescription("When true, a filter_path is sent with every count, retrieve and search so Elasticsearch only returns the parts of the response that records are read from."),
+        new ConfigurableProperty(Properties.COUNT_METHOD)
+            .setPossibleValues(COUNT_METHOD_COUNT_API, COUNT_METHOD_SEARCH_TOTALS)
+            .setValue(COUNT_METHOD_COUNT_API)
+            .setDescription("Search Totals counts with a search that returns no hits, which can stop counting early when a Count Accuracy Threshold is set. Requires Elasticsearch 7 or later."),
+        new ConfigurableProperty(Properties.COUNT_ACCURACY_THRESHOLD)
+            .setValue("0")
+            .setDescription("Search totals above this number of hits are not counted exactly, the threshold is returned with a countRelation metadata value of gte instead. Use 0 to always count exactly."),
+        new ConfigurableProperty(Properties.LOAD_BALANCING)
+            .setPossibleValues(ElasticsearchNodePool.STRATEGY_ROUND_ROBIN, ElasticsearchNodePool.STRATEGY_LEAST_IN_FLIGHT)
+            .setValue(ElasticsearchNodePool.STRATEGY_ROUND_ROBIN)
+            .setDescription("How requests are spread across the nodes, either in turn or to the node with the fewest requests in flight."),
+        new ConfigurableProperty(Properties.DEAD_NODE_BACKOFF)
+            .setValue("60")
+            .setDescription("How long a node that can not be reached is taken out of rotation. The backoff doubles with every consecutive failure, up to 30 minutes."),
+        new ConfigurableProperty(Properties.NODE_SNIFF_INTERVAL)
+            .setValue("0")
+            .setDescription("How often the nodes of the cluster are discovered with the _nodes/http API, replacing the configured URLs. Use 0 to only use the configured URLs."),
+        new ConfigurableProperty(Properties.CONNECT_TIMEOUT)
+            .setValue("5000")
+            .setDescription("How long to wait for a connection to an Elasticsearch node to be established. Use 0 to wait indefinitely."),
+        new ConfigurableProperty(Properties.SOCKET_TIMEOUT)
+            .setValue("60000")
+            .setDescription("How long to wait for data from Elasticsearch once a request has been sent. Use 0 to wait indefinitely."),
+        new ConfigurableProperty(Properties.CONNECTION_REQUEST_TIMEOUT)
+            .setValue("5000")
+            .setDescription("How long to wait for a pooled connection to become free. Use 0 to wait indefinitely."),
+        new ConfigurableProperty(Properties.MAX_RETRIES)
+            .setValue("2")
+            .setDescription("How many times a search is retried after a 429, 502, 503 or 504 response or after its connection is reset. Requests that time out are not retried, and neither are requests that change state, such as scrolls."),
+        new ConfigurableProperty(Properties.RETRY_BACKOFF)
+            .setValue("200")
+            .setDescription("The base of the randomized, exponentially growing wait before a request is retried."),
+        new ConfigurableProperty(Properties.CIRCUIT_BREAKER_THRESHOLD)
+            .setValue("0")
+            .setDescription("The number of consecutive failed requests after which requests fail without being sent until the circuit breaker open duration has passed. Use 0 to disable the circuit breaker."),
+        new ConfigurableProperty(Properties.CIRCUIT_BREAKER_OPEN_DURATION)
+            .setValue("30")
+            .setDescription("How long the circuit breaker fails requests for before letting a trial request through."),
+        new ConfigurableProperty(Properties.METRICS_REGISTRY)
+            .setValue(METRICS_REGISTRY_JMX)
+            .setDescription("Where request timings, sizes and error counts are recorded. JMX exposes them as an MBean, None disables them, or use the class name of an ElasticsearchMetricsRegistry implementation."),
+        new ConfigurableProperty(Properties.COMPRESS_RESPONSES)
+            .setPossibleValues("true", "false")
+            .setValue("true")
+            .setDescription("When true, Elasticsearch is asked to gzip its responses, which are decompressed as they are read. Elasticsearch only compresses responses when http.compression is enabled."),
+        new ConfigurableProperty(Properties.REQUEST_COMPRESSION_THRESHOLD)
+            .setValue("0")
+            .setDescription("Request bodies, such as search queries and _msearch payloads, at least this many bytes long are sent gzipped. Use 0 to never compress request bodies.")
     );
 
 
@@ -85,9 +357,129 @@ public class ElasticsearchAdapter implements BridgeAdapter {
     public void initialize() throws BridgeError {
         this.username = properties.getValue(Properties.USERNAME);
         this.password = properties.getValue(Properties.PASSWORD);
-        // Remove any trailing forward slash.
-        this.apiEndpoint = properties.getValue(Properties.API_URL).replaceFirst("(\\/)$", "");
-        testAuthenticationValues(this.apiEndpoint, this.username, this.password);
+        // Remove any trailing forward slashes.
+        List<String> nodeUrls = ElasticsearchNodePool.parseUrls(properties.getValue(Properties.API_URL));
+        this.apiEndpoint = nodeUrls.get(0);
+        this.nodePool = new ElasticsearchNodePool(
+            nodeUrls,
+            properties.getValue(Properties.LOAD_BALANCING),
+            getIntegerProperty(Properties.DEAD_NODE_BACKOFF, 60) * 1000L
+        );
+        int sniffInterval = getIntegerProperty(Properties.NODE_SNIFF_INTERVAL, 0);
+        this.requestConfig = RequestConfig.custom()
+            .setConnectTimeout(getIntegerProperty(Properties.CONNECT_TIMEOUT, 5000))
+            .setSocketTimeout(getIntegerProperty(Properties.SOCKET_TIMEOUT, 60000))
+            .setConnectionRequestTimeout(getIntegerProperty(Properties.CONNECTION_REQUEST_TIMEOUT, 5000))
+            .build();
+        this.maxRetries = getIntegerProperty(Properties.MAX_RETRIES, 2);
+        this.retryBackoff = getIntegerProperty(Properties.RETRY_BACKOFF, 200);
+        int circuitBreakerThreshold = getIntegerProperty(Properties.CIRCUIT_BREAKER_THRESHOLD, 0);
+        this.circuitBreaker = circuitBreakerThreshold > 0
+            ? new ElasticsearchCircuitBreaker(circuitBreakerThreshold,
+                getIntegerProperty(Properties.CIRCUIT_BREAKER_OPEN_DURATION, 30) * 1000L)
+            : null;
+        this.streamResponses = RESPONSE_PARSING_STREAMING.equals(properties.getValue(Properties.RESPONSE_PARSING));
+        this.responseFormat = ElasticsearchBinaryFormat.forName(properties.getValue(Properties.RESPONSE_FORMAT));
+        this.lazyRecords = "true".equals(properties.getValue(Properties.LAZY_RECORDS));
+        this.columnarRecords = "true".equals(properties.getValue(Properties.COLUMNAR_RECORDS));
+        this.asynchronousQueries = QUERY_EXECUTION_ASYNCHRONOUS.equals(properties.getValue(Properties.QUERY_EXECUTION));
+        this.filterResponses = "true".equals(properties.getValue(Properties.FILTER_RESPONSES));
+        this.countFromSearchTotals = COUNT_METHOD_SEARCH_TOTALS.equals(properties.getValue(Properties.COUNT_METHOD));
+        this.countAccuracyThreshold = getIntegerProperty(Properties.COUNT_ACCURACY_THRESHOLD, 0);
+        this.compressResponses = "true".equals(properties.getValue(Properties.COMPRESS_RESPONSES));
+        this.requestCompressionThreshold = getIntegerProperty(Properties.REQUEST_COMPRESSION_THRESHOLD, 0);
+        this.exportSlices = getIntegerProperty(Properties.EXPORT_SLICES, 1);
+        if (this.exportSlices <= 0) {
+            this.exportSlices = Runtime.getRuntime().availableProcessors();
+        }
+        ElasticsearchResultCache cache = new ElasticsearchResultCache(
+            getIntegerProperty(Properties.CACHE_TTL, 0) * 1000L,
+            ElasticsearchResultCache.parseTimeToLives(properties.getValue(Properties.CACHE_TTL_BY_STRUCTURE)),
+            getIntegerProperty(Properties.CACHE_MAX_ENTRIES, 1000),
+            getIntegerProperty(Properties.CACHE_MAX_SIZE, 50) * 1024L * 1024L
+        );
+        this.resultCache = cache.isEnabled() ? cache : null;
+        this.requestCoalescer = "true".equals(properties.getValue(Properties.COALESCE_REQUESTS))
+            ? new ElasticsearchRequestCoalescer()
+            : null;
+        int microBatchWindow = getIntegerProperty(Properties.MICRO_BATCH_WINDOW, 0);
+        this.microBatcher = microBatchWindow > 0
+            ? new ElasticsearchMicroBatcher(
+                new ElasticsearchMicroBatcher.Flusher() {
+                    @Override
+                    public List<ElasticsearchBatchResult> flush(List<ElasticsearchBatchRequest> requests) throws BridgeError {
+                        return batch(requests);
+                    }
+                },
+                microBatchWindow,
+                getIntegerProperty(Properties.MICRO_BATCH_MAX_SIZE, 50))
+            : null;
+        // Release the previous client if the adapter is being re-initialized.
+        destroy();
+        int parallelExtractionThreshold = getIntegerProperty(Properties.PARALLEL_EXTRACTION_THRESHOLD, 0);
+        this.parallelExtractor = parallelExtractionThreshold > 0
+            ? new ElasticsearchParallelExtractor(parallelExtractionThreshold,
+                getIntegerProperty(Properties.PARALLEL_EXTRACTION_THREADS, 0))
+            : null;
+        this.client = buildHttpClient();
+        this.metrics = buildMetricsRegistry();
+        this.metrics.initialize(String.format("%s@%x", this.apiEndpoint, System.identityHashCode(this)));
+        registerGauges();
+        testAuthenticationValues(this.username, this.password);
+        if (sniffInterval > 0) {
+            this.nodeSniffer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "elasticsearch-node-sniffer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            this.nodeSniffer.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    sniffNodes();
+                }
+            }, 0, sniffInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        this.metrics.close();
+        this.metrics = ElasticsearchMetricsRegistry.NONE;
+        if (this.nodeSniffer != null) {
+            this.nodeSniffer.shutdownNow();
+            this.nodeSniffer = null;
+        }
+        if (this.parallelExtractor != null) {
+            this.parallelExtractor.shutdown();
+            this.parallelExtractor = null;
+        }
+        if (this.client != null) {
+            try {
+                // Closing the client also shuts down the connection manager and idle evictor.
+                this.client.close();
+            } catch (IOException e) {
+                logger.warn("Unable to close the Elasticsearch HTTP client.", e);
+            }
+            this.client = null;
+            this.connectionManager = null;
+        }
+        synchronized (this) {
+            if (this.asyncClient != null) {
+                try {
+                    this.asyncClient.close();
+                } catch (IOException e) {
+                    logger.warn("Unable to close the Elasticsearch asynchronous HTTP client.", e);
+                }
+                this.asyncClient = null;
+            }
+            if (this.responseExecutor != null) {
+                this.responseExecutor.shutdownNow();
+                this.responseExecutor = null;
+            }
+        }
     }
 
     @Override
@@ -117,108 +509,674 @@ public class ElasticsearchAdapter implements BridgeAdapter {
     @Override
     public Count count(BridgeRequest request) throws BridgeError {
 
+        if (asynchronousQueries) {
+            return await(countAsync(request));
+        }
+
+        ElasticsearchRequestTrace trace = new ElasticsearchRequestTrace(metrics, "count");
+        try {
+            return trace.succeeded(count(request, trace));
+        } finally {
+            trace.finish();
+        }
+    }
+
+    private Count count(BridgeRequest request, ElasticsearchRequestTrace trace) throws BridgeError {
+
+        // Batched counts are read from search totals, so counts made with the count API are not
+        // batched.
+        if (microBatcher != null && countFromSearchTotals) {
+            return microBatch(ElasticsearchBatchRequest.count(request)).getCount();
+        }
+
         ElasticsearchQualificationParser elasticParser = new ElasticsearchQualificationParser();
-        String jsonResponse = elasticQuery("count", null, request, elasticParser);
-        Long count = JsonPath.parse(jsonResponse).read("$.count", Long.class);
+        Object response = countFromSearchTotals
+            ? documentQuery(QUERY_METHOD_TOTAL, JSON_ROOT_DEFAULT, request, elasticParser, trace)
+            : documentQuery("count", null, request, elasticParser, trace);
 
+        long start = System.nanoTime();
+        DocumentContext jsonDocument = parseDocument(response);
         // Create and return a Count object.
-        return new Count(count);
+        Count count = countFromSearchTotals
+            ? buildCount(jsonDocument)
+            : new Count(jsonDocument.read("$.count", Long.class));
+        trace.record(ElasticsearchRequestTrace.PHASE_EXTRACT, start);
+        recordTook(trace, jsonDocument);
+        return count;
     }
 
     @Override
     public Record retrieve(BridgeRequest request) throws BridgeError {
 
+        if (asynchronousQueries) {
+            return await(retrieveAsync(request));
+        }
+
+        ElasticsearchRequestTrace trace = new ElasticsearchRequestTrace(metrics, "retrieve");
+        try {
+            return trace.succeeded(retrieve(request, trace));
+        } finally {
+            trace.finish();
+        }
+    }
+
+    private Record retrieve(BridgeRequest request, ElasticsearchRequestTrace trace) throws BridgeError {
+
         ElasticsearchQualificationParser elasticParser = new ElasticsearchQualificationParser();
         String metadataRoot = elasticParser.getJsonRootPath(request.getQuery());
         String jsonRootPath = JSON_ROOT_DEFAULT;
         if (StringUtils.isNotBlank(metadataRoot)) {
             jsonRootPath = metadataRoot;
         }
-       
-        String jsonResponse = elasticQuery("search", jsonRootPath, request, elasticParser);
-
-        DocumentContext jsonDocument = JsonPath.parse(jsonResponse);
-        Object objectRoot = jsonDocument.read(jsonRootPath);
-        Record recordResult = new Record(null);
 
-        if (objectRoot instanceof List) {
-            List<Object> listRoot = (List)objectRoot;
-            if (listRoot.size() == 1) {
-                Map<String, Object> recordValues = new HashMap();
-                for (String field : request.getFields()) {
-                    try {
-                        recordValues.put(field, JsonPath.parse(listRoot.get(0)).read(field));
-                    } catch (InvalidPathException e) {
-                        recordValues.put(field, null);
-                    }
-                }
-                recordResult = new Record(recordValues);
-            } else {
+        if (streamResponses && jsonRootPath.equals(JSON_ROOT_DEFAULT)) {
+            // Streamed records are extracted while the response is read.
+            ElasticsearchResponseParser responseParser = streamingQuery("search", jsonRootPath, request, elasticParser, trace);
+            recordTook(trace, responseParser.getValue("took"));
+            List<Record> records = responseParser.getRecords();
+            if (records.size() > 1) {
                 throw new BridgeError("Multiple results matched an expected single match query");
             }
-        } else if (objectRoot instanceof Map) {
-            Map<String, Object> recordValues = new HashMap();
-            for (String field : request.getFields()) {
-                try {
-                    recordValues.put(field, JsonPath.parse(objectRoot).read(field));
-                } catch (InvalidPathException e) {
-                    recordValues.put(field, null);
-                }
-            }
-            recordResult = new Record(recordValues);
+            return records.isEmpty() ? new Record(null) : records.get(0);
         }
+       
+        Object response = documentQuery("search", jsonRootPath, request, elasticParser, trace);
 
-        return recordResult;
+        long start = System.nanoTime();
+        DocumentContext jsonDocument = parseDocument(response);
+        Record record = buildRecord(jsonDocument, jsonRootPath, request);
+        trace.record(ElasticsearchRequestTrace.PHASE_EXTRACT, start);
+        recordTook(trace, jsonDocument);
+        return record;
 
     }
 
     @Override
     public RecordList search(BridgeRequest request) throws BridgeError {
 
+        if (asynchronousQueries) {
+            return await(searchAsync(request));
+        }
+
+        ElasticsearchRequestTrace trace = new ElasticsearchRequestTrace(metrics, "search");
+        try {
+            return trace.succeeded(search(request, trace));
+        } finally {
+            trace.finish();
+        }
+    }
+
+    private RecordList search(BridgeRequest request, ElasticsearchRequestTrace trace) throws BridgeError {
+
         ElasticsearchQualificationParser elasticParser = new ElasticsearchQualificationParser();
         String metadataRoot = elasticParser.getJsonRootPath(request.getQuery());
         String jsonRootPath = JSON_ROOT_DEFAULT;
         if (StringUtils.isNotBlank(metadataRoot)) {
             jsonRootPath = metadataRoot;
         }
-        
-        String jsonResponse = elasticQuery("search", jsonRootPath, request, elasticParser);
 
-        List<Record> recordList = new ArrayList<Record>();
-        DocumentContext jsonDocument = JsonPath.parse(jsonResponse);
-        Object objectRoot = jsonDocument.read(jsonRootPath);
-        Map<String,String> metadata = new LinkedHashMap<String,String>();
-        metadata.put("count",JsonPath.parse(jsonResponse).read("$.hits.total", String.class));
+        // metadataOnly searches only read the hit total, so they are never paged, batched or streamed.
+        boolean metadataOnly = isMetadataOnly(request);
 
-        if (objectRoot instanceof List) {
-            List<Object> listRoot = (List)objectRoot;
-            metadata.put("size", String.valueOf(listRoot.size()));
-            for (Object arrayElement : listRoot) {
-                Map<String, Object> recordValues = new HashMap();
-                DocumentContext jsonObject = JsonPath.parse(arrayElement);
-                for (String field : request.getFields()) {
-                    try {
-                        recordValues.put(field, jsonObject.read(field));
-                    } catch (InvalidPathException e) {
-                        recordValues.put(field, null);
+        String paginationMode = elasticParser.getPaginationMode(request.getQuery());
+        if (metadataOnly == false && ElasticsearchQualificationParser.PAGINATION_MODE_SEARCH_AFTER.equals(paginationMode)) {
+            return searchAfter(jsonRootPath, request, elasticParser, trace);
+        }
+
+        if (metadataOnly == false && microBatcher != null) {
+            return microBatch(ElasticsearchBatchRequest.search(request)).getRecordList();
+        }
+
+        if (metadataOnly == false && streamResponses && jsonRootPath.equals(JSON_ROOT_DEFAULT)) {
+            // Streamed records are extracted while the response is read.
+            ElasticsearchResponseParser responseParser = streamingQuery("search", jsonRootPath, request, elasticParser, trace);
+            recordTook(trace, responseParser.getValue("took"));
+            Map<String,String> metadata = new LinkedHashMap<String,String>();
+            metadata.put("count", responseParser.getTotal());
+            metadata.put("size", String.valueOf(responseParser.getRecords().size()));
+            return columnarRecords
+                ? ElasticsearchColumnarRecordList.of(request.getFields(), responseParser.getRecords(), metadata)
+                : new RecordList(request.getFields(), responseParser.getRecords(), metadata);
+        }
+
+        Object response = metadataOnly
+            ? documentQuery(QUERY_METHOD_TOTAL, JSON_ROOT_DEFAULT, request, elasticParser, trace)
+            : documentQuery("search", jsonRootPath, request, elasticParser, trace);
+
+        long start = System.nanoTime();
+        DocumentContext jsonDocument = parseDocument(response);
+        RecordList recordList = metadataOnly
+            ? buildMetadataRecordList(jsonDocument, request)
+            : buildRecordList(jsonDocument, jsonRootPath, request);
+        trace.record(ElasticsearchRequestTrace.PHASE_EXTRACT, start);
+        recordTook(trace, jsonDocument);
+        return recordList;
+
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * ASYNCHRONOUS METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * Counts the matching documents without blocking the calling thread. Cancelling the returned
+     * future aborts the request, callers that stop waiting after a timeout should cancel it.
+     */
+    public CompletableFuture<Count> countAsync(BridgeRequest request) {
+        ElasticsearchRequestTrace trace = new ElasticsearchRequestTrace(metrics, "count");
+        try {
+            ElasticsearchQualificationParser elasticParser = new ElasticsearchQualificationParser();
+            if (countFromSearchTotals) {
+                return parseAsync(elasticQueryAsync(QUERY_METHOD_TOTAL, JSON_ROOT_DEFAULT, request, elasticParser, trace), new ResponseParser<Count>() {
+                    @Override
+                    public Count parse(DocumentContext jsonDocument) {
+                        return buildCount(jsonDocument);
                     }
+                }, trace);
+            }
+            return parseAsync(elasticQueryAsync("count", null, request, elasticParser, trace), new ResponseParser<Count>() {
+                @Override
+                public Count parse(DocumentContext jsonDocument) {
+                    return new Count(jsonDocument.read("$.count", Long.class));
                 }
-                recordList.add(new Record(recordValues));
+            }, trace);
+        } catch (BridgeError e) {
+            trace.finish();
+            return failedFuture(e);
+        }
+    }
+
+    /**
+     * Retrieves the single matching record without blocking the calling thread. Cancelling the
+     * returned future aborts the request.
+     */
+    public CompletableFuture<Record> retrieveAsync(final BridgeRequest request) {
+        ElasticsearchRequestTrace trace = new ElasticsearchRequestTrace(metrics, "retrieve");
+        try {
+            ElasticsearchQualificationParser elasticParser = new ElasticsearchQualificationParser();
+            String metadataRoot = elasticParser.getJsonRootPath(request.getQuery());
+            final String jsonRootPath = StringUtils.isNotBlank(metadataRoot) ? metadataRoot : JSON_ROOT_DEFAULT;
+            return parseAsync(elasticQueryAsync("search", jsonRootPath, request, elasticParser, trace), new ResponseParser<Record>() {
+                @Override
+                public Record parse(DocumentContext jsonDocument) throws BridgeError {
+                    return buildRecord(jsonDocument, jsonRootPath, request);
+                }
+            }, trace);
+        } catch (BridgeError e) {
+            trace.finish();
+            return failedFuture(e);
+        }
+    }
+
+    /**
+     * Searches for the matching records without blocking the calling thread. Cancelling the
+     * returned future aborts the request.
+     */
+    public CompletableFuture<RecordList> searchAsync(final BridgeRequest request) {
+        ElasticsearchRequestTrace trace = new ElasticsearchRequestTrace(metrics, "search");
+        try {
+            ElasticsearchQualificationParser elasticParser = new ElasticsearchQualificationParser();
+            String metadataRoot = elasticParser.getJsonRootPath(request.getQuery());
+            final String jsonRootPath = StringUtils.isNotBlank(metadataRoot) ? metadataRoot : JSON_ROOT_DEFAULT;
+
+            if (isMetadataOnly(request)) {
+                return parseAsync(elasticQueryAsync(QUERY_METHOD_TOTAL, JSON_ROOT_DEFAULT, request, elasticParser, trace), new ResponseParser<RecordList>() {
+                    @Override
+                    public RecordList parse(DocumentContext jsonDocument) {
+                        return buildMetadataRecordList(jsonDocument, request);
+                    }
+                }, trace);
             }
-        } else if (objectRoot instanceof Map) {
-            metadata.put("size", "1");
-            Map<String, Object> recordValues = new HashMap();
-            DocumentContext jsonObject = JsonPath.parse(objectRoot);
-            for (String field : request.getFields()) {
-                recordValues.put(field, jsonObject.read(field));
+
+            String paginationMode = elasticParser.getPaginationMode(request.getQuery());
+            if (ElasticsearchQualificationParser.PAGINATION_MODE_SEARCH_AFTER.equals(paginationMode)) {
+                return searchAfterAsync(jsonRootPath, request, elasticParser, trace);
             }
-            recordList.add(new Record(recordValues));
+
+            return parseAsync(elasticQueryAsync("search", jsonRootPath, request, elasticParser, trace), new ResponseParser<RecordList>() {
+                @Override
+                public RecordList parse(DocumentContext jsonDocument) {
+                    return buildRecordList(jsonDocument, jsonRootPath, request);
+                }
+            }, trace);
+        } catch (BridgeError e) {
+            trace.finish();
+            return failedFuture(e);
         }
+    }
 
-        return new RecordList(request.getFields(), recordList, metadata);
+    /*----------------------------------------------------------------------------------------------
+     * BATCH METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * Sends several count and search requests to Elasticsearch in a single _msearch round trip.
+     *
+     * Each request is built the same way as it would be by count or search. The results are
+     * returned in the order of the requests, and a request that can not be built or that fails in
+     * Elasticsearch only fails its own result. Counts are read from the search totals when the
+     * Count Method is Search Totals, with the Count API they are sent one at a time with _count
+     * rather than being part of the _msearch request.
+     */
+    public List<ElasticsearchBatchResult> batch(List<ElasticsearchBatchRequest> batchRequests) throws BridgeError {
+        ElasticsearchRequestTrace trace = new ElasticsearchRequestTrace(metrics, "batch");
+        try {
+            return trace.succeeded(batch(batchRequests, trace));
+        } finally {
+            trace.finish();
+        }
+    }
+
+    private List<ElasticsearchBatchResult> batch(List<ElasticsearchBatchRequest> batchRequests, ElasticsearchRequestTrace trace) throws BridgeError {
+
+        long start = System.nanoTime();
+        ElasticsearchBatchResult[] results = new ElasticsearchBatchResult[batchRequests.size()];
+        List<Integer> sentIndexes = new ArrayList<Integer>();
+        List<String> jsonRootPaths = new ArrayList<String>();
+        StringBuilder payload = new StringBuilder();
+        // Every response item has either a took or a status, so keeping both stops filtered items
+        // from being dropped and shifting the responses of the requests that follow.
+        Set<String> filterPath = new LinkedHashSet<String>(Arrays.asList("responses.took", "responses.status"));
+        boolean filterable = true;
+
+        for (int i = 0; i < batchRequests.size(); i++) {
+            ElasticsearchBatchRequest batchRequest = batchRequests.get(i);
+            BridgeRequest request = batchRequest.getRequest();
+            try {
+                if (ElasticsearchBatchRequest.QUERY_METHOD_COUNT.equals(batchRequest.getQueryMethod()) && countFromSearchTotals == false) {
+                    results[i] = ElasticsearchBatchResult.of(count(request, trace));
+                    continue;
+                }
+                ElasticsearchQualificationParser elasticParser = new ElasticsearchQualificationParser();
+                String metadataRoot = elasticParser.getJsonRootPath(request.getQuery());
+                String jsonRootPath = StringUtils.isNotBlank(metadataRoot) ? metadataRoot : JSON_ROOT_DEFAULT;
+
+                // Counts are read from the search totals, no hits are needed.
+                String queryMethod = isTotalOnly(batchRequest) ? QUERY_METHOD_TOTAL : "search";
+                Map<String,Object> body = buildRequestBody(queryMethod, jsonRootPath, request, elasticParser);
+
+                List<String> itemFilterPath = buildFilterPath(queryMethod, jsonRootPath, request);
+                filterable = filterable && itemFilterPath.isEmpty() == false;
+                for (String path : itemFilterPath) {
+                    filterPath.add("responses." + path);
+                }
+
+                payload.append(JSONValue.toJSONString(buildMultiSearchHeader(request.getStructure())))
+                    .append("\n")
+                    .append(JSONValue.toJSONString(body))
+                    .append("\n");
+                sentIndexes.add(i);
+                jsonRootPaths.add(jsonRootPath);
+            } catch (BridgeError e) {
+                results[i] = ElasticsearchBatchResult.of(e);
+            }
+        }
+
+        if (sentIndexes.isEmpty() == false) {
+            StringBuilder url = new StringBuilder(this.apiEndpoint + "/_msearch");
+            if (filterResponses && filterable) {
+                addParameter(url, "filter_path", StringUtils.join(filterPath, ","));
+            }
+            trace.record(ElasticsearchRequestTrace.PHASE_BUILD, start);
+            String jsonResponse = executeRequest(new HttpPost(), url.toString(),
+                buildRequestEntity(payload.toString(), ContentType.create("application/x-ndjson", "UTF-8"), trace),
+                STRING_ENTITY_READER, trace);
+            start = System.nanoTime();
+            List<Object> responses = JsonPath.parse(jsonResponse).read("$.responses");
+
+            for (int i = 0; i < sentIndexes.size(); i++) {
+                int index = sentIndexes.get(i);
+                ElasticsearchBatchRequest batchRequest = batchRequests.get(index);
+                results[index] = buildBatchResult(batchRequest, jsonRootPaths.get(i),
+                    i < responses.size() ? responses.get(i) : null);
+            }
+            trace.record(ElasticsearchRequestTrace.PHASE_EXTRACT, start);
+        }
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Returns the result cache, which exposes the cache statistics, or null when the cache is
+     * disabled.
+     */
+    public ElasticsearchResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Returns the request coalescer, which exposes the coalescing statistics, or null when
+     * coalescing is disabled.
+     */
+    public ElasticsearchRequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
 
+    /**
+     * Returns the micro batcher, which exposes the queue depth and flush statistics, or null when
+     * micro batching is disabled.
+     */
+    public ElasticsearchMicroBatcher getMicroBatcher() {
+        return microBatcher;
     }
 
+    /**
+     * Returns the node pool, which exposes the health and latency of each node.
+     */
+    public ElasticsearchNodePool getNodePool() {
+        return nodePool;
+    }
+
+    /**
+     * Returns the circuit breaker, which exposes its state, or null when the circuit breaker is
+     * disabled.
+     */
+    public ElasticsearchCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Returns the metrics registry the request timings, sizes and error counts are recorded in.
+     */
+    public ElasticsearchMetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * EXPORT METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * Exports every record matching the request, using the number of slices configured by the
+     * Export Slices property.
+     *
+     * @return the number of records exported
+     */
+    public long export(BridgeRequest request, ElasticsearchRecordHandler handler) throws BridgeError {
+        return export(request, handler, this.exportSlices);
+    }
+
+    /**
+     * Exports every record matching the request through the scroll API.
+     *
+     * Records are read one batch (the pageSize metadata value) at a time and passed to the handler
+     * as each batch is read, so the full result set is never held in memory. When more than one
+     * slice is requested the export is split into sliced scrolls that are read in parallel, and
+     * the handler is called concurrently. Each scroll context is cleared when its slice completes
+     * or fails. A failed slice stops the others after the batch they are reading, and its error is
+     * thrown once every slice has stopped.
+     *
+     * @return the number of records exported
+     */
+    public long export(BridgeRequest request, ElasticsearchRecordHandler handler, int slices) throws BridgeError {
+        ElasticsearchRequestTrace trace = new ElasticsearchRequestTrace(metrics, "export");
+        try {
+            return trace.succeeded(export(request, handler, slices, trace));
+        } finally {
+            trace.finish();
+        }
+    }
+
+    private long export(final BridgeRequest request, final ElasticsearchRecordHandler handler, final int slices, final ElasticsearchRequestTrace trace) throws BridgeError {
+
+        final ElasticsearchQualificationParser elasticParser = new ElasticsearchQualificationParser();
+        String metadataRoot = elasticParser.getJsonRootPath(request.getQuery());
+        if (StringUtils.isNotBlank(metadataRoot) && metadataRoot.equals(JSON_ROOT_DEFAULT) == false) {
+            throw new BridgeError("Exports can only be used with the default JSON root path.");
+        }
+
+        if (slices <= 1) {
+            return exportSlice(request, elasticParser, handler, null, 1, new AtomicBoolean(), trace);
+        }
+
+        // Stops the remaining slices after the batch they are reading when any slice fails.
+        final AtomicBoolean aborted = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(slices);
+        try {
+            List<Future<Long>> futures = new ArrayList<Future<Long>>();
+            for (int i = 0; i < slices; i++) {
+                final Integer sliceId = i;
+                futures.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws BridgeError {
+                        try {
+                            return exportSlice(request, new ElasticsearchQualificationParser(), handler, sliceId, slices, aborted, trace);
+                        } catch (BridgeError e) {
+                            aborted.set(true);
+                            throw e;
+                        } catch (RuntimeException e) {
+                            aborted.set(true);
+                            throw e;
+                        }
+                    }
+                }));
+            }
+            long exported = 0;
+            BridgeError failure = null;
+            for (Future<Long> future : futures) {
+                try {
+                    exported += future.get();
+                } catch (ExecutionException e) {
+                    // The other slices are still waited for, so they have stopped calling the
+                    // handler and cleared their scrolls by the time the failure is thrown.
+                    if (failure == null) {
+                        failure = (e.getCause() instanceof BridgeError)
+                            ? (BridgeError)e.getCause()
+                            : new BridgeError("Unable to export the Elasticsearch results.", e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    aborted.set(true);
+                    Thread.currentThread().interrupt();
+                    throw new BridgeError("The Elasticsearch export was interrupted.", e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return exported;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Retrieves a page of results using a point in time and search_after instead of from/size.
+     *
+     * The first page opens a point in time against the structure. Every page that is full returns
+     * a nextPageToken metadata value, which is passed back as the pageToken metadata value to
+     * retrieve the page that follows. The point in time is closed once the last page is read.
+     */
+    private RecordList searchAfter(String jsonRootPath, BridgeRequest request, ElasticsearchQualificationParser elasticParser, ElasticsearchRequestTrace trace) throws BridgeError {
+
+        ElasticsearchPageToken pageToken = readPageToken(jsonRootPath, request);
+        String pointInTimeId = (pageToken == null)
+            ? openPointInTime(request.getStructure(), trace)
+            : pageToken.getPointInTimeId();
+
+        // A point in time opened for the first page is closed if the page can not be read, rather
+        // than being left open until its keep alive has passed.
+        boolean succeeded = false;
+        try {
+            long start = System.nanoTime();
+            Map<String,Object> body = buildSearchAfterBody(jsonRootPath, request, elasticParser, pointInTimeId, pageToken);
+            trace.record(ElasticsearchRequestTrace.PHASE_BUILD, start);
+
+            // Point in time searches are made without an index, the point in time defines it.
+            String jsonResponse = executeRequest(new HttpGetWithEntity(), this.apiEndpoint + "/_search",
+                JSONValue.toJSONString(body), STRING_ENTITY_READER, trace);
+
+            start = System.nanoTime();
+            DocumentContext jsonDocument = JsonPath.parse(jsonResponse);
+            pointInTimeId = readPointInTimeId(jsonDocument, pointInTimeId);
+            RecordList recordList = buildSearchAfterPage(jsonDocument, request, (Integer)body.get("size"), pointInTimeId);
+            trace.record(ElasticsearchRequestTrace.PHASE_EXTRACT, start);
+            recordTook(trace, jsonDocument);
+            if (recordList.getMetadata().containsKey("nextPageToken") == false) {
+                closePointInTime(pointInTimeId, trace);
+            }
+
+            succeeded = true;
+            return recordList;
+        } finally {
+            if (succeeded == false && pageToken == null) {
+                closePointInTime(pointInTimeId, trace);
+            }
+        }
+    }
+
+    /**
+     * Searches a page in the search after pagination mode without blocking the calling thread.
+     * Opening the point in time, the search and closing the point in time are chained on the
+     * asynchronous client, and cancelling the returned future aborts the request in flight.
+     */
+    private CompletableFuture<RecordList> searchAfterAsync(final String jsonRootPath, final BridgeRequest request, final ElasticsearchQualificationParser elasticParser, final ElasticsearchRequestTrace trace) throws BridgeError {
+
+        final ElasticsearchPageToken pageToken = readPageToken(jsonRootPath, request);
+        final AtomicReference<CompletableFuture<?>> inFlight = new AtomicReference<CompletableFuture<?>>();
+        CompletableFuture<String> pointInTime = (pageToken == null)
+            ? openPointInTimeAsync(request.getStructure(), trace)
+            : CompletableFuture.completedFuture(pageToken.getPointInTimeId());
+        inFlight.set(pointInTime);
+
+        final CompletableFuture<RecordList> result = pointInTime.thenCompose(new Function<String, CompletionStage<RecordList>>() {
+            @Override
+            public CompletionStage<RecordList> apply(final String pointInTimeId) {
+                final AtomicReference<String> latestPointInTimeId = new AtomicReference<String>(pointInTimeId);
+                CompletableFuture<RecordList> page;
+                try {
+                    long start = System.nanoTime();
+                    final Map<String,Object> body = buildSearchAfterBody(jsonRootPath, request, elasticParser, pointInTimeId, pageToken);
+                    trace.record(ElasticsearchRequestTrace.PHASE_BUILD, start);
+                    CompletableFuture<String> response = executeRequestAsync(new HttpGetWithEntity(), apiEndpoint + "/_search",
+                        buildRequestEntity(JSONValue.toJSONString(body), ContentType.APPLICATION_JSON, trace), STRING_ENTITY_READER, trace);
+                    inFlight.set(response);
+                    page = response.thenApply(new Function<String, RecordList>() {
+                        @Override
+                        public RecordList apply(String jsonResponse) {
+                            long start = System.nanoTime();
+                            DocumentContext jsonDocument = JsonPath.parse(jsonResponse);
+                            latestPointInTimeId.set(readPointInTimeId(jsonDocument, pointInTimeId));
+                            RecordList recordList = buildSearchAfterPage(jsonDocument, request, (Integer)body.get("size"), latestPointInTimeId.get());
+                            trace.record(ElasticsearchRequestTrace.PHASE_EXTRACT, start);
+                            recordTook(trace, jsonDocument);
+                            return recordList;
+                        }
+                    });
+                } catch (BridgeError e) {
+                    page = failedFuture(e);
+                }
+                // Close the point in time after the last page, or after a failed first page, before
+                // completing with the outcome of the page.
+                return page.handle(new BiFunction<RecordList, Throwable, CompletableFuture<RecordList>>() {
+                    @Override
+                    public CompletableFuture<RecordList> apply(RecordList recordList, Throwable error) {
+                        CompletableFuture<RecordList> outcome = new CompletableFuture<RecordList>();
+                        if (error == null) {
+                            outcome.complete(recordList);
+                        } else {
+                            outcome.completeExceptionally(error);
+                        }
+                        boolean closing = (error == null)
+                            ? recordList.getMetadata().containsKey("nextPageToken") == false
+                            : pageToken == null;
+                        if (closing == false) {
+                            return outcome;
+                        }
+                        CompletableFuture<Void> closed = closePointInTimeAsync(latestPointInTimeId.get(), trace);
+                        inFlight.set(closed);
+                        return closed.thenCompose(new Function<Void, CompletionStage<RecordList>>() {
+                            @Override
+                            public CompletionStage<RecordList> apply(Void ignored) {
+                                return outcome;
+                            }
+                        });
+                    }
+                }).thenCompose(new Function<CompletableFuture<RecordList>, CompletionStage<RecordList>>() {
+                    @Override
+                    public CompletionStage<RecordList> apply(CompletableFuture<RecordList> outcome) {
+                        return outcome;
+                    }
+                });
+            }
+        });
+        result.whenComplete(new BiConsumer<RecordList, Throwable>() {
+            @Override
+            public void accept(RecordList value, Throwable error) {
+                // Propagate cancellation back to the request in flight.
+                if (result.isCancelled()) {
+                    inFlight.get().cancel(true);
+                }
+                if (error == null) {
+                    trace.succeeded(value);
+                }
+                trace.finish();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns the page token of a search after request, or null for the first page.
+     */
+    private static ElasticsearchPageToken readPageToken(String jsonRootPath, BridgeRequest request) throws BridgeError {
+        if (jsonRootPath.equals(JSON_ROOT_DEFAULT) == false) {
+            throw new BridgeError("The searchAfter pagination mode can only be used with the default JSON root path.");
+        }
+        if (StringUtils.isNotBlank(request.getMetadata("pageToken"))) {
+            return ElasticsearchPageToken.decode(request.getMetadata("pageToken"));
+        }
+        return null;
+    }
+
+    /**
+     * Builds the body of a point in time search for the page after the page token.
+     */
+    private Map<String,Object> buildSearchAfterBody(String jsonRootPath, BridgeRequest request, ElasticsearchQualificationParser elasticParser, String pointInTimeId, ElasticsearchPageToken pageToken) throws BridgeError {
+        Map<String,Object> body = buildRequestBody("search", jsonRootPath, request, elasticParser);
+        // Pages are positioned by search_after rather than an offset.
+        body.remove("from");
+        // Sort on the shard document as a tiebreaker so every hit has a unique sort position.
+        List<Object> sort = new ArrayList<Object>();
+        if (body.get("sort") != null) {
+            sort.addAll((List<Object>)body.get("sort"));
+        }
+        sort.add(Collections.singletonMap("_shard_doc", "asc"));
+        body.put("sort", sort);
+        Map<String,Object> pointInTime = new LinkedHashMap<String,Object>();
+        pointInTime.put("id", pointInTimeId);
+        pointInTime.put("keep_alive", POINT_IN_TIME_KEEP_ALIVE);
+        body.put("pit", pointInTime);
+        if (pageToken != null) {
+            body.put("search_after", pageToken.getSearchAfter());
+        }
+        return body;
+    }
+
+    /**
+     * Returns the id of the point in time to continue with, Elasticsearch may return a new id for
+     * the point in time with every search.
+     */
+    private static String readPointInTimeId(DocumentContext jsonDocument, String pointInTimeId) {
+        Map<String,Object> response = jsonDocument.json();
+        return (response.get("pit_id") != null) ? (String)response.get("pit_id") : pointInTimeId;
+    }
+
+    /**
+     * Builds the records of a point in time search, with a next page token when the page was full.
+     */
+    private RecordList buildSearchAfterPage(DocumentContext jsonDocument, BridgeRequest request, int pageSize, String pointInTimeId) {
+        List<Object> hits = jsonDocument.read(JSON_ROOT_DEFAULT);
+        Map<String,String> metadata = new LinkedHashMap<String,String>();
+        RecordList recordList = buildPage(request.getFields(), ElasticsearchFieldReader.forFields(request.getFields()), hits, metadata);
+
+        metadata.put("count", readTotalHits(jsonDocument));
+        metadata.put("size", String.valueOf(hits.size()));
+        if (hits.isEmpty() == false && hits.size() >= pageSize) {
+            List<Object> lastSort = (List<Object>)((Map<String,Object>)hits.get(hits.size() - 1)).get("sort");
+            metadata.put("nextPageToken", new ElasticsearchPageToken(pointInTimeId, lastSort).encode());
+        }
+        return recordList;
+    }
 
     /*----------------------------------------------------------------------------------------------
      * PUBLIC HELPER METHODS
@@ -226,19 +1184,15 @@ public class ElasticsearchAdapter implements BridgeAdapter {
     public String buildUrl(String queryMethod, String jsonRootPath, BridgeRequest request, ElasticsearchQualificationParser elasticParser) throws BridgeError {
 
         Map<String,String> metadata = BridgeUtils.normalizePaginationMetadata(request.getMetadata());
-        String pageSize = "1000";
-        String offset = "0";
-
-        if (StringUtils.isNotBlank(metadata.get("pageSize")) && metadata.get("pageSize").equals("0") == false) {
-            pageSize = metadata.get("pageSize");
-        }
-        if (StringUtils.isNotBlank(metadata.get("offset"))) {
-            offset = metadata.get("offset");
-        }
+        String pageSize = getPageSize(metadata);
+        String offset = getOffset(metadata);
 
         String query = null;
         query = elasticParser.parse(request.getQuery(),request.getParameters());
 
+        // Totals are read from a search that does not return any hits.
+        boolean totalOnly = queryMethod.equals(QUERY_METHOD_TOTAL);
+
         // Build up the url that you will use to retrieve the source data. Use the query variable
         // instead of request.getQuery() to get a query without parameter placeholders.
         StringBuilder url = new StringBuilder();
@@ -246,48 +1200,36 @@ public class ElasticsearchAdapter implements BridgeAdapter {
             .append("/")
             .append(request.getStructure())
             .append("/_")
-            .append(queryMethod);
+            .append(totalOnly ? "search" : queryMethod);
 
         // if the query is not a request body JSON query...
-        if (query.matches("^\\s*\\{.*?\\}\\s*$") == false) {
+        if (isJsonQuery(query) == false) {
             addParameter(url, "q", query);
         }
 
+        if (totalOnly) {
+            addParameter(url, "size", "0");
+            addParameter(url, "track_total_hits", String.valueOf(getTrackTotalHits()));
         //only set pagination if we're not counting.
-        if (queryMethod.equals("count") == false) {
+        } else if (queryMethod.equals("count") == false) {
             addParameter(url, "size", pageSize);
             addParameter(url, "from", offset);
             // only set field limitation if we're not counting
             //   *and* the request specified fields to be returned
             //   *and* the JSON root path has not changed.
-            if (request.getFields() != null &&
-                request.getFields().isEmpty() == false &&
-                jsonRootPath.equals(JSON_ROOT_DEFAULT)
-            ) {
-                StringBuilder includedFields = new StringBuilder();
-                String[] bridgeFields = request.getFieldArray();
-                for (int i = 0; i < request.getFieldArray().length; i++) {
-                    //strip _source from the beginning of the specified field name as this is redundent to Elasticsearch.
-                    includedFields.append(bridgeFields[i].replaceFirst("^_source\\.(.*)", "$1"));
-                    //only append a comma if this is not the last field
-                    if (i != (request.getFieldArray().length -1)) {
-                        includedFields.append(",");
-                    }
-                }
-                addParameter(url, "_source", includedFields.toString());
+            //   *and* the query is not a request body JSON query, which has the includes added
+            //   to its body instead.
+            List<String> sourceIncludes = getSourceIncludes(jsonRootPath, request);
+            if (sourceIncludes.isEmpty() == false && isJsonQuery(query) == false) {
+                addParameter(url, "_source", StringUtils.join(sourceIncludes, ","));
             }
             //only set sorting if we're not counting *and* the request specified a sort order.
-            if (request.getMetadata("order") != null) {
+            Map<String,String> sortOrder = getSortOrder(request);
+            if (sortOrder.isEmpty() == false) {
                 List<String> orderList = new ArrayList<String>();
                 //loop over every defined sort order and add them to the Elasicsearch URL
-                for (Map.Entry<String,String> entry : BridgeUtils.parseOrder(request.getMetadata("order")).entrySet()) {
-                    String key = entry.getKey().replaceFirst("^_source\\.(.*)", "$1");
-                    if (entry.getValue().equals("DESC")) {
-                        orderList.add(String.format("%s:desc", key));
-                    }
-                    else {
-                        orderList.add(String.format("%s:asc", key));
-                    }
+                for (Map.Entry<String,String> entry : sortOrder.entrySet()) {
+                    orderList.add(String.format("%s:%s", entry.getKey(), entry.getValue()));
                 }
                 String order = StringUtils.join(orderList,",");
                 addParameter(url, "sort", order);
@@ -295,101 +1237,1523 @@ public class ElasticsearchAdapter implements BridgeAdapter {
 
         }
 
+        if (filterResponses) {
+            List<String> filterPath = buildFilterPath(queryMethod, jsonRootPath, request);
+            if (filterPath.isEmpty() == false) {
+                addParameter(url, "filter_path", StringUtils.join(filterPath, ","));
+            }
+        }
+
         logger.trace("Elasticsearch URL: {}", url.toString());
         return url.toString();
 
     }
 
-    /*----------------------------------------------------------------------------------------------
-     * PRIVATE HELPER METHODS
-     *--------------------------------------------------------------------------------------------*/
-    private void addBasicAuthenticationHeader(HttpGetWithEntity get, String username, String password) {
-        String creds = username + ":" + password;
-        byte[] basicAuthBytes = Base64.encodeBase64(creds.getBytes());
-        get.setHeader("Authorization", "Basic " + new String(basicAuthBytes));
-    }
-    private void addParameter(StringBuilder url, String parameterName, String parameterValue) {
-        if (url.toString().contains("?") == false) {
-            url.append("?");
-        } else {
-            url.append("&");
-        }
-        url.append(URLEncoder.encode(parameterName))
-            .append("=")
-            .append(URLEncoder.encode(parameterValue));
-    }
-    private String elasticQuery(String queryMethod, String jsonRootPath, BridgeRequest request, ElasticsearchQualificationParser elasticParser) throws BridgeError{
-        
+    /**
+     * Builds the request body equivalent of the URL built by buildUrl. URI search queries are
+     * wrapped in a query_string query so the body can be used by APIs that do not accept the q
+     * parameter.
+     */
+    public Map<String,Object> buildRequestBody(String queryMethod, String jsonRootPath, BridgeRequest request, ElasticsearchQualificationParser elasticParser) throws BridgeError {
+
+        Map<String,String> metadata = BridgeUtils.normalizePaginationMetadata(request.getMetadata());
         String query = elasticParser.parse(request.getQuery(),request.getParameters());
-        //Set query to return everything if no qualification defined.
-        if (StringUtils.isBlank(query)) {
-            query = "*:*";
-        }
 
-        String result = null;
-        String url = buildUrl(queryMethod, jsonRootPath, request, elasticParser);
-        
-        // Initialize the HTTP Client, Response, and Get objects.
-        HttpClient client = HttpClients.createDefault();
-        HttpResponse response;
-        HttpGetWithEntity get = new HttpGetWithEntity();
-        URI uri;
-        try {
-            uri = new URI(url);
-        } catch (URISyntaxException e) {
-            throw new BridgeError(e);
+        Map<String,Object> body = new LinkedHashMap<String,Object>();
+        if (isJsonQuery(query)) {
+            try {
+                body.putAll((Map<String,Object>)JSONValue.parseWithException(query));
+            } catch (ParseException e) {
+                throw new BridgeError(String.format("The parsed query (%s) is not valid JSON.", query), e);
+            }
+        } else if (StringUtils.isNotBlank(query)) {
+            Map<String,Object> queryString = new LinkedHashMap<String,Object>();
+            queryString.put("query", query);
+            body.put("query", Collections.singletonMap("query_string", queryString));
         }
-        get.setURI(uri);
 
-        // If the query is a JSON object, assume JSON and Request Body searching.
-        if (query.matches("^\\s*\\{.*?\\}\\s*$")) {
-            HttpEntity entity;
+        if (queryMethod.equals(QUERY_METHOD_TOTAL)) {
+            body.put("size", 0);
+            body.put("track_total_hits", getTrackTotalHits());
+        //only set pagination, field limitation and sorting if we're not counting.
+        } else if (queryMethod.equals("count") == false) {
             try {
-                String parsedQuery = elasticParser.parse(request.getQuery(), request.getParameters());
-
-                // Set the parsed query as the request body payload.
-                entity = new ByteArrayEntity(parsedQuery.getBytes("UTF-8"));
-                get.setEntity(entity);
-            } catch (UnsupportedEncodingException e) {
-                throw new BridgeError(e);
+                body.put("size", Integer.valueOf(getPageSize(metadata)));
+                body.put("from", Integer.valueOf(getOffset(metadata)));
+            } catch (NumberFormatException e) {
+                throw new BridgeError("The pageSize and offset metadata values must be integers.", e);
+            }
+            List<String> sourceIncludes = getSourceIncludes(jsonRootPath, request);
+            if (sourceIncludes.isEmpty() == false) {
+                body.put("_source", sourceIncludes);
+            }
+            Map<String,String> sortOrder = getSortOrder(request);
+            if (sortOrder.isEmpty() == false) {
+                List<Object> sort = new ArrayList<Object>();
+                for (Map.Entry<String,String> entry : sortOrder.entrySet()) {
+                    sort.add(Collections.singletonMap(entry.getKey(), entry.getValue()));
+                }
+                body.put("sort", sort);
             }
         }
 
+        return body;
+
+    }
+
+    /**
+     * Builds the filter_path of a query so Elasticsearch only returns the parts of the response
+     * that the count or records are read from. The list is empty when the JSON root path can not
+     * be expressed as a filter path, in which case the response should not be filtered.
+     */
+    public List<String> buildFilterPath(String queryMethod, String jsonRootPath, BridgeRequest request) {
+        Set<String> filterPath = new LinkedHashSet<String>();
+        if (queryMethod.equals("count")) {
+            filterPath.add("count");
+        } else if (queryMethod.equals(QUERY_METHOD_TOTAL)) {
+            filterPath.add("hits.total");
+        } else {
+            if (FILTERABLE_ROOT.matcher(jsonRootPath).matches() == false) {
+                return new ArrayList<String>();
+            }
+            filterPath.add("hits.total");
+            if (jsonRootPath.equals(JSON_ROOT_DEFAULT)) {
+                // Every hit has an _id, keeping it stops hits that have none of the fields from
+                // being dropped from the response.
+                List<String> hitPaths = new ArrayList<String>(Arrays.asList("hits.hits._id"));
+                for (ElasticsearchFieldReader fieldReader : ElasticsearchFieldReader.forFields(request.getFields())) {
+                    if (fieldReader.getPropertyPath() == null) {
+                        // JsonPath expressions can read any part of the hit.
+                        hitPaths = Arrays.asList("hits.hits");
+                        break;
+                    }
+                    hitPaths.add("hits.hits." + fieldReader.getPropertyPath());
+                }
+                filterPath.addAll(hitPaths);
+            } else {
+                // Filter paths step into arrays on their own, so indexes are dropped.
+                filterPath.add(jsonRootPath.substring(2).replaceAll("\\[(\\*|\\d+)\\]", ""));
+            }
+        }
+        if (queryMethod.equals("count") == false) {
+            // Kept for the took metric, searches report how long Elasticsearch spent on them.
+            filterPath.add("took");
+        }
+        // Keep the error of a failed request so it is still reported.
+        filterPath.add("error");
+        return new ArrayList<String>(filterPath);
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+    private String getPageSize(Map<String,String> metadata) {
+        String pageSize = "1000";
+        if (StringUtils.isNotBlank(metadata.get("pageSize")) && metadata.get("pageSize").equals("0") == false) {
+            pageSize = metadata.get("pageSize");
+        }
+        return pageSize;
+    }
+    private String getOffset(Map<String,String> metadata) {
+        String offset = "0";
+        if (StringUtils.isNotBlank(metadata.get("offset"))) {
+            offset = metadata.get("offset");
+        }
+        return offset;
+    }
+    /**
+     * Returns the _source includes for the request. Fields are only limited when the request
+     * specified fields to be returned *and* the JSON root path has not changed.
+     */
+    private List<String> getSourceIncludes(String jsonRootPath, BridgeRequest request) {
+        List<String> includedFields = new ArrayList<String>();
+        if (request.getFields() != null &&
+            request.getFields().isEmpty() == false &&
+            jsonRootPath.equals(JSON_ROOT_DEFAULT)
+        ) {
+            for (String bridgeField : request.getFields()) {
+                //strip _source from the beginning of the specified field name as this is redundent to Elasticsearch.
+                includedFields.add(bridgeField.replaceFirst("^_source\\.(.*)", "$1"));
+            }
+        }
+        return includedFields;
+    }
+    /**
+     * Returns the sort order of the request as a map of Elasticsearch field names to asc or desc.
+     */
+    private Map<String,String> getSortOrder(BridgeRequest request) throws BridgeError {
+        Map<String,String> sortOrder = new LinkedHashMap<String,String>();
+        if (request.getMetadata("order") != null) {
+            for (Map.Entry<String,String> entry : BridgeUtils.parseOrder(request.getMetadata("order")).entrySet()) {
+                String key = entry.getKey().replaceFirst("^_source\\.(.*)", "$1");
+                sortOrder.put(key, entry.getValue().equals("DESC") ? "desc" : "asc");
+            }
+        }
+        return sortOrder;
+    }
+    private void addBasicAuthenticationHeader(HttpRequestBase get, String username, String password) {
+        String creds = username + ":" + password;
+        byte[] basicAuthBytes = Base64.encodeBase64(creds.getBytes());
+        get.setHeader("Authorization", "Basic " + new String(basicAuthBytes));
+    }
+    private CloseableHttpClient buildHttpClient() throws BridgeError {
+        final long keepAlive = getIntegerProperty(Properties.KEEP_ALIVE, 60) * 1000L;
+        int idleTimeout = getIntegerProperty(Properties.IDLE_CONNECTION_TIMEOUT, 30);
+
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        this.connectionManager.setDefaultMaxPerRoute(getIntegerProperty(Properties.MAX_CONNECTIONS_PER_ROUTE, 20));
+        this.connectionManager.setMaxTotal(getIntegerProperty(Properties.MAX_CONNECTIONS_TOTAL, 50));
+
+        // Honor the keep alive the server sends back, falling back to (and capping at) the
+        // configured value so stale connections are not reused indefinitely.
+        ConnectionKeepAliveStrategy keepAliveStrategy = new DefaultConnectionKeepAliveStrategy() {
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                long duration = super.getKeepAliveDuration(response, context);
+                return (duration < 0 || duration > keepAlive) ? keepAlive : duration;
+            }
+        };
+
+        HttpClientBuilder builder = HttpClients.custom()
+            .setConnectionManager(this.connectionManager)
+            .setKeepAliveStrategy(keepAliveStrategy)
+            .setDefaultRequestConfig(this.requestConfig)
+            // Retries are made by the adapter so they can be sent to another node.
+            .disableAutomaticRetries()
+            // Responses are decompressed by the adapter, the same as for the asynchronous client,
+            // so the compressed size can be measured.
+            .disableContentCompression();
+        if (idleTimeout > 0) {
+            builder.evictExpiredConnections()
+                .evictIdleConnections((long)idleTimeout, TimeUnit.SECONDS);
+        }
+        return builder.build();
+    }
+    private int getIntegerProperty(String propertyName, int defaultValue) throws BridgeError {
+        String value = properties.getValue(propertyName);
+        if (StringUtils.isBlank(value)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new BridgeError(
+                String.format("The \"%s\" property value (%s) is not a valid integer.", propertyName, value),
+                e
+            );
+        }
+    }
+    private void addParameter(StringBuilder url, String parameterName, String parameterValue) {
+        if (url.toString().contains("?") == false) {
+            url.append("?");
+        } else {
+            url.append("&");
+        }
+        url.append(URLEncoder.encode(parameterName))
+            .append("=")
+            .append(URLEncoder.encode(parameterValue));
+    }
+    private String elasticQuery(String queryMethod, String jsonRootPath, BridgeRequest request, ElasticsearchQualificationParser elasticParser, ElasticsearchRequestTrace trace) throws BridgeError{
+        String result = elasticQuery(queryMethod, jsonRootPath, request, elasticParser, STRING_ENTITY_READER, trace);
+        logger.trace(String.format("Elasticsearch response - Raw Output: %s", result));
+        return result;
+    }
+
+    /**
+     * Runs the query and returns the response to parse into a document. That is the JSON text of
+     * the response, unless the response is in a binary format, which is decoded straight into the
+     * values of the document instead.
+     */
+    private Object documentQuery(String queryMethod, String jsonRootPath, BridgeRequest request, ElasticsearchQualificationParser elasticParser, ElasticsearchRequestTrace trace) throws BridgeError {
+        if (responseFormat == null) {
+            return elasticQuery(queryMethod, jsonRootPath, request, elasticParser, trace);
+        }
+        return elasticQuery(queryMethod, jsonRootPath, request, elasticParser, DOCUMENT_ENTITY_READER, trace);
+    }
+
+    private static DocumentContext parseDocument(Object response) {
+        return (response instanceof String) ? JsonPath.parse((String)response) : JsonPath.parse(response);
+    }
+
+    private ElasticsearchResponseParser streamingQuery(String queryMethod, String jsonRootPath, BridgeRequest request, ElasticsearchQualificationParser elasticParser, ElasticsearchRequestTrace trace) throws BridgeError {
+        return elasticQuery(queryMethod, jsonRootPath, request, elasticParser, streamingEntityReader(request.getFields()), trace);
+    }
+
+    private EntityReader<ElasticsearchResponseParser> streamingEntityReader(final List<String> fields) {
+        // Records that are copied into columns are only read once, so they are not built as maps.
+        final boolean lazy = lazyRecords || columnarRecords;
+        return new EntityReader<ElasticsearchResponseParser>() {
+            @Override
+            public ElasticsearchResponseParser read(HttpEntity entity) throws IOException, BridgeError {
+                ElasticsearchBinaryFormat format = getBinaryFormat(entity);
+                if (format != null) {
+                    InputStream input = entity.getContent();
+                    try {
+                        return format.parse(input, new ElasticsearchResponseParser(fields, lazy));
+                    } finally {
+                        input.close();
+                    }
+                }
+                Reader reader = new InputStreamReader(entity.getContent(), getCharset(entity));
+                try {
+                    return new ElasticsearchResponseParser(fields, lazy).parse(reader);
+                } finally {
+                    reader.close();
+                }
+            }
+        };
+    }
+
+    private <T> T elasticQuery(String queryMethod, String jsonRootPath, BridgeRequest request, ElasticsearchQualificationParser elasticParser, EntityReader<T> entityReader, ElasticsearchRequestTrace trace) throws BridgeError{
+        
+        // The query is parsed up front so the parse is timed on its own, the URL and the body
+        // reuse the parsed query.
+        long start = System.nanoTime();
+        elasticParser.parse(request.getQuery(), request.getParameters());
+        trace.record(ElasticsearchRequestTrace.PHASE_PARSE, start);
+        start = System.nanoTime();
+        String url = buildUrl(queryMethod, jsonRootPath, request, elasticParser);
+        String body = buildQueryBody(queryMethod, jsonRootPath, request, elasticParser);
+        trace.record(ElasticsearchRequestTrace.PHASE_BUILD, start);
+
+        long timeToLive = (resultCache == null) ? 0 : resultCache.getTimeToLive(request.getStructure());
+        if (timeToLive > 0 || requestCoalescer != null) {
+            String response = fetchResponse(url, body, timeToLive, trace);
+            // Shared responses are read the same way as a response entity.
+            try {
+                return entityReader.read(new StringEntity(response, ContentType.APPLICATION_JSON));
+            } catch (IOException e) {
+                throw new BridgeError("Unable to read the shared Elasticsearch response", e);
+            }
+        }
+
+        return executeRequest(new HttpGetWithEntity(), url, body, entityReader, trace);
+    }
+
+    /**
+     * Sends the query with the asynchronous client. Cached responses are used and stored the same
+     * way as by elasticQuery, but concurrent requests are not coalesced.
+     */
+    private CompletableFuture<String> elasticQueryAsync(String queryMethod, String jsonRootPath, BridgeRequest request, ElasticsearchQualificationParser elasticParser, ElasticsearchRequestTrace trace) throws BridgeError {
+
+        long start = System.nanoTime();
+        elasticParser.parse(request.getQuery(), request.getParameters());
+        trace.record(ElasticsearchRequestTrace.PHASE_PARSE, start);
+        start = System.nanoTime();
+        String url = buildUrl(queryMethod, jsonRootPath, request, elasticParser);
+        String body = buildQueryBody(queryMethod, jsonRootPath, request, elasticParser);
+        trace.record(ElasticsearchRequestTrace.PHASE_BUILD, start);
+
+        final long timeToLive = (resultCache == null) ? 0 : resultCache.getTimeToLive(request.getStructure());
+        final String requestKey = ElasticsearchResultCache.buildKey(this.username + ":" + this.password, url, body);
+        if (timeToLive > 0) {
+            String response = resultCache.get(requestKey);
+            if (response != null) {
+                return CompletableFuture.completedFuture(response);
+            }
+        }
+
+        CompletableFuture<String> response = executeRequestAsync(new HttpGetWithEntity(), url,
+            body == null ? null : buildRequestEntity(body, ContentType.APPLICATION_JSON, trace), STRING_ENTITY_READER, trace);
+        if (timeToLive > 0) {
+            response = response.thenApply(new Function<String, String>() {
+                @Override
+                public String apply(String result) {
+                    resultCache.put(requestKey, result, timeToLive);
+                    return result;
+                }
+            });
+        }
+        return response;
+    }
+
+    /**
+     * Returns the request body of the query, or null when the query is sent as a URI search.
+     */
+    private String buildQueryBody(String queryMethod, String jsonRootPath, BridgeRequest request, ElasticsearchQualificationParser elasticParser) throws BridgeError {
+        String query = elasticParser.parse(request.getQuery(),request.getParameters());
+        //Set query to return everything if no qualification defined.
+        if (StringUtils.isBlank(query)) {
+            query = "*:*";
+        }
+
+        // If the query is a JSON object, assume JSON and Request Body searching.
+        String body = null;
+        if (isJsonQuery(query)) {
+            body = query;
+            if (queryMethod.equals("search")) {
+                body = addSourceIncludes(body, getSourceIncludes(jsonRootPath, request));
+            }
+        }
+        return body;
+    }
+
+    /**
+     * Adds the _source includes to a request body, unless the body already has a top level _source
+     * of its own.
+     */
+    static String addSourceIncludes(String body, List<String> sourceIncludes) throws BridgeError {
+        if (sourceIncludes.isEmpty()) {
+            return body;
+        }
+        Object parsedBody;
+        try {
+            parsedBody = JSONValue.parseWithException(body);
+        } catch (ParseException e) {
+            throw new BridgeError(String.format("The parsed query (%s) is not valid JSON.", body), e);
+        }
+        if (parsedBody instanceof Map == false || ((Map<String,Object>)parsedBody).containsKey("_source")) {
+            return body;
+        }
+        Map<String,Object> requestBody = new LinkedHashMap<String,Object>();
+        requestBody.put("_source", sourceIncludes);
+        requestBody.putAll((Map<String,Object>)parsedBody);
+        return JSONValue.toJSONString(requestBody);
+    }
+
+    private static boolean isJsonQuery(String query) {
+        return query.matches("^\\s*\\{.*?\\}\\s*$");
+    }
+
+    /**
+     * Returns the response body of the query, reading it from the result cache when it is cached
+     * and sharing the response of an identical in flight request when coalescing is enabled.
+     */
+    private String fetchResponse(final String url, final String body, long timeToLive, final ElasticsearchRequestTrace trace) throws BridgeError {
+        String requestKey = ElasticsearchResultCache.buildKey(this.username + ":" + this.password, url, body);
+
+        String response = (timeToLive > 0) ? resultCache.get(requestKey) : null;
+        if (response == null) {
+            if (requestCoalescer != null) {
+                response = requestCoalescer.execute(requestKey, new Callable<String>() {
+                    @Override
+                    public String call() throws BridgeError {
+                        return executeRequest(new HttpGetWithEntity(), url, body, STRING_ENTITY_READER, trace);
+                    }
+                });
+            } else {
+                response = executeRequest(new HttpGetWithEntity(), url, body, STRING_ENTITY_READER, trace);
+            }
+            if (timeToLive > 0) {
+                resultCache.put(requestKey, response, timeToLive);
+            }
+        }
+        return response;
+    }
+
+    private <T> T executeRequest(HttpEntityEnclosingRequestBase httpRequest, String url, String body, EntityReader<T> entityReader, ElasticsearchRequestTrace trace) throws BridgeError {
+        HttpEntity requestEntity = (body == null) ? null : buildRequestEntity(body, ContentType.APPLICATION_JSON, trace);
+        return executeRequest(httpRequest, url, requestEntity, entityReader, trace);
+    }
+
+    /**
+     * Builds a repeatable request body, gzipping it when it is at least the request compression
+     * threshold long.
+     */
+    private HttpEntity buildRequestEntity(String body, ContentType contentType, ElasticsearchRequestTrace trace) {
+        byte[] content = body.getBytes(contentType.getCharset());
+        if (requestCompressionThreshold <= 0 || content.length < requestCompressionThreshold) {
+            return new ByteArrayEntity(content, contentType);
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(content);
+        } catch (IOException e) {
+            // Writing to memory does not fail.
+            throw new IllegalStateException(e);
+        }
+        ByteArrayEntity entity = new ByteArrayEntity(compressed.toByteArray(), contentType);
+        entity.setContentEncoding(CONTENT_ENCODING_GZIP);
+        trace.recordValue(ElasticsearchRequestTrace.VALUE_REQUEST_BYTES_SAVED, content.length - compressed.size());
+        return entity;
+    }
+
+    private <T> T executeRequest(HttpEntityEnclosingRequestBase httpRequest, String url, HttpEntity requestEntity, EntityReader<T> entityReader, ElasticsearchRequestTrace trace) throws BridgeError {
+        checkCircuitBreaker();
+        boolean retryable = isRetryable(httpRequest, url);
+        boolean clusterFailure = false;
+        IOException connectionError = null;
+        int failovers = 0;
+        int retries = 0;
+        try {
+            while (true) {
+                ElasticsearchNodePool.Node node = nodePool.acquire();
+                long start = System.nanoTime();
+                boolean nodeFailed = false;
+
+                // Make the call to the REST source to retrieve data and hand the response HttpEntity
+                // to the entity reader so more response parsing can be done. The pooled client is
+                // shared by the adapter.
+                try {
+                    prepareRequest(httpRequest, routeUrl(node, url), requestEntity);
+                    long sent = System.nanoTime();
+                    CloseableHttpResponse response = client.execute(httpRequest);
+                    trace.record(ElasticsearchRequestTrace.PHASE_HTTP_WAIT, sent);
+                    try {
+                        int responseStatus = response.getStatusLine().getStatusCode();
+                        if (retryable && retries < maxRetries && isRetryableStatus(responseStatus)) {
+                            logger.warn(String.format("The Elasticsearch node %s returned a HTTP status code of %d, retrying the request.",
+                                node.getUrl(), responseStatus));
+                            trace.increment(ElasticsearchRequestTrace.COUNTER_STATUS + responseStatus);
+                            trace.increment(ElasticsearchRequestTrace.COUNTER_RETRIES);
+                            EntityUtils.consume(response.getEntity());
+                            backOff(retries++);
+                            continue;
+                        }
+                        clusterFailure = isRetryableStatus(responseStatus) || responseStatus >= 500;
+                        return readResponse(response, entityReader, trace);
+                    } finally {
+                        // Closing the response returns the connection to the pool.
+                        response.close();
+                    }
+                } catch (IOException e) {
+                    connectionError = e;
+                    nodeFailed = isNodeFailure(e);
+                    trace.increment(ElasticsearchRequestTrace.COUNTER_CONNECTION_ERRORS);
+                    logger.warn(String.format("Unable to make a connection to the Elasticsearch node %s", node.getUrl()), e);
+                } finally {
+                    nodePool.release(node, System.nanoTime() - start, nodeFailed);
+                }
+
+                if (isConnectFailure(connectionError) && ++failovers < nodePool.size()) {
+                    // The request never reached the node, so it is sent straight on to the next one.
+                    continue;
+                }
+                if (retryable && retries < maxRetries && isResetFailure(connectionError)) {
+                    trace.increment(ElasticsearchRequestTrace.COUNTER_RETRIES);
+                    backOff(retries++);
+                    continue;
+                }
+                clusterFailure = true;
+                throw new BridgeError("Unable to make a connection to the Elasticsearch server", connectionError);
+            }
+        } finally {
+            if (circuitBreaker != null) {
+                if (clusterFailure) {
+                    circuitBreaker.recordFailure();
+                } else {
+                    circuitBreaker.recordSuccess();
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the request with the asynchronous client. The returned future completes with the
+     * response read by the entity reader, cancelling it aborts the request.
+     *
+     * Requests are sent on to another node and retried the same way as by executeRequest, but the
+     * waits before retries are scheduled on the response executor rather than blocking a thread.
+     */
+    private <T> CompletableFuture<T> executeRequestAsync(HttpEntityEnclosingRequestBase httpRequest, String url, HttpEntity requestEntity, EntityReader<T> entityReader, ElasticsearchRequestTrace trace) {
+        CompletableFuture<T> result = new CompletableFuture<T>();
+        try {
+            checkCircuitBreaker();
+        } catch (BridgeError e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        sendAsync(httpRequest, url, requestEntity, entityReader, trace, result, isRetryable(httpRequest, url), 0, 0);
+        return result;
+    }
+
+    /**
+     * Makes one attempt at an asynchronous request, completing the result or scheduling the next
+     * attempt.
+     */
+    private <T> void sendAsync(final HttpEntityEnclosingRequestBase httpRequest, final String url, final HttpEntity requestEntity,
+        final EntityReader<T> entityReader, final ElasticsearchRequestTrace trace, final CompletableFuture<T> result,
+        final boolean retryable, final int retries, final int failovers
+    ) {
+        if (result.isDone()) {
+            // Cancelled while waiting to be retried.
+            return;
+        }
+        final ElasticsearchNodePool.Node node = nodePool.acquire();
+        final long start = System.nanoTime();
+        try {
+            prepareRequest(httpRequest, routeUrl(node, url), requestEntity);
+            final Future<HttpResponse> httpFuture = getAsyncClient().execute(httpRequest, new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(final HttpResponse response) {
+                    // The response has been buffered by now, so the wait includes the transfer.
+                    trace.record(ElasticsearchRequestTrace.PHASE_HTTP_WAIT, start);
+                    nodePool.release(node, System.nanoTime() - start, false);
+                    int responseStatus = response.getStatusLine().getStatusCode();
+                    if (retryable && retries < maxRetries && isRetryableStatus(responseStatus)) {
+                        logger.warn(String.format("The Elasticsearch node %s returned a HTTP status code of %d, retrying the request.",
+                            node.getUrl(), responseStatus));
+                        trace.increment(ElasticsearchRequestTrace.COUNTER_STATUS + responseStatus);
+                        trace.increment(ElasticsearchRequestTrace.COUNTER_RETRIES);
+                        EntityUtils.consumeQuietly(response.getEntity());
+                        retryAsync(httpRequest, url, requestEntity, entityReader, trace, result, retryable, retries + 1, failovers, backOffDelay(retries));
+                        return;
+                    }
+                    if (circuitBreaker != null) {
+                        if (isRetryableStatus(responseStatus) || responseStatus >= 500) {
+                            circuitBreaker.recordFailure();
+                        } else {
+                            circuitBreaker.recordSuccess();
+                        }
+                    }
+                    // The body has been buffered, but decompressing and decoding it still takes
+                    // time that would hold up the other connections of the I/O dispatcher.
+                    try {
+                        getResponseExecutor().execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    result.complete(readResponse(response, entityReader, trace));
+                                } catch (BridgeError e) {
+                                    result.completeExceptionally(e);
+                                } catch (IOException e) {
+                                    result.completeExceptionally(new BridgeError("Unable to read the Elasticsearch response", e));
+                                }
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        result.completeExceptionally(new BridgeError("The Elasticsearch adapter has been destroyed", e));
+                    }
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    trace.increment(ElasticsearchRequestTrace.COUNTER_CONNECTION_ERRORS);
+                    IOException connectionError = (e instanceof IOException) ? (IOException)e : null;
+                    nodePool.release(node, System.nanoTime() - start, connectionError == null || isNodeFailure(connectionError));
+                    logger.warn(String.format("Unable to make a connection to the Elasticsearch node %s", node.getUrl()), e);
+                    if (connectionError != null && isConnectFailure(connectionError) && failovers + 1 < nodePool.size()) {
+                        // The request never reached the node, so it is sent straight on to the next one.
+                        retryAsync(httpRequest, url, requestEntity, entityReader, trace, result, retryable, retries, failovers + 1, 0);
+                    } else if (connectionError != null && retryable && retries < maxRetries && isResetFailure(connectionError)) {
+                        trace.increment(ElasticsearchRequestTrace.COUNTER_RETRIES);
+                        retryAsync(httpRequest, url, requestEntity, entityReader, trace, result, retryable, retries + 1, failovers, backOffDelay(retries));
+                    } else {
+                        if (circuitBreaker != null) {
+                            circuitBreaker.recordFailure();
+                        }
+                        result.completeExceptionally(new BridgeError("Unable to make a connection to the Elasticsearch server", e));
+                    }
+                }
+
+                @Override
+                public void cancelled() {
+                    nodePool.release(node, System.nanoTime() - start, false);
+                    if (circuitBreaker != null) {
+                        circuitBreaker.recordAbandoned();
+                    }
+                    result.cancel(false);
+                }
+            });
+            result.whenComplete(new BiConsumer<T, Throwable>() {
+                @Override
+                public void accept(T value, Throwable error) {
+                    if (result.isCancelled()) {
+                        httpFuture.cancel(true);
+                    }
+                }
+            });
+        } catch (BridgeError e) {
+            nodePool.release(node, System.nanoTime() - start, false);
+            if (circuitBreaker != null) {
+                circuitBreaker.recordAbandoned();
+            }
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Schedules the next attempt at an asynchronous request on the response executor, so neither
+     * the I/O dispatcher nor the calling thread waits for it.
+     */
+    private <T> void retryAsync(final HttpEntityEnclosingRequestBase httpRequest, final String url, final HttpEntity requestEntity,
+        final EntityReader<T> entityReader, final ElasticsearchRequestTrace trace, final CompletableFuture<T> result,
+        final boolean retryable, final int retries, final int failovers, long delay
+    ) {
+        try {
+            getResponseExecutor().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    sendAsync(httpRequest, url, requestEntity, entityReader, trace, result, retryable, retries, failovers);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new BridgeError("The Elasticsearch adapter has been destroyed", e));
+        }
+    }
+
+    private void checkCircuitBreaker() throws BridgeError {
+        if (circuitBreaker != null && circuitBreaker.allowRequest() == false) {
+            throw new BridgeError("The Elasticsearch circuit breaker is open, requests are not being sent until the cluster recovers.");
+        }
+    }
+
+    /**
+     * Whether the request can be sent again after a failure, which is the case for requests that
+     * only read, but not for requests such as scrolls that move a cursor forward. A search that
+     * opens a scroll is not retried either, each attempt that reached Elasticsearch would leave a
+     * search context open that the client never learns the id of and so can not clear.
+     */
+    private static boolean isRetryable(HttpEntityEnclosingRequestBase httpRequest, String url) {
+        String[] parts = url.split("\\?", 2);
+        if (parts.length > 1) {
+            for (String parameter : parts[1].split("&")) {
+                if (parameter.equals("scroll") || parameter.startsWith("scroll=")) {
+                    return false;
+                }
+            }
+        }
+        String path = parts[0];
+        return "GET".equals(httpRequest.getMethod()) || path.endsWith("/_search") || path.endsWith("/_msearch");
+    }
+
+    private static boolean isRetryableStatus(int responseStatus) {
+        return responseStatus == 429 || responseStatus == 502 || responseStatus == 503 || responseStatus == 504;
+    }
+
+    /**
+     * Whether the request failed before it could be sent to the node, in which case it can be sent
+     * to another node whether or not it is retryable.
+     */
+    private static boolean isConnectFailure(IOException e) {
+        return e instanceof ConnectException
+            || e instanceof UnknownHostException
+            || (e instanceof ConnectTimeoutException && (e instanceof ConnectionPoolTimeoutException) == false);
+    }
+
+    /**
+     * Whether the connection was dropped or reset, which a retry can recover from. A request that
+     * timed out waiting for the response is not retried, as each retry could hold the calling
+     * thread for another socket timeout.
+     */
+    private static boolean isResetFailure(IOException e) {
+        return e instanceof NoHttpResponseException || e instanceof SocketException;
+    }
+
+    /**
+     * Whether the failure means the node should be taken out of rotation. Requests that time out
+     * waiting for a slow response or for a pooled connection do not.
+     */
+    private static boolean isNodeFailure(IOException e) {
+        return (e instanceof SocketTimeoutException || e instanceof ConnectionPoolTimeoutException) == false;
+    }
+
+    /**
+     * Waits before a retry, for a random time of up to the retry backoff doubled for every
+     * previous retry so retries from many threads do not arrive together.
+     */
+    private void backOff(int retries) throws BridgeError {
+        try {
+            Thread.sleep(backOffDelay(retries));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BridgeError("Interrupted while waiting to retry an Elasticsearch request", e);
+        }
+    }
+
+    /**
+     * Returns the wait in milliseconds before a retry.
+     */
+    private long backOffDelay(int retries) {
+        long maxDelay = Math.min(retryBackoff << Math.min(retries, 20), MAX_RETRY_BACKOFF);
+        return maxDelay > 0 ? ThreadLocalRandom.current().nextLong(maxDelay + 1) : 0;
+    }
+
+    /**
+     * Returns the URL of the request on the node, URLs are built with the first configured node.
+     */
+    private String routeUrl(ElasticsearchNodePool.Node node, String url) {
+        if (url.startsWith(this.apiEndpoint)) {
+            return node.getUrl() + url.substring(this.apiEndpoint.length());
+        }
+        return url;
+    }
+
+    /**
+     * Replaces the nodes of the pool with the nodes of the cluster that can coordinate searches.
+     * The configured nodes are kept when no nodes are found.
+     */
+    private void sniffNodes() {
+        try {
+            String jsonResponse = executeRequest(new HttpGetWithEntity(), this.apiEndpoint + "/_nodes/http",
+                (String)null, STRING_ENTITY_READER, new ElasticsearchRequestTrace(metrics, "sniff"));
+            List<String> nodeUrls = ElasticsearchNodePool.parseSniffedNodes(jsonResponse, URI.create(this.apiEndpoint).getScheme());
+            if (nodeUrls.isEmpty() == false) {
+                logger.debug("Sniffed Elasticsearch nodes: {}", nodeUrls);
+                nodePool.setUrls(nodeUrls);
+            }
+        } catch (BridgeError e) {
+            logger.warn("Unable to sniff the Elasticsearch nodes.", e);
+        } catch (RuntimeException e) {
+            logger.warn("Unable to read the sniffed Elasticsearch nodes.", e);
+        }
+    }
+
+    /**
+     * Sets the URI, the body and the authentication of a request.
+     */
+    private void prepareRequest(HttpEntityEnclosingRequestBase httpRequest, String url, HttpEntity requestEntity) throws BridgeError {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            throw new BridgeError(e);
+        }
+        httpRequest.setURI(uri);
+
+        if (requestEntity != null) {
+            // Set the request body payload.
+            httpRequest.setEntity(requestEntity);
+        }
+        if (compressResponses) {
+            httpRequest.setHeader(HttpHeaders.ACCEPT_ENCODING, CONTENT_ENCODING_GZIP);
+        }
+        if (responseFormat != null) {
+            httpRequest.setHeader(HttpHeaders.ACCEPT, responseFormat.getContentType());
+        }
+
         // Append the authentication to the call. This example uses Basic Authentication but other
         // types can be added as HTTP GET or POST headers as well.
         if (this.username != null && this.password != null) {
-            addBasicAuthenticationHeader(get, this.username, this.password);
+            addBasicAuthenticationHeader(httpRequest, this.username, this.password);
+        }
+    }
+
+    /**
+     * Checks the response status and hands the response entity to the entity reader, recording
+     * how long the entity took to read and its size.
+     */
+    private <T> T readResponse(HttpResponse response, EntityReader<T> entityReader, ElasticsearchRequestTrace trace) throws BridgeError, IOException {
+        Integer responseStatus = response.getStatusLine().getStatusCode();
+
+        // The compressed bytes are counted as they are read off the connection, underneath the
+        // decompression, and the decompressed bytes above it.
+        HttpEntity entity = response.getEntity();
+        CountingEntity compressedEntity = null;
+        if (entity != null && isGzipped(entity)) {
+            compressedEntity = new CountingEntity(entity);
+            entity = new GzipDecompressingEntity(compressedEntity);
+        }
+        if (responseStatus >= 300 || responseStatus < 200) {
+            trace.increment(ElasticsearchRequestTrace.COUNTER_STATUS + responseStatus);
+            String errorMessage = (entity == null) ? null : STRING_ENTITY_READER.read(entity);
+            throw new BridgeError(
+                String.format(
+                    "The Elasicsearch server returned a HTTP status code of %d, 200 was expected. Response body: %s",
+                    responseStatus,
+                    errorMessage
+                )
+            );
+        }
+
+        long start = System.nanoTime();
+        CountingEntity countingEntity = (entity == null) ? null : new CountingEntity(entity);
+        T result = entityReader.read(countingEntity);
+        trace.record(ElasticsearchRequestTrace.PHASE_RESPONSE_READ, start);
+        if (compressedEntity != null) {
+            trace.recordValue(ElasticsearchRequestTrace.VALUE_RESPONSE_BYTES, compressedEntity.getByteCount());
+            trace.recordValue(ElasticsearchRequestTrace.VALUE_RESPONSE_BYTES_SAVED,
+                countingEntity.getByteCount() - compressedEntity.getByteCount());
+        } else if (countingEntity != null) {
+            trace.recordValue(ElasticsearchRequestTrace.VALUE_RESPONSE_BYTES, countingEntity.getByteCount());
+        }
+        logger.trace(String.format("Request response code: %s", responseStatus));
+        return result;
+    }
+
+    /**
+     * Reads one slice of an export, the slice id is null when the export is not sliced.
+     */
+    private long exportSlice(BridgeRequest request, ElasticsearchQualificationParser elasticParser, ElasticsearchRecordHandler handler, Integer sliceId, int slices, AtomicBoolean aborted, ElasticsearchRequestTrace trace) throws BridgeError {
+
+        Map<String,Object> body = buildRequestBody("search", JSON_ROOT_DEFAULT, request, elasticParser);
+        // Scrolls are positioned by the scroll context rather than an offset.
+        body.remove("from");
+        if (body.get("sort") == null) {
+            // Sorting on _doc is the most efficient order to scroll in.
+            body.put("sort", Collections.singletonList("_doc"));
+        }
+        if (sliceId != null) {
+            Map<String,Object> slice = new LinkedHashMap<String,Object>();
+            slice.put("id", sliceId);
+            slice.put("max", slices);
+            body.put("slice", slice);
         }
 
-        // Make the call to the REST source to retrieve data and convert the response from an
-        // HttpEntity object into a Java string so more response parsing can be done.
+        StringBuilder url = new StringBuilder();
+        url.append(this.apiEndpoint)
+            .append("/")
+            .append(request.getStructure())
+            .append("/_search");
+        addParameter(url, "scroll", SCROLL_KEEP_ALIVE);
+
+        long exported = 0;
+        String scrollId = null;
         try {
-            response = client.execute(get);
-            Integer responseStatus = response.getStatusLine().getStatusCode();
-
-            HttpEntity entity = response.getEntity();
-            if (responseStatus >= 300 || responseStatus < 200) {
-                String errorMessage = EntityUtils.toString(entity);
-                throw new BridgeError(
-                    String.format(
-                        "The Elasicsearch server returned a HTTP status code of %d, 200 was expected. Response body: %s",
-                        responseStatus,
-                        errorMessage
-                    )
-                );
-            }
-
-            result = EntityUtils.toString(entity);
-            logger.trace(String.format("Request response code: %s", response.getStatusLine().getStatusCode()));
-        } catch (IOException e) {
-            throw new BridgeError("Unable to make a connection to the Elasticsearch server", e);
+            ElasticsearchResponseParser page = executeRequest(new HttpPost(), url.toString(),
+                JSONValue.toJSONString(body), streamingEntityReader(request.getFields()), trace);
+            while (true) {
+                if (page.getValue("_scroll_id") != null) {
+                    scrollId = (String)page.getValue("_scroll_id");
+                }
+                if (page.getRecords().isEmpty() || aborted.get()) {
+                    break;
+                }
+                for (Record record : page.getRecords()) {
+                    handler.handle(record);
+                }
+                exported += page.getRecords().size();
+
+                Map<String,Object> scrollBody = new LinkedHashMap<String,Object>();
+                scrollBody.put("scroll", SCROLL_KEEP_ALIVE);
+                scrollBody.put("scroll_id", scrollId);
+                page = executeRequest(new HttpPost(), this.apiEndpoint + "/_search/scroll",
+                    JSONValue.toJSONString(scrollBody), streamingEntityReader(request.getFields()), trace);
+            }
+        } finally {
+            if (scrollId != null) {
+                clearScroll(scrollId, trace);
+            }
         }
-        logger.trace(String.format("Elasticsearch response - Raw Output: %s", result));
+        return exported;
+    }
 
+    private void clearScroll(String scrollId, ElasticsearchRequestTrace trace) {
+        // Scroll contexts expire on their own after the keep alive, so failing to clear one early
+        // should not fail the export.
+        try {
+            executeRequest(new HttpDeleteWithEntity(), this.apiEndpoint + "/_search/scroll",
+                JSONValue.toJSONString(Collections.singletonMap("scroll_id", Collections.singletonList(scrollId))),
+                STRING_ENTITY_READER, trace);
+        } catch (BridgeError e) {
+            logger.warn("Unable to clear the Elasticsearch scroll context.", e);
+        }
+    }
+
+    private String openPointInTime(String structure, ElasticsearchRequestTrace trace) throws BridgeError {
+        StringBuilder url = new StringBuilder();
+        url.append(this.apiEndpoint)
+            .append("/")
+            .append(structure)
+            .append("/_pit");
+        addParameter(url, "keep_alive", POINT_IN_TIME_KEEP_ALIVE);
+        String jsonResponse = executeRequest(new HttpPost(), url.toString(), (String)null, STRING_ENTITY_READER, trace);
+        return JsonPath.parse(jsonResponse).read("$.id", String.class);
+    }
+
+    private CompletableFuture<String> openPointInTimeAsync(String structure, ElasticsearchRequestTrace trace) {
+        StringBuilder url = new StringBuilder();
+        url.append(this.apiEndpoint)
+            .append("/")
+            .append(structure)
+            .append("/_pit");
+        addParameter(url, "keep_alive", POINT_IN_TIME_KEEP_ALIVE);
+        return executeRequestAsync(new HttpPost(), url.toString(), null, STRING_ENTITY_READER, trace)
+            .thenApply(new Function<String, String>() {
+                @Override
+                public String apply(String jsonResponse) {
+                    return JsonPath.parse(jsonResponse).read("$.id", String.class);
+                }
+            });
+    }
+
+    private void closePointInTime(String pointInTimeId, ElasticsearchRequestTrace trace) {
+        // Points in time expire on their own after the keep alive, so failing to close one early
+        // should not fail the search.
+        try {
+            executeRequest(new HttpDeleteWithEntity(), this.apiEndpoint + "/_pit",
+                JSONValue.toJSONString(Collections.singletonMap("id", pointInTimeId)), STRING_ENTITY_READER, trace);
+        } catch (BridgeError e) {
+            logger.warn("Unable to close the Elasticsearch point in time.", e);
+        }
+    }
+
+    /**
+     * Closes the point in time with the asynchronous client, the returned future completes once
+     * the point in time is closed or could not be closed.
+     */
+    private CompletableFuture<Void> closePointInTimeAsync(String pointInTimeId, ElasticsearchRequestTrace trace) {
+        return executeRequestAsync(new HttpDeleteWithEntity(), this.apiEndpoint + "/_pit",
+            buildRequestEntity(JSONValue.toJSONString(Collections.singletonMap("id", pointInTimeId)), ContentType.APPLICATION_JSON, trace),
+            STRING_ENTITY_READER, trace
+        ).handle(new BiFunction<String, Throwable, Void>() {
+            @Override
+            public Void apply(String jsonResponse, Throwable error) {
+                if (error != null) {
+                    logger.warn("Unable to close the Elasticsearch point in time.", error);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Builds the single record of a retrieve response, reading it from the JSON root path.
+     */
+    private Record buildRecord(DocumentContext jsonDocument, String jsonRootPath, BridgeRequest request) throws BridgeError {
+        Object objectRoot = readRoot(jsonDocument, jsonRootPath);
+        Record recordResult = new Record(null);
+
+        if (objectRoot instanceof List) {
+            List<Object> listRoot = (List)objectRoot;
+            if (listRoot.size() == 1) {
+                recordResult = new Record(ElasticsearchFieldReader.readAll(
+                    ElasticsearchFieldReader.forFields(request.getFields()), listRoot.get(0)));
+            } else if (listRoot.size() > 1) {
+                throw new BridgeError("Multiple results matched an expected single match query");
+            }
+        } else if (objectRoot instanceof Map) {
+            recordResult = new Record(ElasticsearchFieldReader.readAll(
+                ElasticsearchFieldReader.forFields(request.getFields()), objectRoot));
+        }
+
+        return recordResult;
+    }
+
+    /**
+     * Builds the record list of a search response, reading the records from the JSON root path.
+     * Package private so the extraction benchmarks measure the same code.
+     */
+    RecordList buildRecordList(DocumentContext jsonDocument, String jsonRootPath, BridgeRequest request) {
+        List<Record> recordList = new ArrayList<Record>();
+        Object objectRoot = readRoot(jsonDocument, jsonRootPath);
+        Map<String,String> metadata = new LinkedHashMap<String,String>();
+        metadata.put("count", readTotalHits(jsonDocument));
+        // Compile the field expressions once for the page rather than once per hit.
+        List<ElasticsearchFieldReader> fieldReaders = ElasticsearchFieldReader.forFields(request.getFields());
+
+        if (objectRoot instanceof List) {
+            List<Object> listRoot = (List)objectRoot;
+            metadata.put("size", String.valueOf(listRoot.size()));
+            return buildPage(request.getFields(), fieldReaders, listRoot, metadata);
+        } else if (objectRoot instanceof Map) {
+            metadata.put("size", "1");
+            Map<String, Object> recordValues = new HashMap();
+            for (ElasticsearchFieldReader fieldReader : fieldReaders) {
+                recordValues.put(fieldReader.getField(), fieldReader.read(objectRoot));
+            }
+            recordList.add(new Record(recordValues));
+        }
+
+        return new RecordList(request.getFields(), recordList, metadata);
+    }
+
+    /**
+     * Builds the record list of a page of hits. Columnar record lists store the values by field,
+     * lazy records share the field index of the page and read their values when they are
+     * accessed, otherwise every value is read now into a map per record. Values read now are read
+     * in parallel for pages over the Parallel Extraction Threshold.
+     */
+    private RecordList buildPage(List<String> fields, final List<ElasticsearchFieldReader> fieldReaders, List<Object> hits, Map<String,String> metadata) {
+        // Copy the field so a concurrent destroy can not change it part way through the page.
+        ElasticsearchParallelExtractor extractor = this.parallelExtractor;
+        if (columnarRecords) {
+            final ElasticsearchColumnarRecordList.Builder builder = new ElasticsearchColumnarRecordList.Builder(fieldReaders);
+            if (extractor != null) {
+                // The values are read in parallel, adding them to the columns is not thread safe.
+                List<Object[]> rows = extractor.extract(hits, new ElasticsearchParallelExtractor.Extraction<Object[]>() {
+                    @Override
+                    public Object[] extract(Object hit) {
+                        return builder.readRow(hit);
+                    }
+                });
+                for (Object[] row : rows) {
+                    builder.addRow(row);
+                }
+            } else {
+                for (Object hit : hits) {
+                    builder.addHit(hit);
+                }
+            }
+            return builder.build(fields, metadata);
+        }
+        List<Record> records = new ArrayList<Record>(hits.size());
+        if (lazyRecords) {
+            ElasticsearchLazyRecord.FieldIndex fieldIndex = new ElasticsearchLazyRecord.FieldIndex(fieldReaders);
+            for (Object hit : hits) {
+                records.add(new ElasticsearchLazyRecord(fieldIndex, hit));
+            }
+        } else if (extractor != null) {
+            records = extractor.extract(hits, new ElasticsearchParallelExtractor.Extraction<Record>() {
+                @Override
+                public Record extract(Object hit) {
+                    return new Record(ElasticsearchFieldReader.readAll(fieldReaders, hit));
+                }
+            });
+        } else {
+            for (Object hit : hits) {
+                records.add(new Record(ElasticsearchFieldReader.readAll(fieldReaders, hit)));
+            }
+        }
+        return new RecordList(fields, records, metadata);
+    }
+
+    /**
+     * Sends the request through the micro batcher, throwing the error of a failed request.
+     */
+    private ElasticsearchBatchResult microBatch(ElasticsearchBatchRequest batchRequest) throws BridgeError {
+        ElasticsearchBatchResult result = microBatcher.submit(batchRequest);
+        if (result.isSuccessful() == false) {
+            throw result.getError();
+        }
         return result;
     }
 
-    private void testAuthenticationValues(String restEndpoint, String username, String password) throws BridgeError {
+    /**
+     * Builds the _msearch header line of a structure, which is either an index or an index/type.
+     */
+    static Map<String,Object> buildMultiSearchHeader(String structure) {
+        Map<String,Object> header = new LinkedHashMap<String,Object>();
+        String[] parts = structure.split("/", 2);
+        header.put("index", parts[0]);
+        if (parts.length > 1 && StringUtils.isNotBlank(parts[1])) {
+            header.put("type", parts[1]);
+        }
+        return header;
+    }
+
+    /**
+     * Builds the result of a single _msearch response item, items that failed in Elasticsearch
+     * are returned as errors rather than thrown so the rest of the batch is not lost.
+     */
+    ElasticsearchBatchResult buildBatchResult(ElasticsearchBatchRequest batchRequest, String jsonRootPath, Object response) {
+        if (response == null) {
+            return ElasticsearchBatchResult.of(new BridgeError(
+                "The Elasticsearch _msearch response did not include a response for the request."
+            ));
+        }
+        if (response instanceof Map && ((Map)response).containsKey("error")) {
+            Map<String,Object> item = (Map)response;
+            return ElasticsearchBatchResult.of(new BridgeError(
+                String.format(
+                    "The Elasicsearch server returned a HTTP status code of %s, 200 was expected. Response body: %s",
+                    item.get("status"),
+                    JSONValue.toJSONString(item.get("error"))
+                )
+            ));
+        }
+        try {
+            DocumentContext jsonDocument = JsonPath.parse(response);
+            if (ElasticsearchBatchRequest.QUERY_METHOD_COUNT.equals(batchRequest.getQueryMethod())) {
+                return ElasticsearchBatchResult.of(buildCount(jsonDocument));
+            }
+            if (isTotalOnly(batchRequest)) {
+                return ElasticsearchBatchResult.of(buildMetadataRecordList(jsonDocument, batchRequest.getRequest()));
+            }
+            return ElasticsearchBatchResult.of(buildRecordList(jsonDocument, jsonRootPath, batchRequest.getRequest()));
+        } catch (RuntimeException e) {
+            return ElasticsearchBatchResult.of(new BridgeError(
+                "The Elasticsearch _msearch response item could not be read.", e
+            ));
+        }
+    }
+
+    /**
+     * Reads the records root of a response. Elasticsearch leaves empty arrays out of responses
+     * filtered with filter_path, so a search that matched nothing has no hits.hits and an
+     * aggregation without buckets has no buckets, a missing root is read as no records.
+     */
+    private static Object readRoot(DocumentContext jsonDocument, String jsonRootPath) {
+        try {
+            return jsonDocument.read(jsonRootPath);
+        } catch (PathNotFoundException e) {
+            return new ArrayList<Object>();
+        }
+    }
+
+    /**
+     * Reads $.hits.total, which is a number in older versions of Elasticsearch and an object with a
+     * value and relation in newer versions.
+     */
+    private static String readTotalHits(DocumentContext jsonDocument) {
+        Object total = jsonDocument.read("$.hits.total");
+        if (total instanceof Map) {
+            total = ((Map)total).get("value");
+        }
+        return total == null ? null : String.valueOf(total);
+    }
+
+    /**
+     * Reads the relation of $.hits.total, which is gte when the total was not counted exactly.
+     * Older versions of Elasticsearch always count exactly.
+     */
+    private static String readTotalRelation(DocumentContext jsonDocument) {
+        Object total = jsonDocument.read("$.hits.total");
+        if (total instanceof Map && ((Map)total).get("relation") != null) {
+            return String.valueOf(((Map)total).get("relation"));
+        }
+        return "eq";
+    }
+
+    /**
+     * Builds a count from the hit total of a search response.
+     */
+    private static Count buildCount(DocumentContext jsonDocument) {
+        Map<String,String> metadata = new LinkedHashMap<String,String>();
+        metadata.put("countRelation", readTotalRelation(jsonDocument));
+        return new Count(Long.valueOf(readTotalHits(jsonDocument)), metadata);
+    }
+
+    /**
+     * Builds the record list of a metadataOnly search, which has the hit total but no records.
+     */
+    private static RecordList buildMetadataRecordList(DocumentContext jsonDocument, BridgeRequest request) {
+        Map<String,String> metadata = new LinkedHashMap<String,String>();
+        metadata.put("count", readTotalHits(jsonDocument));
+        metadata.put("countRelation", readTotalRelation(jsonDocument));
+        metadata.put("size", "0");
+        return new RecordList(request.getFields(), new ArrayList<Record>(), metadata);
+    }
+
+    /**
+     * Whether the search only asks for the result metadata, such as the count, and not the records.
+     */
+    private static boolean isMetadataOnly(BridgeRequest request) {
+        return "true".equals(request.getMetadata("metadataOnly"));
+    }
+
+    private static boolean isTotalOnly(ElasticsearchBatchRequest batchRequest) {
+        return ElasticsearchBatchRequest.QUERY_METHOD_COUNT.equals(batchRequest.getQueryMethod())
+            || isMetadataOnly(batchRequest.getRequest());
+    }
+
+    /**
+     * Returns the track_total_hits value of searches that read the hit total, which is either
+     * true or the number of hits to count up to.
+     */
+    private Object getTrackTotalHits() {
+        return countAccuracyThreshold > 0 ? (Object)Integer.valueOf(countAccuracyThreshold) : Boolean.TRUE;
+    }
+
+    /**
+     * Records the took value of a search response, count API responses do not have one.
+     */
+    private static void recordTook(ElasticsearchRequestTrace trace, DocumentContext jsonDocument) {
+        Object response = jsonDocument.json();
+        recordTook(trace, (response instanceof Map) ? ((Map)response).get("took") : null);
+    }
+
+    private static void recordTook(ElasticsearchRequestTrace trace, Object took) {
+        if (took instanceof Number) {
+            trace.recordValue(ElasticsearchRequestTrace.VALUE_TOOK, ((Number)took).longValue());
+        }
+    }
+
+    /**
+     * Returns the metrics registry configured by the Metrics Registry property.
+     */
+    private ElasticsearchMetricsRegistry buildMetricsRegistry() throws BridgeError {
+        String registry = properties.getValue(Properties.METRICS_REGISTRY);
+        if (StringUtils.isBlank(registry) || METRICS_REGISTRY_JMX.equals(registry)) {
+            return new ElasticsearchMetrics();
+        }
+        if (METRICS_REGISTRY_NONE.equals(registry)) {
+            return ElasticsearchMetricsRegistry.NONE;
+        }
+        String message = String.format(
+            "The \"%s\" property value (%s) is not the name of an ElasticsearchMetricsRegistry class with a public no argument constructor.",
+            Properties.METRICS_REGISTRY, registry);
+        try {
+            Class<?> registryClass = Class.forName(registry.trim());
+            if (ElasticsearchMetricsRegistry.class.isAssignableFrom(registryClass) == false) {
+                throw new BridgeError(message);
+            }
+            return (ElasticsearchMetricsRegistry)registryClass.newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new BridgeError(message, e);
+        }
+    }
+
+    /**
+     * Registers the gauges of the connection pool, the nodes and the circuit breaker.
+     */
+    private void registerGauges() {
+        final PoolingHttpClientConnectionManager manager = this.connectionManager;
+        final ElasticsearchNodePool pool = this.nodePool;
+        final ElasticsearchCircuitBreaker breaker = this.circuitBreaker;
+        metrics.registerGauge("connections.leased", new ElasticsearchMetricsRegistry.Gauge() {
+            @Override
+            public Object getValue() {
+                return manager.getTotalStats().getLeased();
+            }
+        });
+        metrics.registerGauge("connections.available", new ElasticsearchMetricsRegistry.Gauge() {
+            @Override
+            public Object getValue() {
+                return manager.getTotalStats().getAvailable();
+            }
+        });
+        metrics.registerGauge("connections.pending", new ElasticsearchMetricsRegistry.Gauge() {
+            @Override
+            public Object getValue() {
+                return manager.getTotalStats().getPending();
+            }
+        });
+        metrics.registerGauge("connections.max", new ElasticsearchMetricsRegistry.Gauge() {
+            @Override
+            public Object getValue() {
+                return manager.getTotalStats().getMax();
+            }
+        });
+        metrics.registerGauge("nodes.total", new ElasticsearchMetricsRegistry.Gauge() {
+            @Override
+            public Object getValue() {
+                return pool.size();
+            }
+        });
+        metrics.registerGauge("nodes.healthy", new ElasticsearchMetricsRegistry.Gauge() {
+            @Override
+            public Object getValue() {
+                int healthy = 0;
+                for (ElasticsearchNodePool.Node node : pool.getNodes()) {
+                    if (node.isHealthy()) {
+                        healthy++;
+                    }
+                }
+                return healthy;
+            }
+        });
+        if (breaker != null) {
+            metrics.registerGauge("circuitBreaker.state", new ElasticsearchMetricsRegistry.Gauge() {
+                @Override
+                public Object getValue() {
+                    return breaker.getState();
+                }
+            });
+        }
+    }
+
+    private static Charset getCharset(HttpEntity entity) {
+        ContentType contentType = ContentType.get(entity);
+        if (contentType != null && contentType.getCharset() != null) {
+            return contentType.getCharset();
+        }
+        return Charset.forName("UTF-8");
+    }
+
+    /**
+     * Returns the asynchronous client, starting it the first time it is needed.
+     */
+    private synchronized CloseableHttpAsyncClient getAsyncClient() throws BridgeError {
+        if (this.asyncClient == null) {
+            final long keepAlive = getIntegerProperty(Properties.KEEP_ALIVE, 60) * 1000L;
+            this.asyncClient = HttpAsyncClients.custom()
+                .setMaxConnPerRoute(getIntegerProperty(Properties.MAX_CONNECTIONS_PER_ROUTE, 20))
+                .setMaxConnTotal(getIntegerProperty(Properties.MAX_CONNECTIONS_TOTAL, 50))
+                .setDefaultRequestConfig(this.requestConfig)
+                .setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy() {
+                    @Override
+                    public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                        long duration = super.getKeepAliveDuration(response, context);
+                        return (duration < 0 || duration > keepAlive) ? keepAlive : duration;
+                    }
+                })
+                .build();
+            this.asyncClient.start();
+        }
+        return this.asyncClient;
+    }
+
+    /**
+     * Returns the executor the responses of the asynchronous client are read and parsed on, and
+     * its retries are scheduled on, starting it the first time it is needed.
+     */
+    private synchronized ScheduledExecutorService getResponseExecutor() {
+        if (this.responseExecutor == null) {
+            final AtomicInteger threadNumber = new AtomicInteger();
+            this.responseExecutor = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "elasticsearch-async-response-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return this.responseExecutor;
+    }
+
+    /**
+     * Parses the response on the response executor rather than on the I/O dispatcher threads of
+     * the asynchronous client, finishing the trace of the operation once the result is complete.
+     */
+    private <T> CompletableFuture<T> parseAsync(final CompletableFuture<String> response, final ResponseParser<T> parser, final ElasticsearchRequestTrace trace) {
+        final CompletableFuture<T> result = response.thenApplyAsync(new Function<String, T>() {
+            @Override
+            public T apply(String jsonResponse) {
+                try {
+                    long start = System.nanoTime();
+                    DocumentContext jsonDocument = JsonPath.parse(jsonResponse);
+                    T parsed = parser.parse(jsonDocument);
+                    trace.record(ElasticsearchRequestTrace.PHASE_EXTRACT, start);
+                    recordTook(trace, jsonDocument);
+                    return parsed;
+                } catch (BridgeError e) {
+                    throw new CompletionException(e);
+                }
+            }
+        }, getResponseExecutor());
+        // Propagate cancellation back to the request.
+        result.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T value, Throwable error) {
+                if (result.isCancelled()) {
+                    response.cancel(true);
+                }
+                if (error == null) {
+                    trace.succeeded(value);
+                }
+                trace.finish();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Waits for an asynchronous result, cancelling the request if the waiting thread is
+     * interrupted.
+     */
+    private static <T> T await(CompletableFuture<T> future) throws BridgeError {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BridgeError) {
+                throw (BridgeError)e.getCause();
+            }
+            throw new BridgeError("Unable to make a request to the Elasticsearch server", e.getCause());
+        } catch (CancellationException e) {
+            throw new BridgeError("The Elasticsearch request was cancelled", e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new BridgeError("Interrupted while waiting for an Elasticsearch request", e);
+        }
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable error) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        future.completeExceptionally(error);
+        return future;
+    }
+
+    /** Builds the result of a query from its parsed response body. */
+    private interface ResponseParser<T> {
+        T parse(DocumentContext jsonDocument) throws BridgeError;
+    }
+
+    /** Reads the entity of a successful Elasticsearch response. */
+    private interface EntityReader<T> {
+        T read(HttpEntity entity) throws IOException, BridgeError;
+    }
+
+    /** Reads the response as JSON text, binary responses are converted to JSON. */
+    private static final EntityReader<String> STRING_ENTITY_READER = new EntityReader<String>() {
+        @Override
+        public String read(HttpEntity entity) throws IOException, BridgeError {
+            ElasticsearchBinaryFormat format = getBinaryFormat(entity);
+            if (format != null) {
+                InputStream input = entity.getContent();
+                try {
+                    return format.toJson(input);
+                } finally {
+                    input.close();
+                }
+            }
+            return EntityUtils.toString(entity);
+        }
+    };
+
+    /**
+     * Reads the response as JSON text, or the values decoded from it when the response is in a
+     * binary format.
+     */
+    private static final EntityReader<Object> DOCUMENT_ENTITY_READER = new EntityReader<Object>() {
+        @Override
+        public Object read(HttpEntity entity) throws IOException, BridgeError {
+            ElasticsearchBinaryFormat format = getBinaryFormat(entity);
+            if (format != null) {
+                InputStream input = entity.getContent();
+                try {
+                    return format.read(input);
+                } finally {
+                    input.close();
+                }
+            }
+            return EntityUtils.toString(entity);
+        }
+    };
+
+    private static ElasticsearchBinaryFormat getBinaryFormat(HttpEntity entity) {
+        Header contentType = entity.getContentType();
+        return contentType == null ? null : ElasticsearchBinaryFormat.forContentType(contentType.getValue());
+    }
+
+    private static boolean isGzipped(HttpEntity entity) {
+        Header contentEncoding = entity.getContentEncoding();
+        return contentEncoding != null && CONTENT_ENCODING_GZIP.equalsIgnoreCase(contentEncoding.getValue().trim());
+    }
+
+    /** Counts the bytes read from the content of a response entity. */
+    private static class CountingEntity extends HttpEntityWrapper {
+
+        private long byteCount = 0;
+
+        private CountingEntity(HttpEntity entity) {
+            super(entity);
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new FilterInputStream(super.getContent()) {
+                @Override
+                public int read() throws IOException {
+                    int value = super.read();
+                    if (value >= 0) {
+                        byteCount++;
+                    }
+                    return value;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int read = super.read(buffer, offset, length);
+                    if (read > 0) {
+                        byteCount += read;
+                    }
+                    return read;
+                }
+
+                @Override
+                public long skip(long length) throws IOException {
+                    long skipped = super.skip(length);
+                    byteCount += skipped;
+                    return skipped;
+                }
+            };
+        }
+
+        private long getByteCount() {
+            return byteCount;
+        }
+
+    }
+
+    private void testAuthenticationValues(String username, String password) throws BridgeError {
+        // The credentials only have to be checked against one node, nodes that can not be
+        // reached are taken out of rotation.
+        for (ElasticsearchNodePool.Node node : nodePool.getNodes()) {
+            try {
+                testAuthenticationValues(node.getUrl(), username, password);
+                return;
+            } catch (IOException e) {
+                nodePool.markFailed(node);
+                logger.error(e.getMessage());
+            }
+        }
+        throw new BridgeError("Unable to make a connection to the Elasticsearch health check API.");
+    }
+
+    private void testAuthenticationValues(String restEndpoint, String username, String password) throws BridgeError, IOException {
         logger.debug("Testing the authentication credentials");
         HttpGetWithEntity get = new HttpGetWithEntity();
         URI uri;
@@ -404,28 +2768,20 @@ public class ElasticsearchAdapter implements BridgeAdapter {
             addBasicAuthenticationHeader(get, this.username, this.password);
         }
 
-        HttpClient client = HttpClients.createDefault();
-        HttpResponse response;
-        try {
-            response = client.execute(get);
-            HttpEntity entity = response.getEntity();
-            EntityUtils.consume(entity);
-            Integer responseCode = response.getStatusLine().getStatusCode();
-            if (responseCode == 401) {
-                throw new BridgeError("Unauthorized: The inputted Username/Password combination is not valid.");
-            }
-            if (responseCode < 200 || responseCode >= 300) {
-                throw new BridgeError(
-                    String.format(
-                        "Unsuccessful HTTP response - the server returned a %s status code, expected 200.",
-                        responseCode
-                    )
-                );
-            }
-        }
-        catch (IOException e) {
-            logger.error(e.getMessage());
-            throw new BridgeError("Unable to make a connection to the Elasticsearch health check API.");
+        HttpResponse response = client.execute(get);
+        HttpEntity entity = response.getEntity();
+        EntityUtils.consume(entity);
+        Integer responseCode = response.getStatusLine().getStatusCode();
+        if (responseCode == 401) {
+            throw new BridgeError("Unauthorized: The inputted Username/Password combination is not valid.");
+        }
+        if (responseCode < 200 || responseCode >= 300) {
+            throw new BridgeError(
+                String.format(
+                    "Unsuccessful HTTP response - the server returned a %s status code, expected 200.",
+                    responseCode
+                )
+            );
         }
     }
 
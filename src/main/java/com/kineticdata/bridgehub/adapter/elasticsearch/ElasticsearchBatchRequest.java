@@ -0,0 +1,37 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+
+/**
+ * A single count or search request of a batch sent through ElasticsearchAdapter.batch.
+ */
+public class ElasticsearchBatchRequest {
+
+    public static final String QUERY_METHOD_COUNT = "count";
+    public static final String QUERY_METHOD_SEARCH = "search";
+
+    private final String queryMethod;
+    private final BridgeRequest request;
+
+    public ElasticsearchBatchRequest(String queryMethod, BridgeRequest request) {
+        this.queryMethod = queryMethod;
+        this.request = request;
+    }
+
+    public static ElasticsearchBatchRequest count(BridgeRequest request) {
+        return new ElasticsearchBatchRequest(QUERY_METHOD_COUNT, request);
+    }
+
+    public static ElasticsearchBatchRequest search(BridgeRequest request) {
+        return new ElasticsearchBatchRequest(QUERY_METHOD_SEARCH, request);
+    }
+
+    public String getQueryMethod() {
+        return queryMethod;
+    }
+
+    public BridgeRequest getRequest() {
+        return request;
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.Count;
+import com.kineticdata.bridgehub.adapter.RecordList;
+
+/**
+ * The result of a single request of a batch. Exactly one of the count, the record list or the
+ * error is set, depending on the query method of the request and whether it succeeded.
+ */
+public class ElasticsearchBatchResult {
+
+    private final Count count;
+    private final RecordList recordList;
+    private final BridgeError error;
+
+    private ElasticsearchBatchResult(Count count, RecordList recordList, BridgeError error) {
+        this.count = count;
+        this.recordList = recordList;
+        this.error = error;
+    }
+
+    public static ElasticsearchBatchResult of(Count count) {
+        return new ElasticsearchBatchResult(count, null, null);
+    }
+
+    public static ElasticsearchBatchResult of(RecordList recordList) {
+        return new ElasticsearchBatchResult(null, recordList, null);
+    }
+
+    public static ElasticsearchBatchResult of(BridgeError error) {
+        return new ElasticsearchBatchResult(null, null, error);
+    }
+
+    public boolean isSuccessful() {
+        return error == null;
+    }
+
+    public Count getCount() {
+        return count;
+    }
+
+    public RecordList getRecordList() {
+        return recordList;
+    }
+
+    public BridgeError getError() {
+        return error;
+    }
+
+}
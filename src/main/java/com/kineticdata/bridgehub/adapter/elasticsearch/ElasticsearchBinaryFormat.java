@@ -0,0 +1,263 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import org.apache.commons.codec.binary.Base64;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.ParseException;
+
+/**
+ * A binary response format Elasticsearch can return instead of JSON, SMILE or CBOR.
+ *
+ * Binary responses are decoded into the same values the JSON parsers produce, so they can be read
+ * by the same code. parse() reports the response to a json-simple ContentHandler, such as the
+ * streaming ElasticsearchResponseParser, with the values JSONParser would report. read() builds
+ * the whole response with the value types JsonPath parses JSON into, and toJson() turns it back
+ * into JSON text for the code that works with response strings.
+ */
+public class ElasticsearchBinaryFormat {
+
+    public static final ElasticsearchBinaryFormat SMILE =
+        new ElasticsearchBinaryFormat("SMILE", "application/smile", new SmileFactory());
+    public static final ElasticsearchBinaryFormat CBOR =
+        new ElasticsearchBinaryFormat("CBOR", "application/cbor", new CBORFactory());
+
+    private final String name;
+    private final String contentType;
+    private final JsonFactory factory;
+
+    private ElasticsearchBinaryFormat(String name, String contentType, JsonFactory factory) {
+        this.name = name;
+        this.contentType = contentType;
+        this.factory = factory;
+    }
+
+    /**
+     * Returns the format of the given name, or null for any other name, such as JSON.
+     */
+    public static ElasticsearchBinaryFormat forName(String name) {
+        for (ElasticsearchBinaryFormat format : new ElasticsearchBinaryFormat[] {SMILE, CBOR}) {
+            if (format.name.equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the format of a response content type, or null when the response is not in a
+     * binary format. Parameters of the content type are ignored.
+     */
+    public static ElasticsearchBinaryFormat forContentType(String contentType) {
+        if (contentType != null) {
+            String mimeType = contentType.split(";", 2)[0].trim();
+            for (ElasticsearchBinaryFormat format : new ElasticsearchBinaryFormat[] {SMILE, CBOR}) {
+                if (format.contentType.equalsIgnoreCase(mimeType)) {
+                    return format;
+                }
+            }
+        }
+        return null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    JsonFactory getFactory() {
+        return factory;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * DECODING
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * Reports the response read from the input to the handler, the input is not closed.
+     */
+    public <T extends ContentHandler> T parse(InputStream input, T handler) throws BridgeError, IOException {
+        JsonParser parser = factory.createParser(input);
+        parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        // Whether each of the enclosing containers is an object, the innermost first.
+        LinkedList<Boolean> containers = new LinkedList<Boolean>();
+        try {
+            handler.startJSON();
+            JsonToken token;
+            boolean proceed = true;
+            while (proceed && (token = parser.nextToken()) != null) {
+                switch (token) {
+                    case START_OBJECT:
+                        containers.push(Boolean.TRUE);
+                        proceed = handler.startObject();
+                        break;
+                    case START_ARRAY:
+                        containers.push(Boolean.FALSE);
+                        proceed = handler.startArray();
+                        break;
+                    case FIELD_NAME:
+                        proceed = handler.startObjectEntry(parser.getCurrentName());
+                        break;
+                    case END_OBJECT:
+                        containers.pop();
+                        proceed = handler.endObject() && endValue(handler, containers);
+                        break;
+                    case END_ARRAY:
+                        containers.pop();
+                        proceed = handler.endArray() && endValue(handler, containers);
+                        break;
+                    default:
+                        proceed = handler.primitive(readPrimitive(parser, token)) && endValue(handler, containers);
+                        break;
+                }
+            }
+            handler.endJSON();
+        } catch (ParseException e) {
+            throw new BridgeError(String.format("The Elasticsearch %s response could not be read.", name), e);
+        } finally {
+            parser.close();
+        }
+        return handler;
+    }
+
+    /**
+     * Reads the whole response, objects are read into maps and arrays into lists.
+     */
+    public Object read(InputStream input) throws BridgeError, IOException {
+        return parse(input, new ValueBuilder()).getValue();
+    }
+
+    /**
+     * Reads the whole response and writes it as JSON text.
+     */
+    public String toJson(InputStream input) throws BridgeError, IOException {
+        return JSONValue.toJSONString(read(input));
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPERS
+     *--------------------------------------------------------------------------------------------*/
+
+    private static boolean endValue(ContentHandler handler, LinkedList<Boolean> containers) throws ParseException, IOException {
+        // Values inside an object complete the object entry they are the value of.
+        return (containers.isEmpty() || containers.peek() == Boolean.FALSE) || handler.endObjectEntry();
+    }
+
+    /**
+     * Reads a scalar value the way JSONParser reports it, whole numbers as Longs and decimals as
+     * Doubles. Binary values are written as base64 strings, which is how JSON responses show them.
+     */
+    private static Object readPrimitive(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                return (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER)
+                    ? parser.getBigIntegerValue()
+                    : (Object)Long.valueOf(parser.getLongValue());
+            case VALUE_NUMBER_FLOAT:
+                return Double.valueOf(parser.getDoubleValue());
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_EMBEDDED_OBJECT:
+                Object embedded = parser.getEmbeddedObject();
+                return (embedded instanceof byte[]) ? Base64.encodeBase64String((byte[])embedded) : embedded;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Builds the response value with the types JsonPath parses JSON into, whole numbers that fit
+     * are Integers rather than Longs.
+     */
+    private static class ValueBuilder implements ContentHandler {
+        private final LinkedList<Object> containers = new LinkedList<Object>();
+        private final LinkedList<String> keys = new LinkedList<String>();
+        private Object value;
+
+        Object getValue() {
+            return value;
+        }
+
+        @Override
+        public void startJSON() {
+        }
+
+        @Override
+        public void endJSON() {
+        }
+
+        @Override
+        public boolean startObject() {
+            containers.push(new JSONObject());
+            return true;
+        }
+
+        @Override
+        public boolean endObject() {
+            add(containers.pop());
+            return true;
+        }
+
+        @Override
+        public boolean startObjectEntry(String key) {
+            keys.push(key);
+            return true;
+        }
+
+        @Override
+        public boolean endObjectEntry() {
+            keys.pop();
+            return true;
+        }
+
+        @Override
+        public boolean startArray() {
+            containers.push(new JSONArray());
+            return true;
+        }
+
+        @Override
+        public boolean endArray() {
+            add(containers.pop());
+            return true;
+        }
+
+        @Override
+        public boolean primitive(Object primitive) {
+            if (primitive instanceof Long && (Long)primitive >= Integer.MIN_VALUE && (Long)primitive <= Integer.MAX_VALUE) {
+                primitive = Integer.valueOf(((Long)primitive).intValue());
+            }
+            add(primitive);
+            return true;
+        }
+
+        private void add(Object element) {
+            Object container = containers.peek();
+            if (container instanceof JSONObject) {
+                ((JSONObject)container).put(keys.peek(), element);
+            } else if (container instanceof JSONArray) {
+                ((JSONArray)container).add(element);
+            } else {
+                value = element;
+            }
+        }
+    }
+
+}
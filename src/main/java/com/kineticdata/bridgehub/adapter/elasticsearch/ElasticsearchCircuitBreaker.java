@@ -0,0 +1,111 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+/**
+ * Stops requests from being sent to a cluster that keeps failing.
+ *
+ * The breaker opens once the configured number of consecutive requests have failed, requests are
+ * then rejected without being sent until the open duration has passed. The breaker is then half
+ * open and lets a single trial request through, closing again if it succeeds and reopening if it
+ * fails.
+ */
+public class ElasticsearchCircuitBreaker {
+
+    public static final String STATE_CLOSED = "Closed";
+    public static final String STATE_OPEN = "Open";
+    public static final String STATE_HALF_OPEN = "Half Open";
+
+    private final int failureThreshold;
+    private final long openDuration;
+
+    private String state = STATE_CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt = 0;
+    private boolean trialInFlight = false;
+    private long timesOpened = 0;
+    private long rejections = 0;
+
+    /**
+     * @param failureThreshold the number of consecutive failures that opens the breaker
+     * @param openDuration how long the breaker stays open in milliseconds
+     */
+    public ElasticsearchCircuitBreaker(int failureThreshold, long openDuration) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PUBLIC METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * Whether a request may be sent. Every allowed request must be followed by a call to
+     * recordSuccess, recordFailure or recordAbandoned.
+     */
+    public synchronized boolean allowRequest() {
+        if (STATE_OPEN.equals(state) && System.currentTimeMillis() - openedAt >= openDuration) {
+            state = STATE_HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (STATE_CLOSED.equals(state)) {
+            return true;
+        }
+        if (STATE_HALF_OPEN.equals(state) && trialInFlight == false) {
+            trialInFlight = true;
+            return true;
+        }
+        rejections++;
+        return false;
+    }
+
+    /**
+     * Records a request the cluster responded to, which closes the breaker.
+     */
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        state = STATE_CLOSED;
+    }
+
+    /**
+     * Records a request that failed because of the cluster, such as a connection failure or a
+     * server error.
+     */
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        trialInFlight = false;
+        if (STATE_HALF_OPEN.equals(state) || (STATE_CLOSED.equals(state) && consecutiveFailures >= failureThreshold)) {
+            state = STATE_OPEN;
+            openedAt = System.currentTimeMillis();
+            timesOpened++;
+        }
+    }
+
+    /**
+     * Records a request that ended without telling whether the cluster is healthy, such as a
+     * cancelled request.
+     */
+    public synchronized void recordAbandoned() {
+        trialInFlight = false;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * STATISTICS
+     *--------------------------------------------------------------------------------------------*/
+
+    public synchronized String getState() {
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public synchronized long getTimesOpened() {
+        return timesOpened;
+    }
+
+    public synchronized long getRejections() {
+        return rejections;
+    }
+
+}
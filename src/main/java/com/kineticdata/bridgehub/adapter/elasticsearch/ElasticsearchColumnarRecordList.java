@@ -0,0 +1,568 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.kineticdata.bridgehub.adapter.Record;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * A record list that stores its values by field rather than as a map per record.
+ *
+ * Each field is kept in a single column sized to its values: whole numbers and decimals in
+ * primitive arrays, strings with few distinct values as byte or char codes into a dictionary, and
+ * anything else in an array of references with repeated strings shared. The records are read-only
+ * views of a row, created when they are read, so they answer getValue, getRecord and toJsonString
+ * the same as records built from maps but are not the same instance each time they are read.
+ *
+ * The memory used by the columns and the memory the same records would have used as maps are
+ * estimated when the list is built, approximating object sizes on a 64 bit JVM with compressed
+ * references.
+ */
+public class ElasticsearchColumnarRecordList extends RecordList {
+
+    private final Rows rows;
+    private final long estimatedMapBytes;
+
+    private ElasticsearchColumnarRecordList(List<String> fields, Rows rows, Map<String,String> metadata, long estimatedMapBytes) {
+        super(fields, rows, metadata);
+        this.rows = rows;
+        this.estimatedMapBytes = estimatedMapBytes;
+    }
+
+    /**
+     * Builds a columnar copy of the records.
+     */
+    public static ElasticsearchColumnarRecordList of(List<String> fields, List<Record> records, Map<String,String> metadata) {
+        Builder builder = new Builder(ElasticsearchFieldReader.forFields(fields));
+        for (Record record : records) {
+            builder.addRecord(record);
+        }
+        return builder.build(fields, metadata);
+    }
+
+    /**
+     * Returns the estimated number of bytes used by the columns.
+     */
+    public long getEstimatedBytes() {
+        long bytes = 0;
+        for (Column column : rows.columns) {
+            bytes += column.estimateBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the estimated number of bytes the records would use if each one held a map.
+     */
+    public long getEstimatedMapBytes() {
+        return estimatedMapBytes;
+    }
+
+    public long getBytesSaved() {
+        return estimatedMapBytes - getEstimatedBytes();
+    }
+
+    /**
+     * Returns how the values of the field are stored, such as int, double, dictionary or object,
+     * or null when the field is not one of the fields of the list.
+     */
+    String getStorage(String field) {
+        int position = rows.fieldIndex.getPosition(field);
+        return position < 0 ? null : rows.columns[position].getStorage();
+    }
+
+    /**
+     * Collects the values of the records one at a time and then compacts them into columns.
+     * Repeated strings are shared as they are added, so the values held while building are not
+     * duplicated either.
+     */
+    public static class Builder {
+        private final ElasticsearchLazyRecord.FieldIndex fieldIndex;
+        private final List<List<Object>> values = new ArrayList<List<Object>>();
+        private final List<Map<String,String>> strings = new ArrayList<Map<String,String>>();
+        private int size = 0;
+        private long estimatedMapBytes = 0;
+
+        public Builder(List<ElasticsearchFieldReader> fieldReaders) {
+            this.fieldIndex = new ElasticsearchLazyRecord.FieldIndex(fieldReaders);
+            for (int i = 0; i < fieldIndex.size(); i++) {
+                values.add(new ArrayList<Object>());
+                strings.add(new HashMap<String,String>());
+            }
+        }
+
+        /**
+         * Adds a record read from the parsed hit, fields that can not be resolved are null.
+         */
+        public Builder addHit(Object hit) {
+            return addRow(readRow(hit));
+        }
+
+        /**
+         * Reads the values of a record from the parsed hit, in the order of the columns, without
+         * adding them. Unlike adding, reading is thread safe, so hits can be read in parallel and
+         * then added with addRow.
+         */
+        public Object[] readRow(Object hit) {
+            Object[] row = new Object[fieldIndex.size()];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = fieldIndex.read(i, hit);
+            }
+            return row;
+        }
+
+        /**
+         * Adds a record of values read by readRow.
+         */
+        public Builder addRow(Object[] row) {
+            for (int i = 0; i < fieldIndex.size(); i++) {
+                add(i, row[i]);
+            }
+            size++;
+            estimatedMapBytes += Sizes.mapRecord(fieldIndex.size());
+            return this;
+        }
+
+        /**
+         * Adds the values of a record.
+         */
+        public Builder addRecord(Record record) {
+            for (int i = 0; i < fieldIndex.size(); i++) {
+                add(i, record.getValue(fieldIndex.getField(i)));
+            }
+            size++;
+            estimatedMapBytes += Sizes.mapRecord(fieldIndex.size());
+            return this;
+        }
+
+        public ElasticsearchColumnarRecordList build(List<String> fields, Map<String,String> metadata) {
+            Column[] columns = new Column[fieldIndex.size()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = Column.compact(values.get(i), strings.get(i).size());
+            }
+            return new ElasticsearchColumnarRecordList(fields, new Rows(fieldIndex, columns, size), metadata, estimatedMapBytes);
+        }
+
+        private void add(int position, Object value) {
+            // Each record's map would hold its own copy of a string read from the response.
+            estimatedMapBytes += Sizes.value(value);
+            if (value instanceof String) {
+                Map<String,String> shared = strings.get(position);
+                String existing = shared.get(value);
+                if (existing == null) {
+                    shared.put((String)value, (String)value);
+                } else {
+                    value = existing;
+                }
+            }
+            values.get(position).add(value);
+        }
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPERS
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * The records of the list, each a view of one row of the columns.
+     */
+    private static class Rows extends AbstractList<Record> implements RandomAccess {
+        private final ElasticsearchLazyRecord.FieldIndex fieldIndex;
+        private final Column[] columns;
+        private final int size;
+
+        Rows(ElasticsearchLazyRecord.FieldIndex fieldIndex, Column[] columns, int size) {
+            this.fieldIndex = fieldIndex;
+            this.columns = columns;
+            this.size = size;
+        }
+
+        @Override
+        public Record get(int row) {
+            if (row < 0 || row >= size) {
+                throw new IndexOutOfBoundsException(String.format("Index: %d, Size: %d", row, size));
+            }
+            return new Record(new Row(this, row));
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * The values of a row, read from the columns. Rows are read-only.
+     */
+    private static class Row extends AbstractMap<String,Object> {
+        private final Rows rows;
+        private final int row;
+
+        Row(Rows rows, int row) {
+            this.rows = rows;
+            this.row = row;
+        }
+
+        @Override
+        public Object get(Object key) {
+            int position = rows.fieldIndex.getPosition(key);
+            return position < 0 ? null : rows.columns[position].get(row);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return rows.fieldIndex.getPosition(key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return rows.columns.length;
+        }
+
+        @Override
+        public Set<Map.Entry<String,Object>> entrySet() {
+            return new AbstractSet<Map.Entry<String,Object>>() {
+                @Override
+                public int size() {
+                    return rows.columns.length;
+                }
+
+                @Override
+                public Iterator<Map.Entry<String,Object>> iterator() {
+                    return new Iterator<Map.Entry<String,Object>>() {
+                        private int position = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return position < rows.columns.length;
+                        }
+
+                        @Override
+                        public Map.Entry<String,Object> next() {
+                            if (position >= rows.columns.length) {
+                                throw new NoSuchElementException();
+                            }
+                            int current = position++;
+                            return new AbstractMap.SimpleImmutableEntry<String,Object>(
+                                rows.fieldIndex.getField(current), rows.columns[current].get(row));
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+    }
+
+    /**
+     * The values of one field.
+     */
+    private static abstract class Column {
+
+        abstract Object get(int row);
+
+        abstract String getStorage();
+
+        abstract long estimateBytes();
+
+        /**
+         * Returns the most compact column that holds the values, distinctStrings being the number
+         * of different strings among them.
+         */
+        static Column compact(List<Object> values, int distinctStrings) {
+            Class<?> type = null;
+            boolean mixed = false;
+            for (Object value : values) {
+                if (value != null) {
+                    if (type == null) {
+                        type = value.getClass();
+                    } else if (type != value.getClass()) {
+                        mixed = true;
+                        break;
+                    }
+                }
+            }
+            if (mixed == false && type == null) {
+                return new NullColumn();
+            } else if (mixed == false && type == Integer.class) {
+                return new IntColumn(values);
+            } else if (mixed == false && type == Long.class) {
+                return new LongColumn(values);
+            } else if (mixed == false && type == Double.class) {
+                return new DoubleColumn(values);
+            } else if (mixed == false && type == String.class && distinctStrings < Character.MAX_VALUE) {
+                return new DictionaryColumn(values, distinctStrings);
+            }
+            return new ObjectColumn(values);
+        }
+    }
+
+    private static class NullColumn extends Column {
+        @Override
+        Object get(int row) {
+            return null;
+        }
+
+        @Override
+        String getStorage() {
+            return "null";
+        }
+
+        @Override
+        long estimateBytes() {
+            return Sizes.OBJECT;
+        }
+    }
+
+    private static class IntColumn extends Column {
+        private final int[] values;
+        private final BitSet nulls;
+
+        IntColumn(List<Object> source) {
+            values = new int[source.size()];
+            nulls = new BitSet(source.size());
+            for (int i = 0; i < values.length; i++) {
+                Object value = source.get(i);
+                if (value == null) {
+                    nulls.set(i);
+                } else {
+                    values[i] = (Integer)value;
+                }
+            }
+        }
+
+        @Override
+        Object get(int row) {
+            return nulls.get(row) ? null : (Object)Integer.valueOf(values[row]);
+        }
+
+        @Override
+        String getStorage() {
+            return "int";
+        }
+
+        @Override
+        long estimateBytes() {
+            return Sizes.array(values.length, 4) + Sizes.bitSet(nulls);
+        }
+    }
+
+    private static class LongColumn extends Column {
+        private final long[] values;
+        private final BitSet nulls;
+
+        LongColumn(List<Object> source) {
+            values = new long[source.size()];
+            nulls = new BitSet(source.size());
+            for (int i = 0; i < values.length; i++) {
+                Object value = source.get(i);
+                if (value == null) {
+                    nulls.set(i);
+                } else {
+                    values[i] = (Long)value;
+                }
+            }
+        }
+
+        @Override
+        Object get(int row) {
+            return nulls.get(row) ? null : (Object)Long.valueOf(values[row]);
+        }
+
+        @Override
+        String getStorage() {
+            return "long";
+        }
+
+        @Override
+        long estimateBytes() {
+            return Sizes.array(values.length, 8) + Sizes.bitSet(nulls);
+        }
+    }
+
+    private static class DoubleColumn extends Column {
+        private final double[] values;
+        private final BitSet nulls;
+
+        DoubleColumn(List<Object> source) {
+            values = new double[source.size()];
+            nulls = new BitSet(source.size());
+            for (int i = 0; i < values.length; i++) {
+                Object value = source.get(i);
+                if (value == null) {
+                    nulls.set(i);
+                } else {
+                    values[i] = (Double)value;
+                }
+            }
+        }
+
+        @Override
+        Object get(int row) {
+            return nulls.get(row) ? null : (Object)Double.valueOf(values[row]);
+        }
+
+        @Override
+        String getStorage() {
+            return "double";
+        }
+
+        @Override
+        long estimateBytes() {
+            return Sizes.array(values.length, 8) + Sizes.bitSet(nulls);
+        }
+    }
+
+    /**
+     * Strings stored as codes into a dictionary of the distinct values, code 0 being null. The
+     * codes are bytes when there are fewer than 256 values and chars otherwise.
+     */
+    private static class DictionaryColumn extends Column {
+        private final String[] dictionary;
+        private final byte[] byteCodes;
+        private final char[] charCodes;
+
+        DictionaryColumn(List<Object> source, int distinctStrings) {
+            dictionary = new String[distinctStrings + 1];
+            boolean bytes = dictionary.length <= 256;
+            byteCodes = bytes ? new byte[source.size()] : null;
+            charCodes = bytes ? null : new char[source.size()];
+            Map<String,Integer> codes = new HashMap<String,Integer>();
+            for (int i = 0; i < source.size(); i++) {
+                String value = (String)source.get(i);
+                int code = 0;
+                if (value != null) {
+                    Integer existing = codes.get(value);
+                    if (existing == null) {
+                        code = codes.size() + 1;
+                        codes.put(value, code);
+                        dictionary[code] = value;
+                    } else {
+                        code = existing;
+                    }
+                }
+                if (bytes) {
+                    byteCodes[i] = (byte)code;
+                } else {
+                    charCodes[i] = (char)code;
+                }
+            }
+        }
+
+        @Override
+        Object get(int row) {
+            return dictionary[byteCodes != null ? (byteCodes[row] & 0xFF) : charCodes[row]];
+        }
+
+        @Override
+        String getStorage() {
+            return "dictionary";
+        }
+
+        @Override
+        long estimateBytes() {
+            long bytes = Sizes.array(dictionary.length, Sizes.REFERENCE);
+            for (String value : dictionary) {
+                bytes += Sizes.value(value);
+            }
+            return bytes + (byteCodes != null ? Sizes.array(byteCodes.length, 1) : Sizes.array(charCodes.length, 2));
+        }
+    }
+
+    /**
+     * Values of mixed types, or other types such as objects and booleans, held as references.
+     * Repeated strings were already shared by the builder.
+     */
+    private static class ObjectColumn extends Column {
+        private final Object[] values;
+
+        ObjectColumn(List<Object> source) {
+            values = source.toArray();
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        String getStorage() {
+            return "object";
+        }
+
+        @Override
+        long estimateBytes() {
+            long bytes = Sizes.array(values.length, Sizes.REFERENCE);
+            Set<Object> counted = new HashSet<Object>();
+            for (Object value : values) {
+                if ((value instanceof String) == false || counted.add(value)) {
+                    bytes += Sizes.value(value);
+                }
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Approximate object sizes in bytes on a 64 bit JVM with compressed references. Objects and
+     * arrays nested in values are retained the same way by maps and columns, so they are not
+     * counted.
+     */
+    private static class Sizes {
+        static final int OBJECT = 16;
+        static final int REFERENCE = 4;
+        private static final int ARRAY_HEADER = 16;
+        private static final int RECORD = 24;
+        private static final int HASH_MAP = 48;
+        private static final int HASH_MAP_ENTRY = 32;
+
+        static long align(long bytes) {
+            return (bytes + 7) & ~7L;
+        }
+
+        static long array(int length, int elementSize) {
+            return align(ARRAY_HEADER + (long)length * elementSize);
+        }
+
+        static long bitSet(BitSet bits) {
+            return 24 + array((bits.size() + 63) / 64, 8);
+        }
+
+        static long value(Object value) {
+            if (value instanceof String) {
+                return 24 + array(((String)value).length(), 2);
+            } else if (value instanceof Integer) {
+                return 16;
+            } else if (value instanceof Long || value instanceof Double) {
+                return 24;
+            }
+            return 0;
+        }
+
+        /**
+         * The record, its HashMap, table and entries, not counting the values.
+         */
+        static long mapRecord(int fields) {
+            int capacity = 16;
+            while (fields > capacity * 3 / 4) {
+                capacity *= 2;
+            }
+            return RECORD + HASH_MAP + array(capacity, REFERENCE) + (long)fields * HASH_MAP_ENTRY;
+        }
+    }
+
+}
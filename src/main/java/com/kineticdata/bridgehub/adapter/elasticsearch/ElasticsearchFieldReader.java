@@ -0,0 +1,167 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.jayway.jsonpath.InvalidPathException;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.PathNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Reads a single bridge field from a parsed hit.
+ *
+ * Readers are compiled once per field expression and kept in a bounded, shared cache so the
+ * JsonPath expression is not re-parsed for every hit of every request. Plain dotted property
+ * names (such as _source.app.name) skip the JsonPath engine and walk the hit maps directly.
+ * Both forms behave like JsonPath.parse(hit).read(field), including throwing an
+ * InvalidPathException when the path can not be resolved.
+ */
+public class ElasticsearchFieldReader {
+
+    /** The maximum number of field expressions kept in the shared cache. */
+    public static final int CACHE_SIZE = 1024;
+
+    private static final Pattern SIMPLE_PATH = Pattern.compile("^(\\$\\.)?[A-Za-z0-9_\\-]+(\\.[A-Za-z0-9_\\-]+)*$");
+    private static final AtomicLong cacheHits = new AtomicLong();
+    private static final AtomicLong cacheMisses = new AtomicLong();
+    private static final Map<String, ElasticsearchFieldReader> cache = Collections.synchronizedMap(
+        new LinkedHashMap<String, ElasticsearchFieldReader>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ElasticsearchFieldReader> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        }
+    );
+
+    private final String field;
+    private final String[] properties;
+    private final JsonPath path;
+    private final String compileError;
+
+    private ElasticsearchFieldReader(String field) {
+        this.field = field;
+        String[] simpleProperties = null;
+        JsonPath compiledPath = null;
+        String error = null;
+        if (SIMPLE_PATH.matcher(field).matches()) {
+            simpleProperties = field.replaceFirst("^\\$\\.", "").split("\\.");
+        } else {
+            try {
+                compiledPath = JsonPath.compile(field);
+            } catch (InvalidPathException e) {
+                error = e.getMessage();
+            }
+        }
+        this.properties = simpleProperties;
+        this.path = compiledPath;
+        this.compileError = error;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PUBLIC METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * Returns the reader for the field expression, compiling and caching it if necessary.
+     */
+    public static ElasticsearchFieldReader forField(String field) {
+        ElasticsearchFieldReader reader = cache.get(field);
+        if (reader == null) {
+            cacheMisses.incrementAndGet();
+            reader = new ElasticsearchFieldReader(field);
+            cache.put(field, reader);
+        } else {
+            cacheHits.incrementAndGet();
+        }
+        return reader;
+    }
+
+    /**
+     * Returns the readers for each of the bridge fields, in the same order.
+     */
+    public static List<ElasticsearchFieldReader> forFields(List<String> fields) {
+        List<ElasticsearchFieldReader> readers = new ArrayList<ElasticsearchFieldReader>();
+        if (fields != null) {
+            for (String field : fields) {
+                readers.add(forField(field));
+            }
+        }
+        return readers;
+    }
+
+    /**
+     * Reads every field from the parsed JSON object into a new map of record values, fields that
+     * can not be resolved are set to null.
+     */
+    public static Map<String, Object> readAll(List<ElasticsearchFieldReader> readers, Object json) {
+        Map<String, Object> recordValues = new HashMap<String, Object>();
+        for (ElasticsearchFieldReader reader : readers) {
+            try {
+                recordValues.put(reader.field, reader.read(json));
+            } catch (InvalidPathException e) {
+                recordValues.put(reader.field, null);
+            }
+        }
+        return recordValues;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * Returns the field as a dotted property path, such as _source.app.name, or null when the
+     * field is a JsonPath expression.
+     */
+    public String getPropertyPath() {
+        return properties == null ? null : StringUtils.join(properties, ".");
+    }
+
+    /**
+     * Reads the field value from the parsed JSON object.
+     *
+     * @throws InvalidPathException if the field expression is invalid or does not resolve.
+     */
+    public Object read(Object json) {
+        if (compileError != null) {
+            throw new InvalidPathException(compileError);
+        }
+        if (path != null) {
+            return path.read(json);
+        }
+        Object current = json;
+        for (String property : properties) {
+            if (current instanceof Map && ((Map)current).containsKey(property)) {
+                current = ((Map)current).get(property);
+            } else {
+                throw new PathNotFoundException(
+                    String.format("No results for path: %s", field)
+                );
+            }
+        }
+        return current;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * CACHE STATISTICS
+     *--------------------------------------------------------------------------------------------*/
+
+    public static long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public static long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    public static int getCacheSize() {
+        return cache.size();
+    }
+
+}
@@ -0,0 +1,186 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of non-negative values, such as durations in nanoseconds or response
+ * sizes in bytes.
+ *
+ * Values are counted in logarithmic buckets, each power of two is split into eight buckets, so
+ * percentiles are accurate to within 12.5% whatever the range of the values. Percentiles are
+ * computed over the current and previous windows only, so a regression shows up within two
+ * windows rather than being averaged away by everything recorded since the adapter started. The
+ * total count is kept since the histogram was created.
+ */
+public class ElasticsearchHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final long window;
+    private final AtomicLong totalCount = new AtomicLong();
+    private volatile Window current;
+    private volatile Window previous;
+
+    /**
+     * @param window how long each window of recent values lasts in milliseconds
+     */
+    public ElasticsearchHistogram(long window) {
+        this.window = window;
+        long now = System.currentTimeMillis();
+        this.current = new Window(now);
+        this.previous = new Window(now - window);
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PUBLIC METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    public void record(long value) {
+        currentWindow(System.currentTimeMillis()).record(Math.max(value, 0));
+        totalCount.incrementAndGet();
+    }
+
+    /**
+     * Returns the recent values, those recorded during the current and previous windows.
+     */
+    public Snapshot snapshot() {
+        Window latest = currentWindow(System.currentTimeMillis());
+        Window earlier = previous;
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = latest.buckets.get(i) + earlier.buckets.get(i);
+        }
+        return new Snapshot(counts,
+            latest.count.get() + earlier.count.get(),
+            latest.sum.get() + earlier.sum.get(),
+            Math.max(latest.max.get(), earlier.max.get()));
+    }
+
+    /**
+     * Returns the number of values recorded since the histogram was created.
+     */
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private Window currentWindow(long now) {
+        Window latest = current;
+        if (now - latest.start < window) {
+            return latest;
+        }
+        synchronized (this) {
+            latest = current;
+            if (now - latest.start >= window) {
+                // A window that ended more than a window ago holds nothing recent.
+                previous = (now - latest.start < 2 * window) ? latest : new Window(now - window);
+                latest = new Window(now);
+                current = latest;
+            }
+            return latest;
+        }
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int)value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (index % SUB_BUCKETS) * width + width - 1;
+    }
+
+    private static class Window {
+
+        private final long start;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        private Window(long start) {
+            this.start = start;
+        }
+
+        private void record(long value) {
+            buckets.incrementAndGet(bucketIndex(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            long currentMax = max.get();
+            while (value > currentMax && max.compareAndSet(currentMax, value) == false) {
+                currentMax = max.get();
+            }
+        }
+
+    }
+
+    /**
+     * The values of a histogram at a point in time.
+     */
+    public static class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : sum / (double)count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Returns the value below which the given fraction of the values fall, for example 0.99
+         * for the 99th percentile, or 0 when there are no values.
+         */
+        public long getPercentile(double quantile) {
+            long total = 0;
+            for (long bucketCount : counts) {
+                total += bucketCount;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max((long)Math.ceil(quantile * total), 1);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(bucketUpperBound(i), max);
+                }
+            }
+            return max;
+        }
+
+    }
+
+}
@@ -0,0 +1,194 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.jayway.jsonpath.InvalidPathException;
+import com.kineticdata.bridgehub.adapter.Record;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A record that reads its field values from the parsed hit the first time they are accessed.
+ *
+ * The records of a page share one FieldIndex, which maps each bridge field to its position, and
+ * each record only holds its hit and an array of the values read so far. The values behave like
+ * the map built by ElasticsearchFieldReader.readAll, fields that can not be resolved are null, so
+ * getValue, getRecord and toJsonString give the same results as an eagerly built record. The hit
+ * is released once every field has been read.
+ */
+public class ElasticsearchLazyRecord extends Record {
+
+    public ElasticsearchLazyRecord(FieldIndex fieldIndex, Object hit) {
+        super(new Values(fieldIndex, hit));
+    }
+
+    /**
+     * Returns the number of fields whose values have been read from the hit.
+     */
+    public int getResolvedCount() {
+        Map<String, Object> values = getRecord();
+        return (values instanceof Values) ? ((Values)values).getResolvedCount() : values.size();
+    }
+
+    /**
+     * The positions of the bridge fields of a page, shared by all of the records of the page.
+     */
+    public static class FieldIndex {
+        private final ElasticsearchFieldReader[] readers;
+        private final Map<String, Integer> positions;
+
+        public FieldIndex(List<ElasticsearchFieldReader> fieldReaders) {
+            Map<String, Integer> fieldPositions = new HashMap<String, Integer>();
+            int count = 0;
+            ElasticsearchFieldReader[] distinctReaders = new ElasticsearchFieldReader[fieldReaders.size()];
+            for (ElasticsearchFieldReader reader : fieldReaders) {
+                // A field requested twice has a single value, the same as in a map.
+                if (fieldPositions.containsKey(reader.getField()) == false) {
+                    fieldPositions.put(reader.getField(), count);
+                    distinctReaders[count++] = reader;
+                }
+            }
+            this.readers = new ElasticsearchFieldReader[count];
+            System.arraycopy(distinctReaders, 0, this.readers, 0, count);
+            this.positions = Collections.unmodifiableMap(fieldPositions);
+        }
+
+        public int size() {
+            return readers.length;
+        }
+
+        String getField(int position) {
+            return readers[position].getField();
+        }
+
+        /**
+         * Returns the position of the field, or -1 when it is not one of the fields of the page.
+         */
+        int getPosition(Object field) {
+            Integer position = positions.get(field);
+            return position == null ? -1 : position;
+        }
+
+        Object read(int position, Object hit) {
+            try {
+                return readers[position].read(hit);
+            } catch (InvalidPathException e) {
+                return null;
+            }
+        }
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPERS
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * The record values, read from the hit as they are accessed. A record list may be handed to
+     * several threads, so reading the hit and releasing it are synchronized.
+     */
+    private static class Values extends AbstractMap<String, Object> {
+        private static final Object UNRESOLVED = new Object();
+
+        private final FieldIndex fieldIndex;
+        private final Object[] values;
+        private Object hit;
+        private int resolvedCount;
+
+        Values(FieldIndex fieldIndex, Object hit) {
+            this.fieldIndex = fieldIndex;
+            this.hit = hit;
+            this.values = new Object[fieldIndex.size()];
+            Arrays.fill(values, UNRESOLVED);
+        }
+
+        synchronized int getResolvedCount() {
+            return resolvedCount;
+        }
+
+        synchronized Object resolve(int position) {
+            Object value = values[position];
+            if (value == UNRESOLVED) {
+                value = fieldIndex.read(position, hit);
+                values[position] = value;
+                if (++resolvedCount == values.length) {
+                    hit = null;
+                }
+            }
+            return value;
+        }
+
+        @Override
+        public Object get(Object key) {
+            int position = fieldIndex.getPosition(key);
+            return position < 0 ? null : resolve(position);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return fieldIndex.getPosition(key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            int position = fieldIndex.getPosition(key);
+            if (position < 0) {
+                throw new UnsupportedOperationException(
+                    String.format("The \"%s\" field is not one of the fields of the record.", key));
+            }
+            synchronized (this) {
+                Object previous = resolve(position);
+                values[position] = value;
+                return previous;
+            }
+        }
+
+        @Override
+        public Set<Map.Entry<String, Object>> entrySet() {
+            return new AbstractSet<Map.Entry<String, Object>>() {
+                @Override
+                public int size() {
+                    return values.length;
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, Object>> iterator() {
+                    return new Iterator<Map.Entry<String, Object>>() {
+                        private int position = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return position < values.length;
+                        }
+
+                        @Override
+                        public Map.Entry<String, Object> next() {
+                            if (position >= values.length) {
+                                throw new NoSuchElementException();
+                            }
+                            int current = position++;
+                            return new AbstractMap.SimpleImmutableEntry<String, Object>(
+                                fieldIndex.getField(current), resolve(current));
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+    }
+
+}
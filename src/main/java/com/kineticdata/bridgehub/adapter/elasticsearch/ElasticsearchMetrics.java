@@ -0,0 +1,292 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The default metrics registry, which keeps the metrics in memory and exposes them as a JMX
+ * MBean.
+ *
+ * Every timer and value is a histogram, and is exposed as count, mean, p50, p90, p99 and max
+ * attributes, for example search.httpWait.p99. Timers are reported in milliseconds. The
+ * percentiles, mean and max cover the last one to two minutes, the count is the total since the
+ * adapter was initialized. Counters and gauges are exposed as attributes of the same name.
+ */
+public class ElasticsearchMetrics implements ElasticsearchMetricsRegistry, DynamicMBean {
+
+    /** The domain of the MBeans registered by the adapter. */
+    public static final String JMX_DOMAIN = "com.kineticdata.bridgehub.adapter.elasticsearch";
+    /** How long each window of recent values lasts in milliseconds. */
+    public static final long WINDOW = 60000L;
+
+    private static final String[] HISTOGRAM_ATTRIBUTES = {"count", "mean", "p50", "p90", "p99", "max"};
+
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(ElasticsearchMetrics.class);
+
+    private final boolean registerMBean;
+    private final ConcurrentMap<String, ElasticsearchHistogram> timers = new ConcurrentHashMap<String, ElasticsearchHistogram>();
+    private final ConcurrentMap<String, ElasticsearchHistogram> values = new ConcurrentHashMap<String, ElasticsearchHistogram>();
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+    private ObjectName objectName;
+
+    /**
+     * Creates a registry that is exposed as a JMX MBean.
+     */
+    public ElasticsearchMetrics() {
+        this(true);
+    }
+
+    /**
+     * @param registerMBean whether the registry is exposed as a JMX MBean when it is initialized
+     */
+    public ElasticsearchMetrics(boolean registerMBean) {
+        this.registerMBean = registerMBean;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * REGISTRY METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    @Override
+    public synchronized void initialize(String name) {
+        if (registerMBean == false || objectName != null) {
+            return;
+        }
+        // Metrics are not needed for the adapter to work, so failing to expose them is only logged.
+        try {
+            ObjectName candidate = new ObjectName(JMX_DOMAIN + ":type=ElasticsearchAdapter,name=" + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(candidate)) {
+                server.unregisterMBean(candidate);
+            }
+            server.registerMBean(this, candidate);
+            this.objectName = candidate;
+        } catch (JMException e) {
+            logger.warn("Unable to register the Elasticsearch adapter metrics MBean.", e);
+        }
+    }
+
+    @Override
+    public void recordTime(String name, long nanos) {
+        histogram(timers, name).record(nanos);
+    }
+
+    @Override
+    public void recordValue(String name, long value) {
+        histogram(values, name).record(value);
+    }
+
+    @Override
+    public void increment(String name) {
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    @Override
+    public void registerGauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                logger.warn("Unable to unregister the Elasticsearch adapter metrics MBean.", e);
+            }
+            objectName = null;
+        }
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * STATISTICS
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * Returns the timer of the given name, or null if nothing has been timed under the name.
+     */
+    public ElasticsearchHistogram getTimer(String name) {
+        return timers.get(name);
+    }
+
+    /**
+     * Returns the value histogram of the given name, or null if no value has been recorded under
+     * the name.
+     */
+    public ElasticsearchHistogram getValues(String name) {
+        return values.get(name);
+    }
+
+    public long getCounter(String name) {
+        AtomicLong counter = counters.get(name);
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * Returns the current value of the gauge of the given name, or null if there is no such gauge.
+     */
+    public Object getGauge(String name) {
+        Gauge gauge = gauges.get(name);
+        return gauge == null ? null : gauge.getValue();
+    }
+
+    /**
+     * Returns the name of the MBean, or null when the registry is not exposed through JMX.
+     */
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+
+    /**
+     * Returns every metric as the attribute names and values exposed through JMX.
+     */
+    public Map<String, Object> getAttributes() {
+        Map<String, Object> attributes = new TreeMap<String, Object>();
+        for (Map.Entry<String, ElasticsearchHistogram> entry : timers.entrySet()) {
+            addHistogramAttributes(attributes, entry.getKey(), entry.getValue(), 1000000d);
+        }
+        for (Map.Entry<String, ElasticsearchHistogram> entry : values.entrySet()) {
+            addHistogramAttributes(attributes, entry.getKey(), entry.getValue(), 1d);
+        }
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            attributes.put(entry.getKey(), entry.getValue().get());
+        }
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            attributes.put(entry.getKey(), readGauge(entry.getValue()));
+        }
+        return attributes;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * DYNAMIC MBEAN METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Map<String, Object> attributes = getAttributes();
+        if (attributes.containsKey(attribute) == false) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return attributes.get(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] names) {
+        Map<String, Object> attributes = getAttributes();
+        AttributeList list = new AttributeList();
+        for (String name : names) {
+            if (attributes.containsKey(name)) {
+                list.add(new Attribute(name, attributes.get(name)));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("The Elasticsearch adapter metrics are read only.");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    /**
+     * Describes the metrics recorded so far, the attributes grow as new metrics are recorded.
+     */
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributeInfos = new ArrayList<MBeanAttributeInfo>();
+        for (Map.Entry<String, Object> entry : getAttributes().entrySet()) {
+            Object value = entry.getValue();
+            attributeInfos.add(new MBeanAttributeInfo(
+                entry.getKey(),
+                value == null ? String.class.getName() : value.getClass().getName(),
+                entry.getKey(),
+                true, false, false));
+        }
+        return new MBeanInfo(
+            getClass().getName(),
+            "Elasticsearch bridge adapter metrics",
+            attributeInfos.toArray(new MBeanAttributeInfo[attributeInfos.size()]),
+            null,
+            new MBeanOperationInfo[0],
+            null);
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private static ElasticsearchHistogram histogram(ConcurrentMap<String, ElasticsearchHistogram> histograms, String name) {
+        ElasticsearchHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            ElasticsearchHistogram created = new ElasticsearchHistogram(WINDOW);
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    private static void addHistogramAttributes(Map<String, Object> attributes, String name, ElasticsearchHistogram histogram, double divisor) {
+        ElasticsearchHistogram.Snapshot snapshot = histogram.snapshot();
+        for (String attribute : HISTOGRAM_ATTRIBUTES) {
+            Object value;
+            if ("count".equals(attribute)) {
+                value = histogram.getTotalCount();
+            } else if ("mean".equals(attribute)) {
+                value = snapshot.getMean() / divisor;
+            } else if ("max".equals(attribute)) {
+                value = snapshot.getMax() / divisor;
+            } else {
+                value = snapshot.getPercentile(Integer.parseInt(attribute.substring(1)) / 100d) / divisor;
+            }
+            attributes.put(name + "." + attribute, value);
+        }
+    }
+
+    private static Object readGauge(Gauge gauge) {
+        // A gauge that fails to read should not stop the rest of the metrics being reported.
+        try {
+            return gauge.getValue();
+        } catch (RuntimeException e) {
+            logger.debug("Unable to read an Elasticsearch adapter metrics gauge.", e);
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+/**
+ * Receives the metrics recorded on the request path of the adapter.
+ *
+ * ElasticsearchMetrics, which exposes the metrics as a JMX MBean, is used by default. Other
+ * monitoring systems can be plugged in by implementing this interface with a public no argument
+ * constructor and naming the class in the Metrics Registry property. Implementations are called
+ * concurrently from every request thread, so they must be thread safe and should not block.
+ */
+public interface ElasticsearchMetricsRegistry {
+
+    /** A registry that discards every metric. */
+    ElasticsearchMetricsRegistry NONE = new ElasticsearchMetricsRegistry() {
+        @Override
+        public void initialize(String name) {}
+        @Override
+        public void recordTime(String name, long nanos) {}
+        @Override
+        public void recordValue(String name, long value) {}
+        @Override
+        public void increment(String name) {}
+        @Override
+        public void registerGauge(String name, Gauge gauge) {}
+        @Override
+        public void close() {}
+    };
+
+    /**
+     * Called once before any metric is recorded.
+     *
+     * @param name identifies the adapter instance, for example to name its MBean
+     */
+    void initialize(String name);
+
+    /**
+     * Records a duration, such as the time spent waiting for a response.
+     */
+    void recordTime(String name, long nanos);
+
+    /**
+     * Records a value whose distribution is tracked, such as the size of a response.
+     */
+    void recordValue(String name, long value);
+
+    /**
+     * Increments a counter, such as the number of responses with a given status code.
+     */
+    void increment(String name);
+
+    /**
+     * Registers a value that is read when the metrics are reported, such as the number of leased
+     * connections.
+     */
+    void registerGauge(String name, Gauge gauge);
+
+    /**
+     * Called when the adapter is destroyed, nothing is recorded afterwards.
+     */
+    void close();
+
+    /** A value read when the metrics are reported. */
+    interface Gauge {
+        Object getValue();
+    }
+
+}
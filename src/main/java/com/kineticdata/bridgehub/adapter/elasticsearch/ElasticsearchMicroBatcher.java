@@ -0,0 +1,201 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Merges concurrent count and search requests into batches.
+ *
+ * The first request to arrive opens a batch and waits for the batch window, requests that arrive
+ * in the meantime join the batch. The batch is flushed by the first request once the window has
+ * passed, or by the request that fills it to the maximum size. Every caller blocks until the batch
+ * it joined has been flushed and then receives its own result.
+ */
+public class ElasticsearchMicroBatcher {
+
+    /**
+     * Executes a batch of requests, returning one result per request in the same order.
+     */
+    public interface Flusher {
+        List<ElasticsearchBatchResult> flush(List<ElasticsearchBatchRequest> requests) throws BridgeError;
+    }
+
+    private final Flusher flusher;
+    private final long window;
+    private final int maxSize;
+
+    private final Object lock = new Object();
+    private List<Pending> queue = new ArrayList<Pending>();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushedRequests = new AtomicLong();
+    private final AtomicLong largestFlush = new AtomicLong();
+
+    /**
+     * @param flusher executes the merged batches
+     * @param window how long in milliseconds a batch waits for more requests
+     * @param maxSize the number of requests that flushes a batch before the window has passed
+     */
+    public ElasticsearchMicroBatcher(Flusher flusher, long window, int maxSize) {
+        this.flusher = flusher;
+        this.window = window;
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PUBLIC METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * Adds the request to the current batch and waits for its result.
+     */
+    public ElasticsearchBatchResult submit(ElasticsearchBatchRequest request) throws BridgeError {
+        Pending pending = new Pending(request);
+        List<Pending> batch = null;
+        boolean opener;
+        synchronized (lock) {
+            queue.add(pending);
+            opener = queue.size() == 1;
+            if (queue.size() >= maxSize) {
+                batch = drain();
+            }
+        }
+
+        if (batch == null && opener) {
+            // Hold the batch open for the window unless it is filled and flushed by another request.
+            long deadline = System.currentTimeMillis() + window;
+            synchronized (lock) {
+                long remaining = window;
+                while (pending.taken == false && remaining > 0) {
+                    try {
+                        lock.wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    remaining = deadline - System.currentTimeMillis();
+                }
+                if (pending.taken == false) {
+                    batch = drain();
+                }
+            }
+        }
+
+        if (batch != null) {
+            flush(batch);
+        }
+        return pending.await();
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * STATISTICS
+     *--------------------------------------------------------------------------------------------*/
+
+    /** The number of requests waiting for their batch to be flushed. */
+    public int getQueueDepth() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    /** The number of batches that have been flushed. */
+    public long getFlushes() {
+        return flushes.get();
+    }
+
+    /** The number of requests that have been flushed. */
+    public long getFlushedRequests() {
+        return flushedRequests.get();
+    }
+
+    /** The number of requests in the largest batch that has been flushed. */
+    public long getLargestFlush() {
+        return largestFlush.get();
+    }
+
+    /** The average number of requests per flushed batch. */
+    public double getAverageFlushSize() {
+        long count = flushes.get();
+        return count == 0 ? 0 : (double)flushedRequests.get() / count;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * Takes the current batch and starts a new one, the lock must be held.
+     */
+    private List<Pending> drain() {
+        List<Pending> batch = queue;
+        queue = new ArrayList<Pending>();
+        for (Pending pending : batch) {
+            pending.taken = true;
+        }
+        lock.notifyAll();
+        return batch;
+    }
+
+    private void flush(List<Pending> batch) {
+        flushes.incrementAndGet();
+        flushedRequests.addAndGet(batch.size());
+        long largest = largestFlush.get();
+        while (batch.size() > largest && largestFlush.compareAndSet(largest, batch.size()) == false) {
+            largest = largestFlush.get();
+        }
+
+        List<ElasticsearchBatchRequest> requests = new ArrayList<ElasticsearchBatchRequest>();
+        for (Pending pending : batch) {
+            requests.add(pending.request);
+        }
+        List<ElasticsearchBatchResult> results = null;
+        BridgeError error = null;
+        try {
+            results = flusher.flush(requests);
+        } catch (BridgeError e) {
+            error = e;
+        } catch (RuntimeException e) {
+            error = new BridgeError("Unable to execute the Elasticsearch request batch.", e);
+        } finally {
+            // Always release the waiting callers, failing every request if the batch failed.
+            for (int i = 0; i < batch.size(); i++) {
+                if (results != null && i < results.size()) {
+                    batch.get(i).complete(results.get(i));
+                } else {
+                    batch.get(i).complete(ElasticsearchBatchResult.of(error != null ? error
+                        : new BridgeError("The Elasticsearch request batch did not return a result for the request.")));
+                }
+            }
+        }
+    }
+
+    private static class Pending {
+        private final ElasticsearchBatchRequest request;
+        private final CountDownLatch done = new CountDownLatch(1);
+        // Guarded by the batcher lock.
+        private boolean taken = false;
+        private volatile ElasticsearchBatchResult result;
+
+        private Pending(ElasticsearchBatchRequest request) {
+            this.request = request;
+        }
+
+        private void complete(ElasticsearchBatchResult result) {
+            this.result = result;
+            done.countDown();
+        }
+
+        private ElasticsearchBatchResult await() throws BridgeError {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BridgeError("Interrupted while waiting for an Elasticsearch request batch", e);
+            }
+            return result;
+        }
+    }
+
+}
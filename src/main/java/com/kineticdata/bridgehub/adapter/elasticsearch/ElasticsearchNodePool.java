@@ -0,0 +1,268 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.jayway.jsonpath.JsonPath;
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The Elasticsearch nodes requests are spread across.
+ *
+ * Each request acquires a node, either in turn or the node with the fewest requests in flight,
+ * and releases it once the response has been read. A node that can not be reached is taken out
+ * of rotation for a backoff that doubles with every consecutive failure, and is tried again once
+ * the backoff has passed. When every node is out of rotation the node whose backoff ends first is
+ * used rather than failing without a request.
+ */
+public class ElasticsearchNodePool {
+
+    public static final String STRATEGY_ROUND_ROBIN = "Round Robin";
+    public static final String STRATEGY_LEAST_IN_FLIGHT = "Least In Flight";
+    /** The longest a node is taken out of rotation for, however many times it has failed. */
+    public static final long MAX_BACKOFF = 30 * 60 * 1000L;
+
+    private final String strategy;
+    private final long backoff;
+    private List<Node> nodes;
+    private int next = 0;
+
+    /**
+     * @param urls the base URLs of the nodes
+     * @param strategy how nodes are chosen, either STRATEGY_ROUND_ROBIN or STRATEGY_LEAST_IN_FLIGHT
+     * @param backoff how long a node is taken out of rotation after its first failure in milliseconds
+     */
+    public ElasticsearchNodePool(List<String> urls, String strategy, long backoff) {
+        this.strategy = strategy;
+        this.backoff = backoff;
+        setUrls(urls);
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PUBLIC METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * Parses a comma separated list of node URLs, removing any trailing forward slashes.
+     */
+    public static List<String> parseUrls(String value) throws BridgeError {
+        List<String> urls = new ArrayList<String>();
+        if (value != null) {
+            for (String url : value.split(",")) {
+                if (StringUtils.isNotBlank(url)) {
+                    urls.add(url.trim().replaceFirst("(\\/)$", ""));
+                }
+            }
+        }
+        if (urls.isEmpty()) {
+            throw new BridgeError("At least one Elasticsearch URL is required.");
+        }
+        return urls;
+    }
+
+    /**
+     * Parses the nodes of a _nodes/http response into node URLs with the given scheme. Dedicated
+     * master nodes are skipped because they should not coordinate searches.
+     */
+    public static List<String> parseSniffedNodes(String jsonResponse, String scheme) {
+        List<String> urls = new ArrayList<String>();
+        Map<String,Object> nodes = JsonPath.parse(jsonResponse).read("$.nodes");
+        for (Object value : nodes.values()) {
+            Map<String,Object> node = (Map<String,Object>)value;
+            List<Object> roles = (List<Object>)node.get("roles");
+            if (roles != null && roles.size() == 1 && "master".equals(roles.get(0))) {
+                continue;
+            }
+            Map<String,Object> http = (Map<String,Object>)node.get("http");
+            if (http == null || http.get("publish_address") == null) {
+                continue;
+            }
+            // The publish address is either ip:port or hostname/ip:port.
+            String address = (String)http.get("publish_address");
+            int separator = address.indexOf('/');
+            if (separator >= 0) {
+                address = address.substring(0, separator) + address.substring(address.lastIndexOf(':'));
+            }
+            urls.add(scheme + "://" + address);
+        }
+        return urls;
+    }
+
+    /**
+     * Returns the node the next request should be sent to. The node must be released once the
+     * request is complete.
+     */
+    public synchronized Node acquire() {
+        long now = System.currentTimeMillis();
+        Node selected = null;
+        int selectedIndex = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            int index = (next + i) % nodes.size();
+            Node node = nodes.get(index);
+            if (node.isAvailable(now) == false) {
+                continue;
+            }
+            if (selected == null || (STRATEGY_LEAST_IN_FLIGHT.equals(strategy) && node.getInFlight() < selected.getInFlight())) {
+                selected = node;
+                selectedIndex = index;
+            }
+            if (STRATEGY_LEAST_IN_FLIGHT.equals(strategy) == false) {
+                break;
+            }
+        }
+        if (selected == null) {
+            // Every node is out of rotation, try the one that has been out the longest.
+            for (int i = 0; i < nodes.size(); i++) {
+                if (selected == null || nodes.get(i).getRetryAt() < selected.getRetryAt()) {
+                    selected = nodes.get(i);
+                    selectedIndex = i;
+                }
+            }
+        }
+        next = (selectedIndex + 1) % nodes.size();
+        selected.inFlight++;
+        return selected;
+    }
+
+    /**
+     * Releases a node acquired for a request.
+     *
+     * @param elapsedNanos how long the request took
+     * @param failed whether the node could not be reached, which takes it out of rotation
+     */
+    public void release(Node node, long elapsedNanos, boolean failed) {
+        synchronized (this) {
+            node.inFlight--;
+        }
+        if (failed) {
+            markFailed(node);
+        } else {
+            node.succeeded(elapsedNanos);
+        }
+    }
+
+    /**
+     * Takes the node out of rotation until its backoff has passed.
+     */
+    public void markFailed(Node node) {
+        node.failed(backoff);
+    }
+
+    /**
+     * Replaces the nodes of the pool. Nodes that are already in the pool keep their health and
+     * statistics.
+     */
+    public synchronized void setUrls(List<String> urls) {
+        Map<String,Node> existing = new LinkedHashMap<String,Node>();
+        if (nodes != null) {
+            for (Node node : nodes) {
+                existing.put(node.getUrl(), node);
+            }
+        }
+        List<Node> updated = new ArrayList<Node>();
+        for (String url : urls) {
+            updated.add(existing.containsKey(url) ? existing.get(url) : new Node(url));
+        }
+        this.nodes = updated;
+        this.next = 0;
+    }
+
+    /**
+     * Returns the nodes of the pool, which expose the health and latency of each node.
+     */
+    public synchronized List<Node> getNodes() {
+        return Collections.unmodifiableList(new ArrayList<Node>(nodes));
+    }
+
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    /**
+     * An Elasticsearch node and the statistics of the requests sent to it.
+     */
+    public static class Node {
+
+        private final String url;
+        // Only changed while holding the lock of the pool.
+        private volatile int inFlight = 0;
+        private long requests = 0;
+        private long failures = 0;
+        private int consecutiveFailures = 0;
+        private long totalLatency = 0;
+        private long maxLatency = 0;
+        private long retryAt = 0;
+
+        private Node(String url) {
+            this.url = url;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * Whether the node is in rotation, which is false while it is backing off after a failure.
+         */
+        public synchronized boolean isHealthy() {
+            return isAvailable(System.currentTimeMillis());
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public synchronized long getRequests() {
+            return requests;
+        }
+
+        public synchronized long getFailures() {
+            return failures;
+        }
+
+        /**
+         * Returns the average time in milliseconds of the requests to the node that completed.
+         */
+        public synchronized double getAverageLatency() {
+            return requests == 0 ? 0 : (totalLatency / (double)requests) / 1000000d;
+        }
+
+        /**
+         * Returns the longest time in milliseconds of a request to the node that completed.
+         */
+        public synchronized double getMaxLatency() {
+            return maxLatency / 1000000d;
+        }
+
+        private synchronized long getRetryAt() {
+            return retryAt;
+        }
+
+        private synchronized boolean isAvailable(long now) {
+            return retryAt <= now;
+        }
+
+        private synchronized void succeeded(long elapsedNanos) {
+            requests++;
+            totalLatency += elapsedNanos;
+            maxLatency = Math.max(maxLatency, elapsedNanos);
+            consecutiveFailures = 0;
+            retryAt = 0;
+        }
+
+        private synchronized void failed(long backoff) {
+            failures++;
+            consecutiveFailures++;
+            long delay = backoff;
+            for (int i = 1; i < consecutiveFailures && delay < MAX_BACKOFF; i++) {
+                delay *= 2;
+            }
+            retryAt = System.currentTimeMillis() + Math.min(delay, MAX_BACKOFF);
+        }
+
+    }
+
+}
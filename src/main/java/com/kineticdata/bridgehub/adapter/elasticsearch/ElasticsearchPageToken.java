@@ -0,0 +1,68 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.io.UnsupportedEncodingException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.codec.binary.Base64;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Opaque token identifying the next page of a search_after paginated search.
+ *
+ * The token carries the point in time id the pages are read from and the sort values of the last
+ * hit of the previous page. It is handed to bridge consumers as the nextPageToken metadata value
+ * and passed back as the pageToken metadata value to request the following page.
+ */
+public class ElasticsearchPageToken {
+
+    private static final String KEY_POINT_IN_TIME = "pit";
+    private static final String KEY_SEARCH_AFTER = "after";
+
+    private final String pointInTimeId;
+    private final List<Object> searchAfter;
+
+    public ElasticsearchPageToken(String pointInTimeId, List<Object> searchAfter) {
+        this.pointInTimeId = pointInTimeId;
+        this.searchAfter = searchAfter;
+    }
+
+    public String getPointInTimeId() {
+        return pointInTimeId;
+    }
+
+    public List<Object> getSearchAfter() {
+        return searchAfter;
+    }
+
+    public String encode() {
+        Map<String, Object> token = new LinkedHashMap<String, Object>();
+        token.put(KEY_POINT_IN_TIME, pointInTimeId);
+        token.put(KEY_SEARCH_AFTER, searchAfter);
+        try {
+            return Base64.encodeBase64URLSafeString(JSONValue.toJSONString(token).getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static ElasticsearchPageToken decode(String token) throws BridgeError {
+        try {
+            String json = new String(Base64.decodeBase64(token), "UTF-8");
+            Map<String, Object> values = (Map<String, Object>)JSONValue.parseWithException(json);
+            return new ElasticsearchPageToken(
+                (String)values.get(KEY_POINT_IN_TIME),
+                (List<Object>)values.get(KEY_SEARCH_AFTER)
+            );
+        } catch (ParseException e) {
+            throw new BridgeError(String.format("The page token (%s) is not valid.", token), e);
+        } catch (ClassCastException e) {
+            throw new BridgeError(String.format("The page token (%s) is not valid.", token), e);
+        } catch (UnsupportedEncodingException e) {
+            throw new BridgeError(e);
+        }
+    }
+
+}
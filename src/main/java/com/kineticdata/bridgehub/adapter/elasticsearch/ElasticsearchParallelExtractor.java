@@ -0,0 +1,130 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Extracts the results of the hits of a page in parallel, keeping their order.
+ *
+ * Pages with at least threshold hits are split into ranges that are extracted on a fork-join pool
+ * of a bounded size, smaller pages are extracted on the calling thread so they do not pay for
+ * handing the work to the pool. Extractions must be thread safe, an exception thrown by one of
+ * them is thrown by extract.
+ */
+public class ElasticsearchParallelExtractor {
+
+    /** The fewest hits extracted by a single task, so tasks are not split smaller than is useful. */
+    public static final int MIN_TASK_SIZE = 64;
+
+    private static final AtomicInteger poolNumber = new AtomicInteger();
+
+    private final int threshold;
+    private final ForkJoinPool pool;
+
+    /**
+     * The extraction of one hit.
+     */
+    public interface Extraction<T> {
+        T extract(Object hit);
+    }
+
+    /**
+     * @param threshold the fewest hits a page has to have to be extracted in parallel
+     * @param parallelism the number of threads extracting hits, or 0 for one per available
+     *        processor
+     */
+    public ElasticsearchParallelExtractor(int threshold, int parallelism) {
+        this.threshold = Math.max(threshold, 1);
+        final String prefix = "elasticsearch-extraction-" + poolNumber.incrementAndGet() + "-";
+        this.pool = new ForkJoinPool(
+            parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(),
+            new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                @Override
+                public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName(prefix + thread.getPoolIndex());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            },
+            null,
+            false
+        );
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Returns the results of extracting each of the hits, in the order of the hits.
+     */
+    public <T> List<T> extract(List<Object> hits, Extraction<T> extraction) {
+        Object[] results = new Object[hits.size()];
+        if (hits.size() < threshold) {
+            for (int i = 0; i < results.length; i++) {
+                results[i] = extraction.extract(hits.get(i));
+            }
+        } else {
+            // Enough tasks to balance the work across the threads without splitting too finely.
+            int taskSize = Math.max(MIN_TASK_SIZE, hits.size() / (pool.getParallelism() * 4));
+            pool.invoke(new ExtractionTask(hits, extraction, results, 0, results.length, taskSize));
+        }
+        return (List<T>)new ArrayList<Object>(Arrays.asList(results));
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPERS
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * Extracts the hits from start up to end into the same positions of the results, splitting the
+     * range in half until it is no larger than the task size.
+     */
+    private static class ExtractionTask extends RecursiveAction {
+        private final List<Object> hits;
+        private final Extraction<?> extraction;
+        private final Object[] results;
+        private final int start;
+        private final int end;
+        private final int taskSize;
+
+        ExtractionTask(List<Object> hits, Extraction<?> extraction, Object[] results, int start, int end, int taskSize) {
+            this.hits = hits;
+            this.extraction = extraction;
+            this.results = results;
+            this.start = start;
+            this.end = end;
+            this.taskSize = taskSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= taskSize) {
+                for (int i = start; i < end; i++) {
+                    results[i] = extraction.extract(hits.get(i));
+                }
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(
+                    new ExtractionTask(hits, extraction, results, start, middle, taskSize),
+                    new ExtractionTask(hits, extraction, results, middle, end, taskSize)
+                );
+            }
+        }
+    }
+
+}
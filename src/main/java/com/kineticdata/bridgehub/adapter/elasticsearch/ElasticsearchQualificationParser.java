@@ -2,11 +2,13 @@ package com.kineticdata.bridgehub.adapter.elasticsearch;
 
 import com.kineticdata.bridgehub.adapter.BridgeError;
 import com.kineticdata.bridgehub.adapter.QualificationParser;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.commons.lang.StringUtils;
 import org.json.simple.JSONValue;
@@ -18,6 +20,11 @@ public class ElasticsearchQualificationParser extends QualificationParser {
     public static String METADATA_FIELD_QUERY_PREFIX = "queryPrefix";
     public static String METADATA_FIELD_QUERY_STYLE = "type";
     public static String METADATA_FIELD_WHITELISTED_FIELDS = "whitelistedFields";
+    public static String METADATA_FIELD_PAGINATION_MODE = "paginationMode";
+    public static String PAGINATION_MODE_SEARCH_AFTER = "searchAfter";
+    public static String METADATA_FIELD_QUERY_FORMAT = "queryFormat";
+    public static String QUERY_FORMAT_LUCENE = "Lucene";
+    public static String QUERY_FORMAT_QUERY_DSL = "Query DSL";
     public static String PARAMETER_PATTERN_JSON_SAFE = "<%= parameter\\['(.*?)'\\] %>";
     public static String PARAMETER_PATTERN_GROUP_MATCH = "<%=\\s*parameter\\[\\s*\"(.*?)\"\\s*\\]\\s*%>";
     public static String QUERY_PATTERN_JSON = "^\\s*\\{.*?\\}\\s*$";
@@ -25,20 +32,46 @@ public class ElasticsearchQualificationParser extends QualificationParser {
     public static String QUERY_STYLE_ELASTICSEARCH = "Elasticsearch DSL";
     
     private Map<String, Object> queryMetadata = null;
+    private ElasticsearchQueryTemplate template = null;
+    // A parser is made per request and the URL and the body of a request parse the same query, so
+    // the last result is kept rather than substituting the parameters twice.
+    private String lastQuery = null;
+    private Map<String, String> lastParameters = null;
+    private String lastResult = null;
     
     @Override
     public String encodeParameter(String name, String value) {
         String result = null;
         //http://lucene.apache.org/core/4_0_0/queryparser/org/apache/lucene/queryparser/classic/package-summary.html#Escaping_Special_Characters
-        //Next three lines: escape the following characters with a backslash: + - = && || > < ! ( ) { } [ ] ^ " ~ * ? : \ /  
-        String regexReservedCharactersPattern = "(\\*|\\+|\\-|\\=|\\~|\\\"|\\?|\\^|\\$|\\{|\\}|\\(|\\)|\\:|\\!|\\/|\\[|\\]|\\\\|\\s)";
+        // Escape the following characters with a backslash: + - = ~ " ? ^ $ { } ( ) : ! / [ ] \ *
+        // and whitespace, escape && and || pairs and double escape the AND, OR and NOT operators.
+        // This is done in a single pass that produces the same output as the equivalent chain of
+        // replaceAll calls, so the value is only copied when something has to be escaped.
         if (StringUtils.isNotEmpty(value)) {
-            result = value.replaceAll(regexReservedCharactersPattern, Matcher.quoteReplacement("\\") + "$1")
-                .replaceAll("\\|\\|", "\\\\||")
-                .replaceAll("\\&\\&", "\\\\&&")
-                .replaceAll("\\b+AND\\b+", Matcher.quoteReplacement("\\\\AND"))
-                .replaceAll("\\b+OR\\b+", Matcher.quoteReplacement("\\\\OR"))
-                .replaceAll("\\b+NOT\\b+", Matcher.quoteReplacement("\\\\NOT"));
+            StringBuilder encoded = null;
+            int length = value.length();
+            int i = 0;
+            while (i < length) {
+                char character = value.charAt(i);
+                String operator;
+                if (isReservedCharacter(character)) {
+                    encoded = startEncoding(encoded, value, i).append('\\').append(character);
+                    i++;
+                } else if ((character == '|' || character == '&') && i + 1 < length && value.charAt(i + 1) == character) {
+                    encoded = startEncoding(encoded, value, i).append('\\').append(character).append(character);
+                    i += 2;
+                } else if ((character == 'A' || character == 'O' || character == 'N')
+                    && (operator = matchOperator(value, i)) != null) {
+                    encoded = startEncoding(encoded, value, i).append("\\\\").append(operator);
+                    i += operator.length();
+                } else {
+                    if (encoded != null) {
+                        encoded.append(character);
+                    }
+                    i++;
+                }
+            }
+            result = (encoded == null) ? value : encoded.toString();
         }
         return result;
     }
@@ -46,29 +79,42 @@ public class ElasticsearchQualificationParser extends QualificationParser {
     @Override
     public String parse(String query, Map<String, String> parameters) throws BridgeError {
 
+        if (lastResult != null && StringUtils.equals(query, lastQuery)
+            && (parameters == null ? lastParameters == null : parameters.equals(lastParameters))) {
+            return lastResult;
+        }
+
         String parsedQuery = new String();
-        parseMetadataJson(query);
-        // Change <%= parameter["asdf"] %> to <%= parameter['asdf'] %> so we can parse the bridge query JSON.
-        query = query.replaceAll(PARAMETER_PATTERN_GROUP_MATCH, "<%= parameter['$1'] %>");
+        // The compiled template holds the metadata and the parameter slots of the query text.
+        ElasticsearchQueryTemplate queryTemplate = getTemplate(query);
         
-        if (queryMetadata != null) {
+        if (queryTemplate.getMetadata() != null) {
 
-            String queryType = (String)queryMetadata.get("type");
-            String jsonQuery = (String)queryMetadata.get("query");
+            String queryType = queryTemplate.getQueryType();
 
             if (StringUtils.equalsIgnoreCase(queryType, QUERY_STYLE_KINETIC)) {
-                String concateOperator = (String)queryMetadata.get("concateOperator");
-                String queryPrefix = (String)queryMetadata.get("queryPrefix");
-                List<String> whitelistFields = (List<String>)queryMetadata.get("whitelistFields");
-                parsedQuery = parseDslKinetic(
-                    queryPrefix, 
-                    whitelistFields, 
-                    concateOperator, 
-                    jsonQuery, 
-                    parameters
-                );
+                String concateOperator = queryTemplate.getMetadataValue("concateOperator");
+                String queryPrefix = queryTemplate.getMetadataValue("queryPrefix");
+                List<String> whitelistFields = (List<String>)queryTemplate.getMetadata().get("whitelistFields");
+                if (StringUtils.equalsIgnoreCase(queryTemplate.getMetadataValue(METADATA_FIELD_QUERY_FORMAT), QUERY_FORMAT_QUERY_DSL)) {
+                    parsedQuery = parseDslKineticQueryDsl(
+                        queryPrefix, 
+                        whitelistFields, 
+                        concateOperator, 
+                        queryTemplate.getQuery(), 
+                        parameters
+                    );
+                } else {
+                    parsedQuery = parseDslKinetic(
+                        queryPrefix, 
+                        whitelistFields, 
+                        concateOperator, 
+                        queryTemplate.getQuery(), 
+                        parameters
+                    );
+                }
             } else if (StringUtils.equalsIgnoreCase(queryType, QUERY_STYLE_ELASTICSEARCH)) {
-                parsedQuery = parseDslElasticsearch(true, jsonQuery, parameters);
+                parsedQuery = parseDslElasticsearch(true, queryTemplate.getQuery(), parameters);
             } else {
                 throw new BridgeError(
                     String.format("The specified query type \"%s\" is not valid. Valid options are: %s",
@@ -79,9 +125,12 @@ public class ElasticsearchQualificationParser extends QualificationParser {
             }
             
         } else {
-            parsedQuery = parseDslElasticsearch(false, query, parameters);
+            parsedQuery = parseDslElasticsearch(false, queryTemplate.getQuery(), parameters);
         }
-        
+
+        lastQuery = query;
+        lastParameters = (parameters == null) ? null : new HashMap<String, String>(parameters);
+        lastResult = parsedQuery;
         return parsedQuery;
         
     }
@@ -104,12 +153,25 @@ public class ElasticsearchQualificationParser extends QualificationParser {
         
     }
     
+    public String getPaginationMode(String query) throws BridgeError {
+        
+        String paginationMode = null;
+        // parseMetadataJson sets instance variable queryMetadata
+        this.parseMetadataJson(query);
+        if (this.queryMetadata != null) {
+            String metadataMode = (String)queryMetadata.get(METADATA_FIELD_PAGINATION_MODE);
+            if (StringUtils.isNotBlank(metadataMode)) paginationMode = metadataMode;
+        }
+        return paginationMode;
+        
+    }
+    
     
     /*----------------------------------------------------------------------------------------------
      * PRIVATE HELPER METHODS
      *--------------------------------------------------------------------------------------------*/
     
-    private String parseDslKinetic(String queryPrefix, List<String> whitelistedFields, String concateOperator, String jsonQuery, Map<String, String> parameters) throws BridgeError {
+    private String parseDslKinetic(String queryPrefix, List<String> whitelistedFields, String concateOperator, ElasticsearchQueryTemplate.Text jsonQueryText, Map<String, String> parameters) throws BridgeError {
 
         Map<String, Object> queryConcatenation = new HashMap();
         StringBuilder query = new StringBuilder();
@@ -121,21 +183,12 @@ public class ElasticsearchQualificationParser extends QualificationParser {
         if (StringUtils.isBlank(concateOperator)) {
             concateOperator = "AND";
         }
-        if (StringUtils.isBlank(jsonQuery)) {
+        if (jsonQueryText == null || StringUtils.isBlank(jsonQueryText.getSource())) {
             throw new BridgeError("The Kinetic DSL query parameter value was not specified or was blank. The 'query' key is required.");
         }
         
-        jsonQuery = jsonQuery.replaceAll(PARAMETER_PATTERN_JSON_SAFE, "<%= parameter[\"$1\"] %>");
-        jsonQuery = parseNoEscaping(jsonQuery, parameters);
-        
-        try {
-            queryConcatenation = (Map<String, Object>)JSONValue.parseWithException(jsonQuery);
-        } catch (ParseException exceptionDetails) {
-            throw new BridgeError(
-                String.format("The Kinetic DSL 'query' key string value (%s) did not parse successfully as JSON.", jsonQuery),
-                exceptionDetails
-            );
-        }
+        String jsonQuery = parseNoEscaping(jsonQueryText, parameters);
+        queryConcatenation = parseKineticConditions(jsonQuery);
         
         boolean firstRun = true;
         for (Map.Entry<String, Object> queryPartial : queryConcatenation.entrySet()) {
@@ -199,89 +252,189 @@ public class ElasticsearchQualificationParser extends QualificationParser {
         return query.toString();
     }
 
-    private String parseDslElasticsearch(boolean isJsonQuery, String elasticsearchQuery, Map<String, String> parameters) throws BridgeError {
-        
-        StringBuffer resultBuffer = new StringBuffer();
-        Pattern pattern = Pattern.compile(PARAMETER_PATTERN_JSON_SAFE);
-        Matcher matcher = pattern.matcher(elasticsearchQuery);
-        
-        if (elasticsearchQuery.matches("^\\s*<%= parameter\\['.*?'\\] %>\\s*$")) {
-            matcher.find();
-            String parameterName = matcher.group(1);
-            String parameterValue = parameters.get(parameterName);
-            resultBuffer.append(
-                elasticsearchQuery.replaceFirst(
-                    PARAMETER_PATTERN_JSON_SAFE, 
-                    parameterValue
-                )
-            );
-        } else {
-            while (matcher.find()) {
-                // Retrieve the necessary values
-                String parameterName = matcher.group(1);
-                // If there were no parameters provided
-                if (parameters == null) {
-                    throw new BridgeError("Unable to parse qualification, "+
-                        "the '"+parameterName+"' parameter was referenced but no "+
-                        "parameters were provided.");
+    /**
+     * Builds a request body query from the Kinetic DSL rather than a Lucene query string. Exact
+     * and wildcard matches are placed in the non-scoring filter context, which Elasticsearch can
+     * cache, and only phrase matches are scored.
+     */
+    private String parseDslKineticQueryDsl(String queryPrefix, List<String> whitelistedFields, String concateOperator, ElasticsearchQueryTemplate.Text jsonQueryText, Map<String, String> parameters) throws BridgeError {
+
+        if (jsonQueryText == null || StringUtils.isBlank(jsonQueryText.getSource())) {
+            throw new BridgeError("The Kinetic DSL query parameter value was not specified or was blank. The 'query' key is required.");
+        }
+        String jsonQuery = parseNoEscaping(jsonQueryText, parameters);
+        Map<String, Object> queryConcatenation = parseKineticConditions(jsonQuery);
+        boolean isOrConcatenation = StringUtils.equalsIgnoreCase(StringUtils.trim(concateOperator), "OR")
+            || "||".equals(StringUtils.trim(concateOperator));
+
+        List<Object> filterClauses = new ArrayList<Object>();
+        List<Object> scoringClauses = new ArrayList<Object>();
+        List<Object> shouldClauses = new ArrayList<Object>();
+        for (Map.Entry<String, Object> queryPartial : queryConcatenation.entrySet()) {
+            String fieldName = queryPartial.getKey();
+            if (whitelistedFields == null || whitelistedFields.contains(fieldName)) {
+                Map<String, Object> fieldProperties = (Map<String, Object>)queryPartial.getValue();
+                String matchType = (String)fieldProperties.get("matcher");
+                Boolean isPhraseMatch = (Boolean)fieldProperties.get("isPhrase");
+                if (matchType == null) matchType = "exact";
+                if (isPhraseMatch == null) isPhraseMatch = false;
+                String fieldValue = (String)fieldProperties.get("value");
+                if (fieldValue == null) {
+                    throw new BridgeError(
+                        String.format(
+                            "The %s field is missing a value key in the Kinetic DSL JSON: %s",
+                            fieldName,
+                            jsonQuery
+                        )
+                    );
                 }
-                String parameterValue = parameters.get(parameterName);
-                // If there is a reference to a parameter that was not passed
-                if (parameterValue == null) {
-                    throw new BridgeError("Unable to parse qualification, "+
-                        "the '"+parameterName+"' parameter was referenced but "+
-                        "not provided.");
+
+                String clauseType;
+                Object clauseValue = fieldValue;
+                if (matchType.equals("endsWith")) {
+                    clauseType = "wildcard";
+                    clauseValue = "*" + escapeWildcard(fieldValue);
+                } else if (matchType.equals("like")) {
+                    clauseType = "wildcard";
+                    clauseValue = "*" + escapeWildcard(fieldValue) + "*";
+                } else if (matchType.equals("startsWith")) {
+                    clauseType = isPhraseMatch ? "match_phrase_prefix" : "prefix";
+                } else {
+                    clauseType = isPhraseMatch ? "match_phrase" : "term";
                 }
+                Map<String, Object> clause = Collections.<String, Object>singletonMap(
+                    clauseType, Collections.singletonMap(fieldName, clauseValue));
 
-                String value;
-                // If the query string starts with a curly brace, this is a JSON payload.
-                // else it is supposed to be a query used for the q parameter in a URI Search
-                if (isJsonQuery) {
-                    // if JSON, escape any JSON special characters.
-                    value = JSONValue.escape(parameterValue);
+                if (isOrConcatenation) {
+                    shouldClauses.add(clause);
+                } else if (clauseType.startsWith("match_phrase")) {
+                    scoringClauses.add(clause);
                 } else {
-                    // if not JSON, encode the parameter by escaping any Lucene query syntax reserved characters.
-                    value = encodeParameter(parameterName, parameterValue);
+                    filterClauses.add(clause);
                 }
-                matcher.appendReplacement(resultBuffer, Matcher.quoteReplacement(value));
             }
+        }
+
+        if (shouldClauses.isEmpty() == false) {
+            Map<String, Object> anyMatch = new LinkedHashMap<String, Object>();
+            anyMatch.put("should", shouldClauses);
+            anyMatch.put("minimum_should_match", 1);
+            filterClauses.add(Collections.singletonMap("bool", anyMatch));
+        }
+        if (StringUtils.isNotBlank(queryPrefix)) {
+            filterClauses.add(Collections.singletonMap("query_string", Collections.singletonMap("query", queryPrefix)));
+        }
+        if (filterClauses.isEmpty() && scoringClauses.isEmpty()) {
+            throw new BridgeError (
+                String.format(
+                    "Unable to produce a lucene query from the following Kinetic DSL structure: %s",
+                    jsonQuery
+                )
+            );
+        }
+
+        Map<String, Object> bool = new LinkedHashMap<String, Object>();
+        if (scoringClauses.isEmpty() == false) {
+            bool.put("must", scoringClauses);
+        }
+        if (filterClauses.isEmpty() == false) {
+            bool.put("filter", filterClauses);
+        }
+        return JSONValue.toJSONString(
+            Collections.singletonMap("query", Collections.singletonMap("bool", bool))
+        );
+    }
+
+    private Map<String, Object> parseKineticConditions(String jsonQuery) throws BridgeError {
+        try {
+            return (Map<String, Object>)JSONValue.parseWithException(jsonQuery);
+        } catch (ParseException exceptionDetails) {
+            throw new BridgeError(
+                String.format("The Kinetic DSL 'query' key string value (%s) did not parse successfully as JSON.", jsonQuery),
+                exceptionDetails
+            );
+        }
+    }
+
+    /**
+     * Escapes the wildcard characters of a value used in a wildcard query.
+     */
+    private static String escapeWildcard(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char character = value.charAt(i);
+            if (character == '*' || character == '?' || character == '\\') {
+                escaped.append('\\');
+            }
+            escaped.append(character);
+        }
+        return escaped.toString();
+    }
 
-            matcher.appendTail(resultBuffer);
+    private String parseDslElasticsearch(boolean isJsonQuery, ElasticsearchQueryTemplate.Text elasticsearchQuery, Map<String, String> parameters) throws BridgeError {
+        
+        if (elasticsearchQuery.isSingleParameter()) {
+            String parameterName = elasticsearchQuery.getParameterName(0);
+            String parameterValue = parameters.get(parameterName);
+            return elasticsearchQuery.replaceFirst(parameterValue);
         }
+
+        StringBuilder result = new StringBuilder(elasticsearchQuery.getSource().length());
+        for (int i = 0; i < elasticsearchQuery.getParameterCount(); i++) {
+            result.append(elasticsearchQuery.getLiteral(i));
+            // Retrieve the necessary values
+            String parameterName = elasticsearchQuery.getParameterName(i);
+            // If there were no parameters provided
+            if (parameters == null) {
+                throw new BridgeError("Unable to parse qualification, "+
+                    "the '"+parameterName+"' parameter was referenced but no "+
+                    "parameters were provided.");
+            }
+            String parameterValue = parameters.get(parameterName);
+            // If there is a reference to a parameter that was not passed
+            if (parameterValue == null) {
+                throw new BridgeError("Unable to parse qualification, "+
+                    "the '"+parameterName+"' parameter was referenced but "+
+                    "not provided.");
+            }
+
+            // If the query string starts with a curly brace, this is a JSON payload.
+            // else it is supposed to be a query used for the q parameter in a URI Search
+            if (isJsonQuery) {
+                // if JSON, escape any JSON special characters.
+                result.append(JSONValue.escape(parameterValue));
+            } else {
+                // if not JSON, encode the parameter by escaping any Lucene query syntax reserved characters.
+                result.append(encodeParameter(parameterName, parameterValue));
+            }
+        }
+        result.append(elasticsearchQuery.getLiteral(elasticsearchQuery.getParameterCount()));
         
-        return resultBuffer.toString();
+        return result.toString();
 
     }
     
     private Map<String, Object> parseMetadataJson(String query) throws BridgeError {
         // Only parse once.
         if (queryMetadata != null) return queryMetadata;
-        // Change <%= parameter["asdf"] %> to <%= parameter['asdf'] %> so we can parse the bridge query JSON.
-        query = query.replaceAll(PARAMETER_PATTERN_GROUP_MATCH, "<%= parameter['$1'] %>");
-        boolean metadataDetected = query.matches(QUERY_PATTERN_JSON);
-        if (metadataDetected) {
-            try {
-                this.queryMetadata = (Map<String, Object>)JSONValue.parseWithException(query);
-            } catch (ParseException exceptionDetails) {
-                throw new BridgeError(
-                    String.format("The bridge query (%s) appears to be a JSON Object " +
-                    "instead of a lucene query because it starts and ends with curly braces." +
-                    " The query failed however to parse successfully as JSON.", query),
-                    exceptionDetails
-                );
-            }
-        }
+        this.queryMetadata = getTemplate(query).getMetadata();
         return queryMetadata;
     }
     
-    private String parseNoEscaping(String query, Map<String, String> parameters) throws BridgeError {
-        StringBuffer resultBuffer = new StringBuffer();
-        Pattern pattern = Pattern.compile(super.PARAMETER_PATTERN);
-        Matcher matcher = pattern.matcher(query);
+    private ElasticsearchQueryTemplate getTemplate(String query) throws BridgeError {
+        if (template == null || query.equals(template.getSource()) == false) {
+            template = ElasticsearchQueryTemplate.compile(query);
+        }
+        return template;
+    }
+    
+    private String parseNoEscaping(ElasticsearchQueryTemplate.Text query, Map<String, String> parameters) throws BridgeError {
+        StringBuilder result = new StringBuilder(query.getSource().length());
 
-        while (matcher.find()) {
+        for (int i = 0; i < query.getParameterCount(); i++) {
+            result.append(query.getLiteral(i));
             // Retrieve the necessary values
-            String parameterName = matcher.group(1);
+            String parameterName = query.getParameterName(i);
             // If there were no parameters provided
             if (parameters == null) {
                 throw new BridgeError("Unable to parse qualification, "+
@@ -296,11 +449,109 @@ public class ElasticsearchQualificationParser extends QualificationParser {
                     "not provided.");
             }
 
-            matcher.appendReplacement(resultBuffer, Matcher.quoteReplacement(parameterValue));
+            result.append(parameterValue);
         }
 
-        matcher.appendTail(resultBuffer);
-        return resultBuffer.toString();
+        result.append(query.getLiteral(query.getParameterCount()));
+        return result.toString();
+    }
+    
+    /*----------------------------------------------------------------------------------------------
+     * ENCODING HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+    
+    private static final String[] OPERATORS = {"AND", "OR", "NOT"};
+    // Whether \\b treats every Unicode letter or digit as a word character, which changed in Java 19.
+    private static final boolean UNICODE_WORD_BOUNDARIES = Pattern.compile("\\b").matcher("\u00e9").find();
+    
+    private StringBuilder encodeBuffer = null;
+    
+    /**
+     * Returns the reusable encoding buffer holding the unescaped prefix of the value.
+     */
+    private StringBuilder startEncoding(StringBuilder encoded, String value, int position) {
+        if (encoded != null) {
+            return encoded;
+        }
+        if (encodeBuffer == null) {
+            encodeBuffer = new StringBuilder(value.length() + 16);
+        }
+        encodeBuffer.setLength(0);
+        return encodeBuffer.append(value, 0, position);
+    }
+    
+    private static boolean isReservedCharacter(char character) {
+        switch (character) {
+            case '*': case '+': case '-': case '=': case '~': case '"': case '?': case '^': case '$':
+            case '{': case '}': case '(': case ')': case ':': case '!': case '/': case '[': case ']':
+            case '\\':
+            // The characters matched by \\s.
+            case ' ': case '\t': case '\n': case '\u000B': case '\f': case '\r':
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    /**
+     * Returns the AND, OR or NOT operator starting at the position when it is a whole word.
+     */
+    private static String matchOperator(String value, int position) {
+        for (String operator : OPERATORS) {
+            int end = position + operator.length();
+            if (value.startsWith(operator, position)
+                && isWordBefore(value, position) == false
+                && isWordAt(value, end) == false) {
+                return operator;
+            }
+        }
+        return null;
+    }
+    
+    // The word boundary rules below mirror java.util.regex so the result matches \\b exactly,
+    // including treating a non spacing mark that follows a letter or digit as part of the word.
+    
+    private static boolean isWordBefore(String value, int position) {
+        if (position <= 0) {
+            return false;
+        }
+        int codePoint = value.codePointBefore(position);
+        return isWordCharacter(codePoint)
+            || (Character.getType(codePoint) == Character.NON_SPACING_MARK && hasBaseCharacter(value, position - 1));
+    }
+    
+    private static boolean isWordAt(String value, int position) {
+        if (position >= value.length()) {
+            return false;
+        }
+        int codePoint = value.codePointAt(position);
+        return isWordCharacter(codePoint)
+            || (Character.getType(codePoint) == Character.NON_SPACING_MARK && hasBaseCharacter(value, position));
+    }
+    
+    private static boolean isWordCharacter(int codePoint) {
+        if (codePoint == '_') {
+            return true;
+        }
+        if (UNICODE_WORD_BOUNDARIES) {
+            return Character.isLetterOrDigit(codePoint);
+        }
+        return (codePoint >= 'a' && codePoint <= 'z')
+            || (codePoint >= 'A' && codePoint <= 'Z')
+            || (codePoint >= '0' && codePoint <= '9');
+    }
+    
+    private static boolean hasBaseCharacter(String value, int position) {
+        for (int i = position; i >= 0; i--) {
+            int codePoint = value.codePointAt(i);
+            if (Character.isLetterOrDigit(codePoint)) {
+                return true;
+            }
+            if (Character.getType(codePoint) != Character.NON_SPACING_MARK) {
+                return false;
+            }
+        }
+        return false;
     }
     
 }
@@ -0,0 +1,214 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.QualificationParser;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.ParseException;
+
+/**
+ * A bridge query compiled into its metadata and the literal text around its parameter references.
+ *
+ * Bridge queries come from a small, fixed set of mappings, so templates are compiled once per
+ * query string and kept in a bounded, shared cache. Parsing a request then only has to substitute
+ * the parameter values into the compiled text. Templates are immutable and safe to share between
+ * threads.
+ */
+public class ElasticsearchQueryTemplate {
+
+    /** The maximum number of bridge queries kept in the shared cache. */
+    public static final int CACHE_SIZE = 256;
+
+    private static final Pattern PARAMETER_GROUP_MATCH = Pattern.compile(ElasticsearchQualificationParser.PARAMETER_PATTERN_GROUP_MATCH);
+    private static final Pattern PARAMETER_JSON_SAFE = Pattern.compile(ElasticsearchQualificationParser.PARAMETER_PATTERN_JSON_SAFE);
+    private static final Pattern SINGLE_PARAMETER = Pattern.compile("^\\s*<%= parameter\\['.*?'\\] %>\\s*$");
+    private static final Pattern QUERY_JSON = Pattern.compile(ElasticsearchQualificationParser.QUERY_PATTERN_JSON);
+
+    private static final AtomicLong cacheHits = new AtomicLong();
+    private static final AtomicLong cacheMisses = new AtomicLong();
+    private static final Map<String, ElasticsearchQueryTemplate> cache = Collections.synchronizedMap(
+        new LinkedHashMap<String, ElasticsearchQueryTemplate>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ElasticsearchQueryTemplate> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        }
+    );
+
+    private final String source;
+    private final Map<String, Object> metadata;
+    private final Text query;
+
+    private ElasticsearchQueryTemplate(String bridgeQuery) throws BridgeError {
+        this.source = bridgeQuery;
+        // Change <%= parameter["asdf"] %> to <%= parameter['asdf'] %> so we can parse the bridge query JSON.
+        String normalizedQuery = PARAMETER_GROUP_MATCH.matcher(bridgeQuery).replaceAll("<%= parameter['$1'] %>");
+
+        if (QUERY_JSON.matcher(normalizedQuery).matches()) {
+            Map<String, Object> parsedMetadata;
+            try {
+                parsedMetadata = (Map<String, Object>)JSONValue.parseWithException(normalizedQuery);
+            } catch (ParseException exceptionDetails) {
+                throw new BridgeError(
+                    String.format("The bridge query (%s) appears to be a JSON Object " +
+                    "instead of a lucene query because it starts and ends with curly braces." +
+                    " The query failed however to parse successfully as JSON.", normalizedQuery),
+                    exceptionDetails
+                );
+            }
+            this.metadata = Collections.unmodifiableMap(parsedMetadata);
+
+            Object metadataQuery = metadata.get("query");
+            if (metadataQuery instanceof String == false) {
+                this.query = null;
+            } else if (ElasticsearchQualificationParser.QUERY_STYLE_KINETIC.equalsIgnoreCase(getQueryType())) {
+                // Kinetic DSL queries substitute the raw values into the double quoted form.
+                String jsonQuery = PARAMETER_JSON_SAFE.matcher((String)metadataQuery).replaceAll("<%= parameter[\"$1\"] %>");
+                this.query = new Text(jsonQuery, Pattern.compile(QualificationParser.PARAMETER_PATTERN));
+            } else {
+                this.query = new Text((String)metadataQuery, PARAMETER_JSON_SAFE);
+            }
+        } else {
+            this.metadata = null;
+            this.query = new Text(normalizedQuery, PARAMETER_JSON_SAFE);
+        }
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PUBLIC METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * Returns the compiled template of the bridge query, compiling and caching it if necessary.
+     */
+    public static ElasticsearchQueryTemplate compile(String bridgeQuery) throws BridgeError {
+        ElasticsearchQueryTemplate template = cache.get(bridgeQuery);
+        if (template == null) {
+            cacheMisses.incrementAndGet();
+            // Queries that fail to compile are not cached so the error is raised on every request.
+            template = new ElasticsearchQueryTemplate(bridgeQuery);
+            cache.put(bridgeQuery, template);
+        } else {
+            cacheHits.incrementAndGet();
+        }
+        return template;
+    }
+
+    /**
+     * Returns the bridge query the template was compiled from.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the parsed JSON metadata of the bridge query, or null if the bridge query is not a
+     * JSON object. The returned map must not be modified.
+     */
+    public Map<String, Object> getMetadata() {
+        return metadata;
+    }
+
+    public String getMetadataValue(String key) {
+        return metadata == null ? null : (String)metadata.get(key);
+    }
+
+    public String getQueryType() {
+        return getMetadataValue(ElasticsearchQualificationParser.METADATA_FIELD_QUERY_STYLE);
+    }
+
+    /**
+     * Returns the compiled query text; the bridge query itself when it has no metadata, otherwise
+     * the value of the query key, or null if there is none.
+     */
+    public Text getQuery() {
+        return query;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * CACHE STATISTICS
+     *--------------------------------------------------------------------------------------------*/
+
+    public static long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public static long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    public static int getCacheSize() {
+        return cache.size();
+    }
+
+    /**
+     * Query text split on its parameter references, the literal segments surround the parameter
+     * names so literal i comes before parameter i and the last literal ends the text.
+     */
+    public static class Text {
+
+        private final String source;
+        private final String[] literals;
+        private final String[] parameterNames;
+        private final boolean singleParameter;
+
+        private Text(String source, Pattern parameterPattern) {
+            this.source = source;
+            List<String> literalList = new ArrayList<String>();
+            List<String> nameList = new ArrayList<String>();
+            Matcher matcher = parameterPattern.matcher(source);
+            int position = 0;
+            while (matcher.find()) {
+                literalList.add(source.substring(position, matcher.start()));
+                nameList.add(matcher.group(1));
+                position = matcher.end();
+            }
+            literalList.add(source.substring(position));
+            this.literals = literalList.toArray(new String[literalList.size()]);
+            this.parameterNames = nameList.toArray(new String[nameList.size()]);
+            this.singleParameter = parameterPattern == PARAMETER_JSON_SAFE
+                && SINGLE_PARAMETER.matcher(source).matches();
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        /**
+         * Whether the whole text is a single <%= parameter['name'] %> reference, in which case the
+         * value is substituted as is rather than encoded.
+         */
+        public boolean isSingleParameter() {
+            return singleParameter;
+        }
+
+        public int getParameterCount() {
+            return parameterNames.length;
+        }
+
+        public String getParameterName(int index) {
+            return parameterNames[index];
+        }
+
+        public String getLiteral(int index) {
+            return literals[index];
+        }
+
+        /**
+         * Replaces the first parameter reference with the value, which is treated as a regular
+         * expression replacement.
+         */
+        public String replaceFirst(String replacement) {
+            return PARAMETER_JSON_SAFE.matcher(source).replaceFirst(replacement);
+        }
+
+    }
+
+}
@@ -0,0 +1,19 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.Record;
+
+/**
+ * Receives the records produced by ElasticsearchAdapter.export as they are read.
+ *
+ * When an export is split into more than one slice the handler is called concurrently from each
+ * slice and must be thread safe.
+ */
+public interface ElasticsearchRecordHandler {
+
+    /**
+     * Handles a single exported record. Throwing a BridgeError stops the export.
+     */
+    void handle(Record record) throws BridgeError;
+
+}
@@ -0,0 +1,75 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deduplicates identical Elasticsearch requests that are in flight at the same time.
+ *
+ * The first caller with a given key makes the request, concurrent callers with the same key wait
+ * for it to complete and share its response. The request is forgotten as soon as it completes,
+ * so callers that arrive afterwards always make a new request and never see a stale response.
+ */
+public class ElasticsearchRequestCoalescer {
+
+    private final ConcurrentMap<String, FutureTask<String>> inFlight = new ConcurrentHashMap<String, FutureTask<String>>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Returns the response of the in flight request with the key, or executes the request if there
+     * is none.
+     */
+    public String execute(String key, Callable<String> request) throws BridgeError {
+        FutureTask<String> task = new FutureTask<String>(request);
+        FutureTask<String> existing = inFlight.putIfAbsent(key, task);
+        if (existing == null) {
+            requests.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+        } else {
+            coalesced.incrementAndGet();
+            task = existing;
+        }
+
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BridgeError) {
+                throw (BridgeError)e.getCause();
+            }
+            throw new BridgeError("Unable to make a request to the Elasticsearch server", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BridgeError("Interrupted while waiting for an Elasticsearch request", e);
+        }
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * STATISTICS
+     *--------------------------------------------------------------------------------------------*/
+
+    /** The number of requests that were made to Elasticsearch. */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /** The number of callers that shared the response of an in flight request. */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /** The number of requests currently in flight. */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+}
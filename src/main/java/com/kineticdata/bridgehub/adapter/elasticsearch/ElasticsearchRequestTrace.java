@@ -0,0 +1,106 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.kineticdata.bridgehub.adapter.RecordList;
+
+/**
+ * Records the phases of a single adapter operation, such as a search, into the metrics registry.
+ *
+ * A trace is started when the operation is called and is passed along its request path. Every
+ * metric is recorded under the operation name, for example search.httpWait, and the duration of
+ * the whole operation is recorded as total once the trace is finished. Operations that finish
+ * without being marked as succeeded are counted as errors.
+ */
+public class ElasticsearchRequestTrace {
+
+    /** Parsing the bridge query template and substituting the parameters. */
+    public static final String PHASE_PARSE = "parse";
+    /** Building the URL and body of the request. */
+    public static final String PHASE_BUILD = "buildUrl";
+    /** Waiting for the response status line and headers once the request is sent. */
+    public static final String PHASE_HTTP_WAIT = "httpWait";
+    /** Reading the response body. */
+    public static final String PHASE_RESPONSE_READ = "responseRead";
+    /** Reading the records or count out of the response. */
+    public static final String PHASE_EXTRACT = "extract";
+    public static final String PHASE_TOTAL = "total";
+
+    /** The size of the response body as it was sent, compressed when the response was gzipped. */
+    public static final String VALUE_RESPONSE_BYTES = "responseBytes";
+    /** How many fewer bytes a gzipped response body took than it decompressed to. */
+    public static final String VALUE_RESPONSE_BYTES_SAVED = "responseBytesSaved";
+    /** How many fewer bytes a gzipped request body took than the uncompressed body. */
+    public static final String VALUE_REQUEST_BYTES_SAVED = "requestBytesSaved";
+    public static final String VALUE_HITS = "hits";
+    /** How many fewer bytes a columnar record list is estimated to use than records holding maps. */
+    public static final String VALUE_RECORD_BYTES_SAVED = "recordBytesSaved";
+    /** How long Elasticsearch reported the search took in milliseconds. */
+    public static final String VALUE_TOOK = "took";
+
+    public static final String COUNTER_ERRORS = "errors";
+    public static final String COUNTER_RETRIES = "retries";
+    public static final String COUNTER_CONNECTION_ERRORS = "connectionErrors";
+    /** Prefix of the counters of responses by HTTP status, for example status.503. */
+    public static final String COUNTER_STATUS = "status.";
+
+    private final ElasticsearchMetricsRegistry registry;
+    private final String operation;
+    private final long start;
+    private volatile boolean succeeded = false;
+
+    public ElasticsearchRequestTrace(ElasticsearchMetricsRegistry registry, String operation) {
+        this.registry = registry;
+        this.operation = operation;
+        this.start = System.nanoTime();
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PUBLIC METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * Records the time since the phase started.
+     *
+     * @param startNanos the System.nanoTime() at which the phase started
+     */
+    public void record(String phase, long startNanos) {
+        registry.recordTime(operation + "." + phase, System.nanoTime() - startNanos);
+    }
+
+    public void recordValue(String name, long value) {
+        registry.recordValue(operation + "." + name, value);
+    }
+
+    public void increment(String name) {
+        registry.increment(operation + "." + name);
+    }
+
+    /**
+     * Marks the operation as successful and returns its result. The number of records of a record
+     * list is recorded as hits, along with the memory saved by a columnar record list.
+     */
+    public <T> T succeeded(T result) {
+        if (result instanceof RecordList) {
+            recordValue(VALUE_HITS, ((RecordList)result).getRecords().size());
+        }
+        if (result instanceof ElasticsearchColumnarRecordList) {
+            recordValue(VALUE_RECORD_BYTES_SAVED, ((ElasticsearchColumnarRecordList)result).getBytesSaved());
+        }
+        this.succeeded = true;
+        return result;
+    }
+
+    /**
+     * Records the duration of the operation, counting it as an error unless it succeeded.
+     */
+    public void finish() {
+        record(PHASE_TOTAL, start);
+        if (succeeded == false) {
+            increment(COUNTER_ERRORS);
+        }
+    }
+
+}
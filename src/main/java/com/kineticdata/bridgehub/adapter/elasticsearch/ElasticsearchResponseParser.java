@@ -0,0 +1,250 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.Record;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Single pass parser for Elasticsearch search responses.
+ *
+ * The response is read as a stream of JSON events so the body never has to be held as a String.
+ * Only the values under $.hits.total and the entries of the $.hits.hits array are materialized;
+ * each hit is turned into a Record as soon as it has been read and then discarded. The records
+ * match the ones built by evaluating the bridge fields against JSON_ROOT_DEFAULT. Top level
+ * primitive values, such as _scroll_id, are also kept.
+ */
+public class ElasticsearchResponseParser implements ContentHandler {
+
+    private final List<ElasticsearchFieldReader> fieldReaders;
+    // Null unless the records read their values from the hits when they are accessed.
+    private final ElasticsearchLazyRecord.FieldIndex fieldIndex;
+    private final List<Record> records = new ArrayList<Record>();
+    private Object total;
+    private final Map<String, Object> topLevelValues = new HashMap<String, Object>();
+
+    // Object keys leading to the current position while navigating outside of a built value.
+    private final List<String> path = new ArrayList<String>();
+    private boolean inHits = false;
+    // Which value is currently being built, null while navigating.
+    private String building = null;
+    private final LinkedList<Object> valueStack = new LinkedList<Object>();
+    private final LinkedList<String> valueKeys = new LinkedList<String>();
+
+    private static final String BUILDING_HIT = "hit";
+    private static final String BUILDING_TOTAL = "total";
+
+    public ElasticsearchResponseParser(List<String> fields) {
+        this(fields, false);
+    }
+
+    /**
+     * With lazyRecords the records are ElasticsearchLazyRecords, which read the field values from
+     * the hits as they are accessed.
+     */
+    public ElasticsearchResponseParser(List<String> fields, boolean lazyRecords) {
+        this.fieldReaders = ElasticsearchFieldReader.forFields(fields);
+        this.fieldIndex = lazyRecords ? new ElasticsearchLazyRecord.FieldIndex(fieldReaders) : null;
+    }
+
+    /**
+     * Parses the response read from the reader, the reader is not closed.
+     */
+    public ElasticsearchResponseParser parse(Reader reader) throws BridgeError, IOException {
+        try {
+            new JSONParser().parse(reader, this);
+        } catch (ParseException e) {
+            throw new BridgeError("The Elasticsearch response could not be parsed as JSON.", e);
+        }
+        return this;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * RESULT ACCESSORS
+     *--------------------------------------------------------------------------------------------*/
+
+    public List<Record> getRecords() {
+        return records;
+    }
+
+    /**
+     * Returns $.hits.total as a String, reading the value of the total object returned by newer
+     * versions of Elasticsearch.
+     */
+    public String getTotal() {
+        Object result = total;
+        if (result instanceof Map) {
+            result = ((Map)result).get("value");
+        }
+        return result == null ? null : String.valueOf(result);
+    }
+
+    /**
+     * Returns the top level primitive value of the response with the given key.
+     */
+    public Object getValue(String key) {
+        return topLevelValues.get(key);
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * CONTENT HANDLER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    @Override
+    public void startJSON() {}
+
+    @Override
+    public void endJSON() {}
+
+    @Override
+    public boolean startObject() {
+        if (building == null && inHits) {
+            building = BUILDING_HIT;
+        }
+        if (building != null) {
+            addValue(new LinkedHashMap<String, Object>(), true);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean endObject() {
+        if (building != null) {
+            endContainer();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean startObjectEntry(String key) {
+        if (building != null) {
+            valueKeys.push(key);
+        } else {
+            path.add(key);
+            if (isPath("hits", "total")) {
+                building = BUILDING_TOTAL;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean endObjectEntry() {
+        if (building != null && valueStack.isEmpty() == false) {
+            valueKeys.pop();
+        } else {
+            path.remove(path.size() - 1);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean startArray() {
+        if (building != null) {
+            addValue(new ArrayList<Object>(), true);
+        } else if (isPath("hits", "hits")) {
+            inHits = true;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean endArray() {
+        if (building != null) {
+            endContainer();
+        } else if (inHits) {
+            inHits = false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean primitive(Object value) {
+        if (building != null) {
+            addValue(normalize(value), false);
+        } else if (path.size() == 1) {
+            topLevelValues.put(path.get(0), normalize(value));
+        }
+        return true;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private boolean isPath(String... keys) {
+        if (path.size() != keys.length) return false;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i].equals(path.get(i)) == false) return false;
+        }
+        return true;
+    }
+
+    private void addValue(Object value, boolean isContainer) {
+        if (valueStack.isEmpty()) {
+            if (isContainer) {
+                valueStack.push(value);
+            } else {
+                completeValue(value);
+            }
+            return;
+        }
+        Object parent = valueStack.peek();
+        if (parent instanceof Map) {
+            ((Map<String, Object>)parent).put(valueKeys.peek(), value);
+        } else {
+            ((List<Object>)parent).add(value);
+        }
+        if (isContainer) {
+            valueStack.push(value);
+        }
+    }
+
+    private void endContainer() {
+        Object value = valueStack.pop();
+        if (valueStack.isEmpty()) {
+            completeValue(value);
+        }
+    }
+
+    private void completeValue(Object value) {
+        if (BUILDING_HIT.equals(building)) {
+            records.add(buildRecord(value));
+        } else {
+            total = value;
+        }
+        building = null;
+    }
+
+    private Record buildRecord(Object hit) {
+        if (fieldIndex != null) {
+            return new ElasticsearchLazyRecord(fieldIndex, hit);
+        }
+        return new Record(ElasticsearchFieldReader.readAll(fieldReaders, hit));
+    }
+
+    /**
+     * The JSON provider used by JsonPath stores integral numbers as Integers when they fit,
+     * json-simple always uses Longs. Narrow the value so records compare equal to the ones built
+     * from a parsed document.
+     */
+    private static Object normalize(Object value) {
+        if (value instanceof Long) {
+            long longValue = (Long)value;
+            if (longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE) {
+                return Integer.valueOf((int)longValue);
+            }
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,219 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * In process cache of Elasticsearch response bodies.
+ *
+ * Entries are keyed on the credentials the request was made with, the fully built URL and the
+ * request body, so requests made with different credentials never share results. Entries expire
+ * after the time to live of the structure they were read from and the least recently used
+ * entries are evicted once either the entry or the byte budget is exceeded. A response larger
+ * than the whole byte budget is not cached, rather than evicting every other entry.
+ */
+public class ElasticsearchResultCache {
+
+    private final long defaultTimeToLive;
+    private final Map<String, Long> structureTimeToLives;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long expirations = 0;
+    private long oversized = 0;
+
+    /**
+     * @param defaultTimeToLive the time to live of entries in milliseconds, 0 disables caching
+     * @param structureTimeToLives time to live overrides in milliseconds keyed by structure
+     * @param maxEntries the maximum number of entries kept
+     * @param maxBytes the maximum estimated size of the entries kept
+     */
+    public ElasticsearchResultCache(long defaultTimeToLive, Map<String, Long> structureTimeToLives, int maxEntries, long maxBytes) {
+        this.defaultTimeToLive = defaultTimeToLive;
+        this.structureTimeToLives = structureTimeToLives;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PUBLIC METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * Parses a comma separated list of structure=seconds time to live overrides into milliseconds.
+     */
+    public static Map<String, Long> parseTimeToLives(String value) throws BridgeError {
+        Map<String, Long> timeToLives = new HashMap<String, Long>();
+        if (StringUtils.isBlank(value)) {
+            return timeToLives;
+        }
+        for (String override : value.split(",")) {
+            String[] parts = override.split("=");
+            try {
+                if (parts.length != 2) {
+                    throw new NumberFormatException();
+                }
+                timeToLives.put(parts[0].trim(), Long.parseLong(parts[1].trim()) * 1000L);
+            } catch (NumberFormatException e) {
+                throw new BridgeError(String.format(
+                    "The cache time to live override (%s) is not valid, the expected format is structure=seconds.",
+                    override.trim()
+                ));
+            }
+        }
+        return timeToLives;
+    }
+
+    /**
+     * Builds the cache key of a request. The credentials are digested so they are not kept in
+     * memory in clear text.
+     */
+    public static String buildKey(String credentials, String url, String body) {
+        StringBuilder key = new StringBuilder();
+        key.append(DigestUtils.sha256Hex(credentials == null ? "" : credentials))
+            .append("\n")
+            .append(url)
+            .append("\n");
+        if (body != null) {
+            key.append(body);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the time to live in milliseconds of results read from the structure.
+     */
+    public long getTimeToLive(String structure) {
+        Long timeToLive = structureTimeToLives.get(structure);
+        return timeToLive == null ? defaultTimeToLive : timeToLive;
+    }
+
+    public boolean isEnabled() {
+        if (defaultTimeToLive > 0) return true;
+        for (Long timeToLive : structureTimeToLives.values()) {
+            if (timeToLive > 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the cached response, or null if there is no entry or the entry has expired.
+     */
+    public synchronized String get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+            remove(key);
+            expirations++;
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    public synchronized void put(String key, String value, long timeToLive) {
+        if (timeToLive <= 0) {
+            return;
+        }
+        remove(key);
+        long size = estimateSize(key, value);
+        if (size > maxBytes) {
+            oversized++;
+            return;
+        }
+        Entry entry = new Entry(value, System.currentTimeMillis() + timeToLive, size);
+        entries.put(key, entry);
+        bytes += entry.size;
+        // Evict the least recently used entries until the cache is within both budgets.
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            bytes -= eldest.getValue().size;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * STATISTICS
+     *--------------------------------------------------------------------------------------------*/
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getExpirations() {
+        return expirations;
+    }
+
+    /**
+     * Returns the number of responses that were not cached because they were larger than the
+     * byte budget.
+     */
+    public synchronized long getOversized() {
+        return oversized;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getByteCount() {
+        return bytes;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            bytes -= entry.size;
+        }
+    }
+
+    private static long estimateSize(String key, String value) {
+        // Java strings hold two bytes per character.
+        return 2L * (key.length() + value.length());
+    }
+
+    private static class Entry {
+        private final String value;
+        private final long expiresAt;
+        private final long size;
+
+        private Entry(String value, long expiresAt, long size) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.size = size;
+        }
+    }
+
+}
@@ -0,0 +1,13 @@
+package com.kineticdata.bridgehub.helpers.http;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+
+public class HttpDeleteWithEntity extends HttpEntityEnclosingRequestBase {
+    
+    public final static String METHOD_NAME = "DELETE";
+
+    @Override
+    public String getMethod() {
+        return METHOD_NAME;
+    }
+
+}
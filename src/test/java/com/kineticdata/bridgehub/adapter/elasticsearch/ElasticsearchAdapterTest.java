@@ -5,12 +5,18 @@
  */
 package com.kineticdata.bridgehub.adapter.elasticsearch;
 
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
 import com.kineticdata.bridgehub.adapter.BridgeError;
 import com.kineticdata.bridgehub.adapter.BridgeRequest;
 import com.kineticdata.bridgehub.adapter.Count;
 import com.kineticdata.bridgehub.adapter.Record;
+import com.kineticdata.bridgehub.adapter.RecordList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -75,6 +81,7 @@ public class ElasticsearchAdapterTest {
             .append(pageSize)
             .append("&from=")
             .append(offset);
+        String filterPath = "&filter_path=hits.total%2Chits.hits._id%2Ctook%2Cerror";
 
         try {
             actualUrl = adapter.buildUrl("search", ElasticsearchAdapter.JSON_ROOT_DEFAULT, request, parser);
@@ -83,7 +90,7 @@ public class ElasticsearchAdapterTest {
             throw new RuntimeException(e);
         }
         
-        assertEquals(expectedUrl.toString(), actualUrl);
+        assertEquals(expectedUrl.toString() + filterPath, actualUrl);
         
         try {
             bridgeMetadata.put("order", "<%=field[\"_timestamp\"]%>:DESC,<%=field[\"_source.message\"]%>:ASC");
@@ -94,14 +101,14 @@ public class ElasticsearchAdapterTest {
         }
         
         expectedUrl.append("&sort=_timestamp%3Adesc%2Cmessage%3Aasc");
-        assertEquals(expectedUrl.toString(), actualUrl);
+        assertEquals(expectedUrl.toString() + filterPath, actualUrl);
         
     }
     
     @Test
     public void testCountResults_UriSearch() throws Exception {
         Integer expectedCount = 1;
-        String expectedUrl = elasticUrl + "/examples/doc/_count?q=message%3Aerror";
+        String expectedUrl = elasticUrl + "/examples/doc/_count?q=message%3Aerror&filter_path=count%2Cerror";
         Count actualCount;
         
         Map<String,String> configuration = new HashMap<String,String>();
@@ -142,7 +149,7 @@ public class ElasticsearchAdapterTest {
     @Test
     public void testCountResults_RequestBodySearch() throws Exception {
         Integer expectedCount = 1;
-        String expectedUrl = elasticUrl + "/examples/doc/_count";
+        String expectedUrl = elasticUrl + "/examples/doc/_count?filter_path=count%2Cerror";
         Count actualCount;
         
         Map<String,String> configuration = new HashMap<String,String>();
@@ -182,7 +189,8 @@ public class ElasticsearchAdapterTest {
     
     @Test
     public void testRetrieveResults() throws Exception {
-        String expectedUrl = elasticUrl + "/examples/doc/_search?q=message%3Aerror&size=1000&from=0&_source=app.username%2Capp.name";
+        String expectedUrl = elasticUrl + "/examples/doc/_search?q=message%3Aerror&size=1000&from=0&_source=app.username%2Capp.name"
+            + "&filter_path=hits.total%2Chits.hits._id%2Chits.hits._source.app.username%2Chits.hits._source.app.name%2Ctook%2Cerror";
         
         Map<String,String> configuration = new HashMap<String,String>();
         configuration.put("Username",null);
@@ -221,7 +229,9 @@ public class ElasticsearchAdapterTest {
 
     @Test
     public void testRetrieveResults_RequestBodySearch() throws Exception {
-        String expectedUrl = elasticUrl + "/examples/doc/_search?size=1000&from=0&_source=message";
+        // The _source includes of a request body query are sent in the body.
+        String expectedUrl = elasticUrl + "/examples/doc/_search?size=1000&from=0"
+            + "&filter_path=hits.total%2Chits.hits._id%2Chits.hits._source.message%2Ctook%2Cerror";
         
         Map<String,String> configuration = new HashMap<String,String>();
         configuration.put("Username",null);
@@ -261,6 +271,201 @@ public class ElasticsearchAdapterTest {
                 
         
     }    
+
+    @Test
+    public void test_requestBodyUriSearch() throws Exception {
+        
+        BridgeRequest request = new BridgeRequest();
+        ElasticsearchQualificationParser parser = new ElasticsearchQualificationParser();
+        ElasticsearchAdapter adapter = new ElasticsearchAdapter();
+        
+        Map<String, String> bridgeParameters = new HashMap<String, String>();
+        bridgeParameters.put("log level", "error");
+        
+        Map<String, String> bridgeMetadata = new HashMap<String, String>();
+        bridgeMetadata.put("pageSize", "25");
+        bridgeMetadata.put("offset", "50");
+        bridgeMetadata.put("order", "<%=field[\"_source.message\"]%>:DESC");
+        
+        request.setParameters(bridgeParameters);
+        request.setMetadata(bridgeMetadata);
+        request.setStructure("examples/doc");
+        request.setQuery("message:<%= parameter[\"log level\"] %>");
+        request.setFields(Arrays.asList("_source.message"));
+        
+        Map<String, Object> expectedBody = new LinkedHashMap<String, Object>();
+        expectedBody.put("query", Collections.singletonMap("query_string", Collections.singletonMap("query", "message:error")));
+        expectedBody.put("size", 25);
+        expectedBody.put("from", 50);
+        expectedBody.put("_source", Arrays.asList("message"));
+        expectedBody.put("sort", Arrays.asList(Collections.singletonMap("message", "desc")));
+        
+        assertEquals(expectedBody, adapter.buildRequestBody("search", ElasticsearchAdapter.JSON_ROOT_DEFAULT, request, parser));
+        
+        assertEquals(
+            Collections.singletonMap("query", Collections.singletonMap("query_string", Collections.singletonMap("query", "message:error"))),
+            adapter.buildRequestBody("count", ElasticsearchAdapter.JSON_ROOT_DEFAULT, request, parser)
+        );
+        
+    }
+    
+    @Test
+    public void test_totalRequestBody() throws Exception {
+        ElasticsearchQualificationParser parser = new ElasticsearchQualificationParser();
+        ElasticsearchAdapter adapter = new ElasticsearchAdapter();
+
+        Map<String, String> bridgeMetadata = new HashMap<String, String>();
+        bridgeMetadata.put("pageSize", "25");
+        bridgeMetadata.put("offset", "50");
+        bridgeMetadata.put("order", "<%=field[\"_source.message\"]%>:DESC");
+
+        BridgeRequest request = new BridgeRequest();
+        request.setParameters(new HashMap<String, String>());
+        request.setMetadata(bridgeMetadata);
+        request.setStructure("examples/doc");
+        request.setQuery("message:error");
+        request.setFields(Arrays.asList("_source.message"));
+
+        // Totals are searched without hits, so no pagination, field limitation or sorting is sent.
+        Map<String, Object> expectedBody = new LinkedHashMap<String, Object>();
+        expectedBody.put("query", Collections.singletonMap("query_string", Collections.singletonMap("query", "message:error")));
+        expectedBody.put("size", 0);
+        expectedBody.put("track_total_hits", true);
+
+        assertEquals(expectedBody, adapter.buildRequestBody(ElasticsearchAdapter.QUERY_METHOD_TOTAL, ElasticsearchAdapter.JSON_ROOT_DEFAULT, request, parser));
+        assertEquals(
+            Arrays.asList("hits.total", "took", "error"),
+            adapter.buildFilterPath(ElasticsearchAdapter.QUERY_METHOD_TOTAL, ElasticsearchAdapter.JSON_ROOT_DEFAULT, request)
+        );
+    }
+
+    @Test
+    public void test_buildFilterPath() throws Exception {
+        ElasticsearchAdapter adapter = new ElasticsearchAdapter();
+        BridgeRequest request = new BridgeRequest();
+        request.setFields(Arrays.asList("_id", "_source.app.name"));
+
+        assertEquals(
+            Arrays.asList("count", "error"),
+            adapter.buildFilterPath("count", null, request)
+        );
+        assertEquals(
+            Arrays.asList("hits.total", "hits.hits._id", "hits.hits._source.app.name", "took", "error"),
+            adapter.buildFilterPath("search", ElasticsearchAdapter.JSON_ROOT_DEFAULT, request)
+        );
+        assertEquals(
+            Arrays.asList("hits.total", "aggregations.statuses.buckets", "took", "error"),
+            adapter.buildFilterPath("search", "$.aggregations.statuses.buckets[*]", request)
+        );
+        // Roots that can not be expressed as a filter path leave the response unfiltered.
+        assertEquals(
+            Collections.emptyList(),
+            adapter.buildFilterPath("search", "$..buckets[?(@.doc_count > 0)]", request)
+        );
+
+        // JsonPath fields can read any part of the hit.
+        request.setFields(Arrays.asList("_source.app.name", "$._source.tags[0]"));
+        assertEquals(
+            Arrays.asList("hits.total", "hits.hits", "took", "error"),
+            adapter.buildFilterPath("search", ElasticsearchAdapter.JSON_ROOT_DEFAULT, request)
+        );
+    }
+
+    @Test
+    public void test_buildRecordListFilteredEmpty() throws Exception {
+        ElasticsearchAdapter adapter = new ElasticsearchAdapter();
+        BridgeRequest request = new BridgeRequest();
+        request.setFields(Arrays.asList("_id", "key"));
+
+        // Filtered responses leave out empty arrays, so a search that matched nothing has no hits.
+        DocumentContext response = JsonPath.parse("{\"took\":1,\"hits\":{\"total\":{\"value\":0,\"relation\":\"eq\"}}}");
+        RecordList records = adapter.buildRecordList(response, ElasticsearchAdapter.JSON_ROOT_DEFAULT, request);
+        assertEquals(0, records.getRecords().size());
+        assertEquals("0", records.getMetadata().get("size"));
+
+        records = adapter.buildRecordList(response, "$.aggregations.statuses.buckets[*]", request);
+        assertEquals(0, records.getRecords().size());
+    }
+
+    @Test
+    public void test_buildMultiSearchHeader() throws Exception {
+        Map<String,Object> header = ElasticsearchAdapter.buildMultiSearchHeader("examples");
+        assertEquals(Collections.singletonMap("index", "examples"), header);
+
+        header = ElasticsearchAdapter.buildMultiSearchHeader("examples/doc");
+        assertEquals("examples", header.get("index"));
+        assertEquals("doc", header.get("type"));
+
+        header = ElasticsearchAdapter.buildMultiSearchHeader("examples/");
+        assertEquals(Collections.singletonMap("index", "examples"), header);
+    }
+
+    @Test
+    public void test_buildBatchResult() throws Exception {
+        ElasticsearchAdapter adapter = new ElasticsearchAdapter();
+        BridgeRequest request = new BridgeRequest();
+        request.setFields(Arrays.asList("_id", "_source.key"));
+        request.setMetadata(new LinkedHashMap<String,String>());
+
+        // A search that succeeded, a search that failed in Elasticsearch and a count.
+        List<Object> responses = JsonPath.parse("{\"took\":3,\"responses\":["
+            + "{\"took\":1,\"hits\":{\"total\":{\"value\":1,\"relation\":\"eq\"},\"hits\":[{\"_id\":\"1\",\"_source\":{\"key\":\"value\"}}]},\"status\":200},"
+            + "{\"error\":{\"type\":\"index_not_found_exception\",\"reason\":\"no such index\"},\"status\":404},"
+            + "{\"took\":1,\"hits\":{\"total\":{\"value\":10000,\"relation\":\"gte\"}},\"status\":200}"
+            + "]}").read("$.responses");
+
+        ElasticsearchBatchResult result = adapter.buildBatchResult(ElasticsearchBatchRequest.search(request),
+            ElasticsearchAdapter.JSON_ROOT_DEFAULT, responses.get(0));
+        assertTrue(result.isSuccessful());
+        assertEquals(1, result.getRecordList().getRecords().size());
+        assertEquals("value", result.getRecordList().getRecords().get(0).getValue("_source.key"));
+
+        result = adapter.buildBatchResult(ElasticsearchBatchRequest.search(request),
+            ElasticsearchAdapter.JSON_ROOT_DEFAULT, responses.get(1));
+        assertFalse(result.isSuccessful());
+        assertTrue(result.getError().getMessage(), result.getError().getMessage().contains("404"));
+        assertTrue(result.getError().getMessage(), result.getError().getMessage().contains("index_not_found_exception"));
+
+        result = adapter.buildBatchResult(ElasticsearchBatchRequest.count(request),
+            ElasticsearchAdapter.JSON_ROOT_DEFAULT, responses.get(2));
+        assertEquals(Integer.valueOf(10000), result.getCount().getValue());
+        assertEquals("gte", result.getCount().getMetadata().get("countRelation"));
+
+        // A response with fewer items than requests leaves the rest without a response.
+        result = adapter.buildBatchResult(ElasticsearchBatchRequest.search(request),
+            ElasticsearchAdapter.JSON_ROOT_DEFAULT, null);
+        assertFalse(result.isSuccessful());
+    }
+
+    @Test
+    public void test_addSourceIncludes() throws Exception {
+        List<String> includes = Arrays.asList("key", "message");
+
+        Map<String,Object> body = JsonPath.parse(ElasticsearchAdapter.addSourceIncludes(
+            "{\"query\":{\"exists\":{\"field\":\"_source\"}}}", includes)).json();
+        assertEquals(includes, body.get("_source"));
+        assertEquals("_source", JsonPath.parse(body).read("$.query.exists.field"));
+
+        body = JsonPath.parse(ElasticsearchAdapter.addSourceIncludes("{ }", includes)).json();
+        assertEquals(includes, body.get("_source"));
+
+        // A body with a _source of its own is sent as written.
+        String written = "{\"_source\":false,\"query\":{\"match_all\":{}}}";
+        assertEquals(written, ElasticsearchAdapter.addSourceIncludes(written, includes));
+        assertEquals(written, ElasticsearchAdapter.addSourceIncludes(written, Collections.<String>emptyList()));
+    }
+
+    @Test
+    public void test_pageTokenRoundTrip() throws Exception {
+        
+        List<Object> searchAfter = Arrays.<Object>asList(1609459200000L, "error", 42L);
+        String encoded = new ElasticsearchPageToken("pit-id==", searchAfter).encode();
+        ElasticsearchPageToken decoded = ElasticsearchPageToken.decode(encoded);
+        
+        assertEquals("pit-id==", decoded.getPointInTimeId());
+        assertEquals(searchAfter, decoded.getSearchAfter());
+        
+    }
         
     @Test
     public void testJsonQualificationParsing() throws Exception {
@@ -299,4 +504,24 @@ public class ElasticsearchAdapterTest {
         
     }
     
+    @Test
+    public void test_queryTemplateIsReused() throws Exception {
+        
+        String originalQuery = "{\"type\": \"Kinetic DSL\", \"query\": \"{\\\"message\\\":{\\\"value\\\":\\\"<%= parameter[\"message\"] %>\\\",\\\"matcher\\\":\\\"like\\\"}}\"}";
+        
+        Map<String, String> firstParameters = new HashMap();
+        firstParameters.put("message", "error");
+        Map<String, String> secondParameters = new HashMap();
+        secondParameters.put("message", "warn OR info");
+        
+        assertEquals("message:*error*", new ElasticsearchQualificationParser().parse(originalQuery, firstParameters));
+        long misses = ElasticsearchQueryTemplate.getCacheMisses();
+        assertEquals("message:*warn\\ \\\\OR\\ info*", new ElasticsearchQualificationParser().parse(originalQuery, secondParameters));
+        
+        // The second parse substitutes into the compiled template rather than compiling it again.
+        assertEquals(misses, ElasticsearchQueryTemplate.getCacheMisses());
+        assertSame(ElasticsearchQueryTemplate.compile(originalQuery), ElasticsearchQueryTemplate.compile(originalQuery));
+        
+    }
+    
 }
@@ -0,0 +1,97 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.jayway.jsonpath.JsonPath;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.json.simple.JSONValue;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ElasticsearchBinaryFormatTest {
+
+    private final String searchResponse = "{\"took\":3,\"_scroll_id\":\"abc\","
+        + "\"hits\":{\"total\":{\"value\":2,\"relation\":\"eq\"},\"hits\":["
+        + "{\"_id\":\"1\",\"_source\":{\"message\":\"caf\u00e9\",\"app\":{\"name\":\"bridgehub\",\"port\":8080,"
+        + "\"tags\":[\"a\",\"b\"],\"empty\":{}},\"ratio\":0.5,\"active\":true,\"missing\":null}},"
+        + "{\"_id\":\"2\",\"_source\":{\"message\":\"another message\",\"app\":{\"name\":\"kinetic\",\"port\":9200000000},"
+        + "\"nested\":[[1,2],[]]}}"
+        + "]}}";
+
+    private final List<String> fields = Arrays.asList(
+        "_id",
+        "_source.message",
+        "_source.app",
+        "_source.app.port",
+        "_source.app.tags",
+        "_source.ratio",
+        "_source.active",
+        "_source.missing",
+        "_source.nested"
+    );
+
+    private static byte[] encode(String json, ElasticsearchBinaryFormat format) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonParser parser = new JsonFactory().createParser(json);
+        JsonGenerator generator = format.getFactory().createGenerator(output);
+        parser.nextToken();
+        generator.copyCurrentStructure(parser);
+        generator.close();
+        return output.toByteArray();
+    }
+
+    @Test
+    public void test_streamingMatchesJson() throws Exception {
+        ElasticsearchResponseParser expected = new ElasticsearchResponseParser(fields)
+            .parse(new StringReader(searchResponse));
+
+        for (ElasticsearchBinaryFormat format : Arrays.asList(ElasticsearchBinaryFormat.SMILE, ElasticsearchBinaryFormat.CBOR)) {
+            ElasticsearchResponseParser parser = format.parse(
+                new ByteArrayInputStream(encode(searchResponse, format)), new ElasticsearchResponseParser(fields));
+
+            assertEquals(expected.getRecords().size(), parser.getRecords().size());
+            for (int i = 0; i < expected.getRecords().size(); i++) {
+                assertEquals(expected.getRecords().get(i).getRecord(), parser.getRecords().get(i).getRecord());
+            }
+            assertEquals("2", parser.getTotal());
+            assertEquals("abc", parser.getValue("_scroll_id"));
+        }
+    }
+
+    @Test
+    public void test_readMatchesJson() throws Exception {
+        Object expected = JsonPath.parse(searchResponse).json();
+
+        for (ElasticsearchBinaryFormat format : Arrays.asList(ElasticsearchBinaryFormat.SMILE, ElasticsearchBinaryFormat.CBOR)) {
+            Object value = format.read(new ByteArrayInputStream(encode(searchResponse, format)));
+
+            assertEquals(expected, value);
+            Map<String, Object> app = JsonPath.parse(value).read("$.hits.hits[0]._source.app");
+            // Whole numbers that fit are Integers, the same as a parsed JSON document.
+            assertEquals(Integer.valueOf(8080), app.get("port"));
+            assertEquals(Long.valueOf(9200000000L), JsonPath.parse(value).read("$.hits.hits[1]._source.app.port"));
+
+            assertEquals(JSONValue.parse(searchResponse),
+                JSONValue.parse(format.toJson(new ByteArrayInputStream(encode(searchResponse, format)))));
+        }
+    }
+
+    @Test
+    public void test_contentTypes() throws Exception {
+        assertSame(ElasticsearchBinaryFormat.SMILE, ElasticsearchBinaryFormat.forContentType("application/smile"));
+        assertSame(ElasticsearchBinaryFormat.CBOR, ElasticsearchBinaryFormat.forContentType("application/cbor; charset=UTF-8"));
+        assertNull(ElasticsearchBinaryFormat.forContentType("application/json; charset=UTF-8"));
+        assertNull(ElasticsearchBinaryFormat.forContentType(null));
+
+        assertSame(ElasticsearchBinaryFormat.SMILE, ElasticsearchBinaryFormat.forName(ElasticsearchAdapter.RESPONSE_FORMAT_SMILE));
+        assertSame(ElasticsearchBinaryFormat.CBOR, ElasticsearchBinaryFormat.forName(ElasticsearchAdapter.RESPONSE_FORMAT_CBOR));
+        assertNull(ElasticsearchBinaryFormat.forName(ElasticsearchAdapter.RESPONSE_FORMAT_JSON));
+    }
+
+}
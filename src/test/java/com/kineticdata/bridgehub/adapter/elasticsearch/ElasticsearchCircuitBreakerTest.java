@@ -0,0 +1,70 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ElasticsearchCircuitBreakerTest {
+
+    @Test
+    public void test_opensAfterConsecutiveFailures() throws Exception {
+        ElasticsearchCircuitBreaker breaker = new ElasticsearchCircuitBreaker(3, 60000);
+
+        for (int i = 0; i < 2; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.recordFailure();
+        }
+        // A success resets the consecutive failures.
+        assertTrue(breaker.allowRequest());
+        breaker.recordSuccess();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.recordFailure();
+        }
+
+        assertEquals(ElasticsearchCircuitBreaker.STATE_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        assertEquals(1, breaker.getTimesOpened());
+        assertEquals(1, breaker.getRejections());
+    }
+
+    @Test
+    public void test_halfOpenTrial() throws Exception {
+        ElasticsearchCircuitBreaker breaker = new ElasticsearchCircuitBreaker(1, 1);
+
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure();
+        Thread.sleep(5);
+
+        // Only a single trial request is let through while half open.
+        assertTrue(breaker.allowRequest());
+        assertEquals(ElasticsearchCircuitBreaker.STATE_HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+
+        // A failed trial reopens the breaker.
+        breaker.recordFailure();
+        assertEquals(ElasticsearchCircuitBreaker.STATE_OPEN, breaker.getState());
+        assertEquals(2, breaker.getTimesOpened());
+
+        Thread.sleep(5);
+        assertTrue(breaker.allowRequest());
+        breaker.recordSuccess();
+        assertEquals(ElasticsearchCircuitBreaker.STATE_CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void test_abandonedTrial() throws Exception {
+        ElasticsearchCircuitBreaker breaker = new ElasticsearchCircuitBreaker(1, 1);
+
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure();
+        Thread.sleep(5);
+
+        assertTrue(breaker.allowRequest());
+        breaker.recordAbandoned();
+        // The trial did not tell whether the cluster recovered, so another one is let through.
+        assertTrue(breaker.allowRequest());
+        assertEquals(ElasticsearchCircuitBreaker.STATE_HALF_OPEN, breaker.getState());
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.jayway.jsonpath.JsonPath;
+import com.kineticdata.bridgehub.adapter.Record;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.simple.JSONValue;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ElasticsearchColumnarRecordListTest {
+
+    private final List<String> fields = Arrays.asList(
+        "_id",
+        "_source.status",
+        "_source.count",
+        "_source.big",
+        "_source.ratio",
+        "_source.mixed",
+        "_source.tags",
+        "_source.active",
+        "_source.unknown"
+    );
+
+    private List<Object> buildHits(int size) {
+        List<Object> hits = new ArrayList<Object>();
+        String[] statuses = {"Open", "Closed", "Pending"};
+        for (int i = 0; i < size; i++) {
+            StringBuilder hit = new StringBuilder("{\"_id\":\"doc-").append(i).append("\",\"_source\":{")
+                .append("\"status\":").append(i % 7 == 0 ? "null" : "\"" + statuses[i % 3] + "\"")
+                .append(",\"count\":").append(i % 5 == 0 ? "null" : String.valueOf(i))
+                .append(",\"big\":").append(10000000000L + i)
+                .append(",\"ratio\":").append(i / 4.0)
+                .append(",\"mixed\":").append(i % 2 == 0 ? "\"even\"" : String.valueOf(i))
+                .append(",\"tags\":[\"t").append(i % 2).append("\"]")
+                .append(",\"active\":").append(i % 2 == 0)
+                .append("}}");
+            hits.add(JsonPath.parse(hit.toString()).json());
+        }
+        return hits;
+    }
+
+    private ElasticsearchColumnarRecordList build(List<Object> hits) {
+        ElasticsearchColumnarRecordList.Builder builder = new ElasticsearchColumnarRecordList.Builder(
+            ElasticsearchFieldReader.forFields(fields));
+        for (Object hit : hits) {
+            builder.addHit(hit);
+        }
+        Map<String,String> metadata = new LinkedHashMap<String,String>();
+        metadata.put("size", String.valueOf(hits.size()));
+        return builder.build(fields, metadata);
+    }
+
+    @Test
+    public void test_matchesMapRecords() throws Exception {
+        List<Object> hits = buildHits(50);
+        List<ElasticsearchFieldReader> readers = ElasticsearchFieldReader.forFields(fields);
+        List<Record> expected = new ArrayList<Record>();
+        for (Object hit : hits) {
+            expected.add(new Record(ElasticsearchFieldReader.readAll(readers, hit)));
+        }
+
+        ElasticsearchColumnarRecordList records = build(hits);
+        assertEquals(expected.size(), records.getRecords().size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getRecord(), records.getRecords().get(i).getRecord());
+        }
+        assertEquals(JSONValue.parse(new RecordList(fields, expected, records.getMetadata()).toJsonString()),
+            JSONValue.parse(records.toJsonString()));
+
+        // The values keep the types they were read as.
+        Record record = records.getRecords().get(1);
+        assertEquals(Integer.valueOf(1), record.getValue("_source.count"));
+        assertEquals(Long.valueOf(10000000001L), record.getValue("_source.big"));
+        assertEquals(Double.valueOf(0.25), record.getValue("_source.ratio"));
+        assertEquals("Closed", record.getValue("_source.status"));
+        assertNull(records.getRecords().get(0).getValue("_source.count"));
+        assertNull(records.getRecords().get(0).getValue("_source.status"));
+        assertNull(record.getValue("_source.unknown"));
+    }
+
+    @Test
+    public void test_columnStorage() throws Exception {
+        ElasticsearchColumnarRecordList records = build(buildHits(300));
+
+        assertEquals("dictionary", records.getStorage("_source.status"));
+        assertEquals("int", records.getStorage("_source.count"));
+        assertEquals("long", records.getStorage("_source.big"));
+        assertEquals("double", records.getStorage("_source.ratio"));
+        assertEquals("object", records.getStorage("_source.mixed"));
+        assertEquals("object", records.getStorage("_source.tags"));
+        assertEquals("null", records.getStorage("_source.unknown"));
+        // More than 255 distinct values are stored with wider codes.
+        assertEquals("dictionary", records.getStorage("_id"));
+        assertEquals("doc-299", records.getRecords().get(299).getValue("_id"));
+        assertNull(records.getStorage("_source.other"));
+    }
+
+    @Test
+    public void test_bytesSaved() throws Exception {
+        ElasticsearchColumnarRecordList records = build(buildHits(1000));
+
+        assertTrue(records.getEstimatedBytes() > 0);
+        assertTrue(records.getEstimatedMapBytes() > records.getEstimatedBytes() * 2);
+        assertEquals(records.getEstimatedMapBytes() - records.getEstimatedBytes(), records.getBytesSaved());
+    }
+
+    @Test
+    public void test_fromRecords() throws Exception {
+        List<Object> hits = buildHits(20);
+        List<ElasticsearchFieldReader> readers = ElasticsearchFieldReader.forFields(fields);
+        List<Record> source = new ArrayList<Record>();
+        for (Object hit : hits) {
+            source.add(new Record(ElasticsearchFieldReader.readAll(readers, hit)));
+        }
+
+        ElasticsearchColumnarRecordList records = ElasticsearchColumnarRecordList.of(
+            fields, source, new LinkedHashMap<String,String>());
+        for (int i = 0; i < source.size(); i++) {
+            assertEquals(source.get(i).getRecord(), records.getRecords().get(i).getRecord());
+        }
+
+        ElasticsearchColumnarRecordList empty = ElasticsearchColumnarRecordList.of(
+            Arrays.<String>asList(), source, new LinkedHashMap<String,String>());
+        assertEquals(20, empty.getRecords().size());
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.jayway.jsonpath.InvalidPathException;
+import com.jayway.jsonpath.JsonPath;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ElasticsearchFieldReaderTest {
+
+    private final Object hit = JsonPath.parse("{\"_id\":\"1\",\"_index\":\"examples\",\"_source\":{"
+        + "\"message\":\"hello\",\"nullValue\":null,\"count\":3,\"ratio\":0.5,\"active\":false,"
+        + "\"app\":{\"name\":\"bridgehub\",\"app-name\":\"dashed\",\"port\":8080,\"empty\":{}},"
+        + "\"tags\":[\"a\",\"b\"],\"items\":[{\"name\":\"first\"},{\"name\":\"second\"}],\"nested\":[[1,2],[]],"
+        + "\"404\":\"numeric\"}}").json();
+
+    /**
+     * Asserts the reader returns the value JsonPath reads, or throws an InvalidPathException when
+     * JsonPath does.
+     */
+    private void assertMatchesJsonPath(String field) {
+        Object expected;
+        try {
+            expected = JsonPath.parse(hit).read(field);
+        } catch (InvalidPathException e) {
+            try {
+                Object value = ElasticsearchFieldReader.forField(field).read(hit);
+                fail(String.format("Expected %s to not resolve, but read %s.", field, value));
+            } catch (InvalidPathException readerException) {
+                return;
+            }
+            return;
+        }
+        assertEquals(field, expected, ElasticsearchFieldReader.forField(field).read(hit));
+    }
+
+    @Test
+    public void test_propertyPaths() throws Exception {
+        List<String> fields = Arrays.asList(
+            "_id",
+            "$._id",
+            "_source.message",
+            "$._source.message",
+            "_source.count",
+            "_source.ratio",
+            "_source.active",
+            "_source.app",
+            "_source.app.name",
+            "$._source.app.name",
+            "_source.app.app-name",
+            "_source.app.empty"
+        );
+        for (String field : fields) {
+            assertNotNull(field, ElasticsearchFieldReader.forField(field).getPropertyPath());
+            assertMatchesJsonPath(field);
+        }
+        assertEquals("_source.app.name", ElasticsearchFieldReader.forField("$._source.app.name").getPropertyPath());
+    }
+
+    @Test
+    public void test_missingKeys() throws Exception {
+        for (String field : Arrays.asList("missing", "_source.missing", "_source.app.missing.deeper", "_source.message.length")) {
+            assertMatchesJsonPath(field);
+        }
+        try {
+            ElasticsearchFieldReader.forField("_source.missing").read(hit);
+            fail("Expected the missing key to not resolve.");
+        } catch (InvalidPathException e) {
+        }
+        // readAll sets the fields that do not resolve to null.
+        assertTrue(ElasticsearchFieldReader.readAll(ElasticsearchFieldReader.forFields(
+            Arrays.asList("_source.missing")), hit).containsKey("_source.missing"));
+    }
+
+    @Test
+    public void test_explicitNulls() throws Exception {
+        assertMatchesJsonPath("_source.nullValue");
+        assertNull(ElasticsearchFieldReader.forField("_source.nullValue").read(hit));
+        assertMatchesJsonPath("_source.nullValue.child");
+    }
+
+    @Test
+    public void test_arrayValues() throws Exception {
+        for (String field : Arrays.asList("_source.tags", "_source.items", "_source.nested", "_source.tags.0", "_source.items.name")) {
+            assertMatchesJsonPath(field);
+        }
+        assertEquals(Arrays.asList("a", "b"), ElasticsearchFieldReader.forField("_source.tags").read(hit));
+    }
+
+    @Test
+    public void test_jsonPathFallback() throws Exception {
+        List<String> fields = Arrays.asList(
+            "$._source.tags[0]",
+            "$._source.items[*].name",
+            "$._source.items[1].name",
+            "$..name",
+            "$['_source']['message']",
+            "_source.tags[1]",
+            "$._source.missing[0]"
+        );
+        for (String field : fields) {
+            assertNull(field, ElasticsearchFieldReader.forField(field).getPropertyPath());
+            assertMatchesJsonPath(field);
+        }
+    }
+
+    @Test
+    public void test_edgeCaseNames() throws Exception {
+        for (String field : Arrays.asList("$", "$.", "_source.404", "_source..message", ".message", "_source.message.")) {
+            assertMatchesJsonPath(field);
+        }
+    }
+
+    @Test
+    public void test_readAllMatchesJsonPath() throws Exception {
+        List<String> fields = Arrays.asList("_id", "$._source.app.name", "_source.nullValue", "_source.missing",
+            "_source.tags", "$._source.tags[1]", "$..name", "$.[invalid", "_source.message", "_source.message");
+
+        // Records used to be built by reading each field with JsonPath, and unresolved fields were set to null.
+        Map<String, Object> expected = new HashMap<String, Object>();
+        for (String field : fields) {
+            try {
+                expected.put(field, JsonPath.parse(hit).read(field));
+            } catch (InvalidPathException e) {
+                expected.put(field, null);
+            }
+        }
+        assertEquals(expected, ElasticsearchFieldReader.readAll(ElasticsearchFieldReader.forFields(fields), hit));
+    }
+
+    @Test(expected = InvalidPathException.class)
+    public void test_invalidPath() throws Exception {
+        ElasticsearchFieldReader.forField("$.[invalid").read(hit);
+    }
+
+    @Test
+    public void test_cache() throws Exception {
+        String field = "_source.cached" + System.nanoTime();
+        long misses = ElasticsearchFieldReader.getCacheMisses();
+        long hits = ElasticsearchFieldReader.getCacheHits();
+
+        ElasticsearchFieldReader reader = ElasticsearchFieldReader.forField(field);
+        assertEquals(misses + 1, ElasticsearchFieldReader.getCacheMisses());
+        assertSame(reader, ElasticsearchFieldReader.forField(field));
+        assertEquals(hits + 1, ElasticsearchFieldReader.getCacheHits());
+
+        // Filling the cache evicts the least recently used readers.
+        for (int i = 0; i < ElasticsearchFieldReader.CACHE_SIZE + 10; i++) {
+            ElasticsearchFieldReader.forField("_source.evicting" + i);
+        }
+        assertEquals(ElasticsearchFieldReader.CACHE_SIZE, ElasticsearchFieldReader.getCacheSize());
+        misses = ElasticsearchFieldReader.getCacheMisses();
+        assertNotSame(reader, ElasticsearchFieldReader.forField(field));
+        assertEquals(misses + 1, ElasticsearchFieldReader.getCacheMisses());
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ElasticsearchHistogramTest {
+
+    @Test
+    public void test_bucketBounds() throws Exception {
+        // Every value falls in a bucket whose upper bound is within 12.5% of it.
+        for (long value = 0; value < 100000; value += 7) {
+            long upperBound = ElasticsearchHistogram.bucketUpperBound(ElasticsearchHistogram.bucketIndex(value));
+            assertTrue(upperBound >= value);
+            assertTrue(upperBound <= value + Math.max(value / 8, 0));
+        }
+        long large = 3L * 1000 * 1000 * 1000 * 60;
+        assertTrue(ElasticsearchHistogram.bucketUpperBound(ElasticsearchHistogram.bucketIndex(large)) >= large);
+    }
+
+    @Test
+    public void test_percentiles() throws Exception {
+        ElasticsearchHistogram histogram = new ElasticsearchHistogram(60000);
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        ElasticsearchHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500.5, snapshot.getMean(), 0.0001);
+        assertEquals(1000, snapshot.getMax());
+        assertEquals(500, snapshot.getPercentile(0.5), 500 / 8);
+        assertEquals(990, snapshot.getPercentile(0.99), 990 / 8);
+        // Percentiles never exceed the largest value.
+        assertEquals(1000, snapshot.getPercentile(1.0));
+    }
+
+    @Test
+    public void test_oldWindowsExpire() throws Exception {
+        ElasticsearchHistogram histogram = new ElasticsearchHistogram(1);
+        histogram.record(1000000);
+        Thread.sleep(5);
+        histogram.record(10);
+
+        ElasticsearchHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(10, snapshot.getMax());
+        assertEquals(2, histogram.getTotalCount());
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.jayway.jsonpath.JsonPath;
+import com.kineticdata.bridgehub.adapter.Record;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.json.simple.JSONValue;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ElasticsearchLazyRecordTest {
+
+    private final Object hit = JsonPath.parse("{\"_id\":\"1\",\"_source\":{\"message\":\"hello\","
+        + "\"app\":{\"name\":\"bridgehub\",\"tags\":[\"a\",\"b\"]},\"count\":3,\"missing\":null}}").json();
+
+    private final List<ElasticsearchFieldReader> fieldReaders = ElasticsearchFieldReader.forFields(Arrays.asList(
+        "_id",
+        "_source.message",
+        "_source.app",
+        "$._source.app.tags[0]",
+        "_source.count",
+        "_source.missing",
+        "_source.unknown",
+        "$.[invalid"
+    ));
+
+    @Test
+    public void test_matchesEagerRecord() throws Exception {
+        Map<String, Object> expected = ElasticsearchFieldReader.readAll(fieldReaders, hit);
+        ElasticsearchLazyRecord record = new ElasticsearchLazyRecord(
+            new ElasticsearchLazyRecord.FieldIndex(fieldReaders), hit);
+
+        assertEquals(expected, record.getRecord());
+        assertEquals(expected.hashCode(), record.getRecord().hashCode());
+        assertEquals(JSONValue.parse(new Record(expected).toJsonString()), JSONValue.parse(record.toJsonString()));
+        assertEquals(expected.keySet(), record.getRecord().keySet());
+    }
+
+    @Test
+    public void test_readsValuesWhenAccessed() throws Exception {
+        ElasticsearchLazyRecord record = new ElasticsearchLazyRecord(
+            new ElasticsearchLazyRecord.FieldIndex(fieldReaders), hit);
+        assertEquals(0, record.getResolvedCount());
+
+        assertEquals("hello", record.getValue("_source.message"));
+        assertEquals("hello", record.getValue("_source.message"));
+        assertEquals("a", record.getValue("$._source.app.tags[0]"));
+        assertEquals(2, record.getResolvedCount());
+
+        // Fields that do not resolve, and fields that were not requested, are null.
+        assertNull(record.getValue("_source.unknown"));
+        assertNull(record.getValue("$.[invalid"));
+        assertNull(record.getValue("_source.other"));
+        assertEquals(4, record.getResolvedCount());
+        assertTrue(record.getRecord().containsKey("_source.unknown"));
+        assertFalse(record.getRecord().containsKey("_source.other"));
+    }
+
+    @Test
+    public void test_sharedFieldIndex() throws Exception {
+        List<ElasticsearchFieldReader> readers = ElasticsearchFieldReader.forFields(
+            Arrays.asList("_id", "_source.count", "_id"));
+        ElasticsearchLazyRecord.FieldIndex fieldIndex = new ElasticsearchLazyRecord.FieldIndex(readers);
+        assertEquals(2, fieldIndex.size());
+
+        Object other = JsonPath.parse("{\"_id\":\"2\",\"_source\":{\"count\":7}}").json();
+        Record first = new ElasticsearchLazyRecord(fieldIndex, hit);
+        Record second = new ElasticsearchLazyRecord(fieldIndex, other);
+        assertEquals(ElasticsearchFieldReader.readAll(readers, hit), first.getRecord());
+        assertEquals(Integer.valueOf(7), second.getValue("_source.count"));
+        assertEquals(Arrays.asList("_id", "_source.count"), second.getFieldNames());
+
+        second.getRecord().put("_source.count", 8);
+        assertEquals(Integer.valueOf(8), second.getValue("_source.count"));
+        assertEquals(Integer.valueOf(3), first.getValue("_source.count"));
+    }
+
+}
@@ -0,0 +1,218 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives an operation from several threads for a time and reports the throughput and latency
+ * percentiles.
+ *
+ * Run on its own it load tests search and count requests of an adapter against a
+ * {@link MockElasticsearchServer} at increasing concurrency:
+ *
+ *   java ... ElasticsearchLoadDriver [seconds per level] [latency ms] [hits per page] [fields]
+ */
+public class ElasticsearchLoadDriver {
+
+    /** The concurrency levels run by main, unless listed by the loadDriver.concurrency property. */
+    public static final int[] CONCURRENCY_LEVELS = {1, 2, 4, 8, 16, 32, 64};
+
+    /**
+     * The operation being load tested, which is called repeatedly by every thread.
+     */
+    public interface Operation {
+        void execute() throws Exception;
+    }
+
+    /**
+     * Runs the operation from the given number of threads for the duration, in milliseconds, and
+     * returns the results. Latencies are recorded in microseconds, failed operations are counted
+     * as errors and not recorded.
+     */
+    public static Result run(final Operation operation, int threads, long duration) throws InterruptedException {
+        final ElasticsearchHistogram latencies = new ElasticsearchHistogram(Math.max(duration, 1) * 2);
+        final AtomicLong errors = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final long[] deadline = new long[1];
+
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        while (System.nanoTime() < deadline[0]) {
+                            long begin = System.nanoTime();
+                            try {
+                                operation.execute();
+                                latencies.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - begin));
+                            } catch (Exception e) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "elasticsearch-load-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        long begin = System.nanoTime();
+        deadline[0] = begin + TimeUnit.MILLISECONDS.toNanos(duration);
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+
+        return new Result(threads, latencies.snapshot(), errors.get(), elapsed);
+    }
+
+    /**
+     * The outcome of a load run.
+     */
+    public static class Result {
+        private final int threads;
+        private final ElasticsearchHistogram.Snapshot latencies;
+        private final long errors;
+        private final long elapsed;
+
+        Result(int threads, ElasticsearchHistogram.Snapshot latencies, long errors, long elapsed) {
+            this.threads = threads;
+            this.latencies = latencies;
+            this.errors = errors;
+            this.elapsed = elapsed;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public long getOperations() {
+            return latencies.getCount();
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        /** Successful operations per second. */
+        public double getThroughput() {
+            return elapsed == 0 ? 0 : latencies.getCount() * 1e9 / elapsed;
+        }
+
+        /** The latency at the quantile in milliseconds. */
+        public double getLatency(double quantile) {
+            return latencies.getPercentile(quantile) / 1000.0;
+        }
+
+        public double getMaxLatency() {
+            return latencies.getMax() / 1000.0;
+        }
+
+        public static String header() {
+            return String.format("%8s %10s %8s %12s %9s %9s %9s %9s",
+                "threads", "ops", "errors", "ops/s", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%8d %10d %8d %12.1f %9.2f %9.2f %9.2f %9.2f",
+                threads, getOperations(), errors, getThroughput(),
+                getLatency(0.5), getLatency(0.9), getLatency(0.99), getMaxLatency());
+        }
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * MAIN
+     *--------------------------------------------------------------------------------------------*/
+
+    public static void main(String[] args) throws Exception {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 5;
+        long latency = args.length > 1 ? Long.parseLong(args[1]) : 5;
+        int pageSize = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int fieldCount = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int[] levels = CONCURRENCY_LEVELS;
+        if (System.getProperty("loadDriver.concurrency") != null) {
+            String[] values = System.getProperty("loadDriver.concurrency").split(",");
+            levels = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                levels[i] = Integer.parseInt(values[i].trim());
+            }
+        }
+
+        MockElasticsearchServer server = new MockElasticsearchServer()
+            .setTotalHits(pageSize * 10)
+            .setFieldCount(fieldCount)
+            .setLatency(latency, latency / 2);
+        try {
+            // Enough connections that the pool is not what limits the highest concurrency.
+            int maxConnections = 1;
+            for (int level : levels) {
+                maxConnections = Math.max(maxConnections, level);
+            }
+            final ElasticsearchAdapter adapter = new ElasticsearchAdapter();
+            Map<String,String> properties = new LinkedHashMap<String,String>();
+            properties.put(ElasticsearchAdapter.Properties.API_URL, server.getUrl());
+            properties.put(ElasticsearchAdapter.Properties.MAX_CONNECTIONS_PER_ROUTE, String.valueOf(maxConnections));
+            properties.put(ElasticsearchAdapter.Properties.MAX_CONNECTIONS_TOTAL, String.valueOf(maxConnections));
+            adapter.setProperties(properties);
+            adapter.initialize();
+
+            List<String> fields = new ArrayList<String>();
+            for (int f = 0; f < fieldCount; f++) {
+                fields.add("_source.field" + f);
+            }
+            final BridgeRequest request = new BridgeRequest();
+            request.setStructure("examples");
+            request.setQuery("*");
+            request.setFields(fields);
+            Map<String,String> metadata = new LinkedHashMap<String,String>();
+            metadata.put("pageSize", String.valueOf(pageSize));
+            metadata.put("offset", "0");
+            request.setMetadata(metadata);
+            request.setParameters(new LinkedHashMap<String,String>());
+
+            Map<String,Operation> operations = new LinkedHashMap<String,Operation>();
+            operations.put("search", new Operation() {
+                @Override
+                public void execute() throws Exception {
+                    adapter.search(request);
+                }
+            });
+            operations.put("count", new Operation() {
+                @Override
+                public void execute() throws Exception {
+                    adapter.count(request);
+                }
+            });
+
+            System.out.println(String.format("Mock latency %d ms (+%d ms jitter), %d hits per page, %d fields, %d s per level %s",
+                latency, latency / 2, pageSize, fieldCount, seconds, Arrays.toString(levels)));
+            for (Map.Entry<String,Operation> operation : operations.entrySet()) {
+                System.out.println();
+                System.out.println(operation.getKey());
+                System.out.println(Result.header());
+                // A short warm up so the first level is not measuring class loading and the JIT.
+                run(operation.getValue(), levels[0], 1000);
+                for (int level : levels) {
+                    System.out.println(run(operation.getValue(), level, TimeUnit.SECONDS.toMillis(seconds)));
+                }
+            }
+            adapter.destroy();
+        } finally {
+            server.stop();
+        }
+    }
+
+}
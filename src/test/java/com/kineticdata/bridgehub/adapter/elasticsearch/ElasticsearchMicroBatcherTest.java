@@ -0,0 +1,93 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import com.kineticdata.bridgehub.adapter.Count;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ElasticsearchMicroBatcherTest {
+
+    /** Answers every count request with the number of its structure. */
+    private final ElasticsearchMicroBatcher.Flusher countFlusher = new ElasticsearchMicroBatcher.Flusher() {
+        @Override
+        public List<ElasticsearchBatchResult> flush(List<ElasticsearchBatchRequest> requests) {
+            List<ElasticsearchBatchResult> results = new ArrayList<ElasticsearchBatchResult>();
+            for (ElasticsearchBatchRequest request : requests) {
+                results.add(ElasticsearchBatchResult.of(new Count(Long.valueOf(request.getRequest().getStructure()))));
+            }
+            return results;
+        }
+    };
+
+    @Test
+    public void test_concurrentRequestsAreMerged() throws Exception {
+        final ElasticsearchMicroBatcher batcher = new ElasticsearchMicroBatcher(countFlusher, 10000, 10);
+        int callers = 10;
+
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<ElasticsearchBatchResult>> results = new ArrayList<Future<ElasticsearchBatchResult>>();
+            for (int i = 0; i < callers; i++) {
+                final BridgeRequest request = new BridgeRequest();
+                request.setStructure(String.valueOf(i));
+                results.add(executor.submit(new Callable<ElasticsearchBatchResult>() {
+                    @Override
+                    public ElasticsearchBatchResult call() throws BridgeError {
+                        return batcher.submit(ElasticsearchBatchRequest.count(request));
+                    }
+                }));
+            }
+
+            // The batch is flushed when it is full, well before the window has passed.
+            for (int i = 0; i < callers; i++) {
+                assertEquals(i, results.get(i).get(5, TimeUnit.SECONDS).getCount().getValue().intValue());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1, batcher.getFlushes());
+        assertEquals(callers, batcher.getFlushedRequests());
+        assertEquals(callers, batcher.getLargestFlush());
+        assertEquals(0, batcher.getQueueDepth());
+    }
+
+    @Test
+    public void test_windowFlushesPartialBatch() throws Exception {
+        ElasticsearchMicroBatcher batcher = new ElasticsearchMicroBatcher(countFlusher, 5, 10);
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("7");
+
+        assertEquals(7, batcher.submit(ElasticsearchBatchRequest.count(request)).getCount().getValue().intValue());
+        assertEquals(7, batcher.submit(ElasticsearchBatchRequest.count(request)).getCount().getValue().intValue());
+        assertEquals(2, batcher.getFlushes());
+        assertEquals(1, batcher.getLargestFlush());
+    }
+
+    @Test
+    public void test_failedBatchFailsEveryRequest() throws Exception {
+        final AtomicInteger flushes = new AtomicInteger();
+        ElasticsearchMicroBatcher batcher = new ElasticsearchMicroBatcher(new ElasticsearchMicroBatcher.Flusher() {
+            @Override
+            public List<ElasticsearchBatchResult> flush(List<ElasticsearchBatchRequest> requests) throws BridgeError {
+                flushes.incrementAndGet();
+                throw new BridgeError("The Elasticsearch server returned a HTTP status code of 503");
+            }
+        }, 1, 1);
+
+        ElasticsearchBatchResult result = batcher.submit(ElasticsearchBatchRequest.count(new BridgeRequest()));
+        assertFalse(result.isSuccessful());
+        assertNotNull(result.getError());
+        assertEquals(1, flushes.get());
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ElasticsearchNodePoolTest {
+
+    private final List<String> urls = Arrays.asList("http://a:9200", "http://b:9200", "http://c:9200");
+
+    @Test
+    public void test_roundRobin() throws Exception {
+        ElasticsearchNodePool pool = new ElasticsearchNodePool(urls, ElasticsearchNodePool.STRATEGY_ROUND_ROBIN, 60000);
+
+        for (int i = 0; i < 6; i++) {
+            ElasticsearchNodePool.Node node = pool.acquire();
+            assertEquals(urls.get(i % 3), node.getUrl());
+            pool.release(node, 1000000, false);
+        }
+        assertEquals(2, pool.getNodes().get(0).getRequests());
+        assertEquals(1.0, pool.getNodes().get(0).getAverageLatency(), 0.0001);
+    }
+
+    @Test
+    public void test_leastInFlight() throws Exception {
+        ElasticsearchNodePool pool = new ElasticsearchNodePool(urls, ElasticsearchNodePool.STRATEGY_LEAST_IN_FLIGHT, 60000);
+
+        ElasticsearchNodePool.Node first = pool.acquire();
+        ElasticsearchNodePool.Node second = pool.acquire();
+        pool.release(first, 0, false);
+        // a is idle again and c has not been used, c is next in turn.
+        assertEquals("http://c:9200", pool.acquire().getUrl());
+        assertEquals("http://a:9200", pool.acquire().getUrl());
+        assertEquals(1, second.getInFlight());
+    }
+
+    @Test
+    public void test_failedNodeBacksOff() throws Exception {
+        ElasticsearchNodePool pool = new ElasticsearchNodePool(urls, ElasticsearchNodePool.STRATEGY_ROUND_ROBIN, 60000);
+
+        ElasticsearchNodePool.Node node = pool.acquire();
+        pool.release(node, 0, true);
+        assertFalse(node.isHealthy());
+        assertEquals(1, node.getFailures());
+
+        for (int i = 0; i < 4; i++) {
+            assertNotEquals("http://a:9200", pool.acquire().getUrl());
+        }
+
+        // When every node is out of rotation, the node whose backoff ends first is used.
+        pool.markFailed(pool.getNodes().get(1));
+        pool.markFailed(pool.getNodes().get(2));
+        assertEquals("http://a:9200", pool.acquire().getUrl());
+    }
+
+    @Test
+    public void test_failedNodeIsResurrected() throws Exception {
+        ElasticsearchNodePool pool = new ElasticsearchNodePool(urls, ElasticsearchNodePool.STRATEGY_ROUND_ROBIN, 1);
+
+        ElasticsearchNodePool.Node node = pool.acquire();
+        pool.release(node, 0, true);
+        Thread.sleep(5);
+        assertTrue(node.isHealthy());
+
+        pool.release(pool.acquire(), 0, false);
+        pool.release(pool.acquire(), 0, false);
+        assertEquals("http://a:9200", pool.acquire().getUrl());
+    }
+
+    @Test
+    public void test_parseUrls() throws Exception {
+        assertEquals(
+            Arrays.asList("http://a:9200", "https://b:9200"),
+            ElasticsearchNodePool.parseUrls(" http://a:9200/ ,https://b:9200,")
+        );
+    }
+
+    @Test
+    public void test_parseSniffedNodes() throws Exception {
+        String response = "{\"nodes\":{"
+            + "\"n1\":{\"roles\":[\"data\",\"ingest\"],\"http\":{\"publish_address\":\"10.0.0.1:9200\"}},"
+            + "\"n2\":{\"roles\":[\"master\"],\"http\":{\"publish_address\":\"10.0.0.2:9200\"}},"
+            + "\"n3\":{\"roles\":[\"data\"],\"http\":{\"publish_address\":\"es3.local/10.0.0.3:9201\"}},"
+            + "\"n4\":{\"roles\":[\"data\"]}"
+            + "}}";
+
+        List<String> nodeUrls = ElasticsearchNodePool.parseSniffedNodes(response, "https");
+        assertEquals(2, nodeUrls.size());
+        assertTrue(nodeUrls.contains("https://10.0.0.1:9200"));
+        assertTrue(nodeUrls.contains("https://es3.local:9201"));
+    }
+
+    @Test
+    public void test_setUrlsKeepsStatistics() throws Exception {
+        ElasticsearchNodePool pool = new ElasticsearchNodePool(urls, ElasticsearchNodePool.STRATEGY_ROUND_ROBIN, 60000);
+        ElasticsearchNodePool.Node node = pool.acquire();
+        pool.release(node, 0, false);
+
+        pool.setUrls(Arrays.asList("http://d:9200", "http://a:9200"));
+
+        assertEquals(2, pool.size());
+        assertSame(node, pool.getNodes().get(1));
+        assertEquals(1, pool.getNodes().get(1).getRequests());
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ElasticsearchParallelExtractorTest {
+
+    private ElasticsearchParallelExtractor extractor;
+
+    @After
+    public void tearDown() {
+        if (extractor != null) {
+            extractor.shutdown();
+        }
+    }
+
+    private static List<Object> buildHits(int size) {
+        List<Object> hits = new ArrayList<Object>();
+        for (int i = 0; i < size; i++) {
+            hits.add(i);
+        }
+        return hits;
+    }
+
+    /**
+     * Doubles each hit, noting the threads the extraction ran on.
+     */
+    private static class Doubling implements ElasticsearchParallelExtractor.Extraction<Integer> {
+        final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+
+        @Override
+        public Integer extract(Object hit) {
+            threads.add(Thread.currentThread().getName());
+            return (Integer)hit * 2;
+        }
+    }
+
+    @Test
+    public void test_keepsOrder() throws Exception {
+        extractor = new ElasticsearchParallelExtractor(100, 4);
+        Doubling extraction = new Doubling();
+
+        List<Integer> results = extractor.extract(buildHits(10000), extraction);
+        assertEquals(10000, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(Integer.valueOf(i * 2), results.get(i));
+        }
+        assertFalse(extraction.threads.contains(Thread.currentThread().getName()));
+    }
+
+    @Test
+    public void test_smallPagesOnCallingThread() throws Exception {
+        extractor = new ElasticsearchParallelExtractor(100, 4);
+        Doubling extraction = new Doubling();
+
+        List<Integer> results = extractor.extract(buildHits(99), extraction);
+        assertEquals(99, results.size());
+        assertEquals(Integer.valueOf(196), results.get(98));
+        assertEquals(Collections.singleton(Thread.currentThread().getName()), extraction.threads);
+
+        assertTrue(extractor.extract(buildHits(0), extraction).isEmpty());
+    }
+
+    @Test
+    public void test_parallelism() throws Exception {
+        extractor = new ElasticsearchParallelExtractor(0, 0);
+        assertEquals(1, extractor.getThreshold());
+        assertEquals(Runtime.getRuntime().availableProcessors(), extractor.getParallelism());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_extractionErrors() throws Exception {
+        extractor = new ElasticsearchParallelExtractor(10, 2);
+        extractor.extract(buildHits(1000), new ElasticsearchParallelExtractor.Extraction<Object>() {
+            @Override
+            public Object extract(Object hit) {
+                if ((Integer)hit == 777) {
+                    throw new IllegalStateException("Unable to extract the hit.");
+                }
+                return hit;
+            }
+        });
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ElasticsearchQualificationParserTest {
+
+    /**
+     * Fragments random parameter values are built from: reserved characters, pipes and ampersands,
+     * the AND, OR and NOT operators and the word characters around them, including non ASCII
+     * letters, non spacing marks and supplementary characters that affect word boundaries.
+     */
+    private static final String[] FRAGMENTS = {
+        "AND", "OR", "NOT", "A", "N", "O", "D", "R", "T", "a", "z", "0", "9", "_",
+        "\u00e9", "\u00df", "\u0416", "\u0661", "\u0301", "\u0300", "\ud83d\ude00", "\ud835\udc00",
+        " ", "\t", "\n", "\u000B", "\f", "\r", "\u00a0",
+        "|", "||", "&", "&&", "*", "+", "-", "=", "~", "\"", "?", "^", "$", "{", "}", "(", ")",
+        ":", "!", "/", "[", "]", "\\", "<", ">", ".", ",", "'", "#", "%"
+    };
+
+    @Test
+    public void test_encodeParameterMatchesRegexEscaping() throws Exception {
+        ElasticsearchQualificationParser parser = new ElasticsearchQualificationParser();
+        Random random = new Random(20201021L);
+
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder value = new StringBuilder();
+            int fragments = random.nextInt(12);
+            for (int j = 0; j < fragments; j++) {
+                value.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+            assertEquals(
+                "Encoding: " + value,
+                legacyEncodeParameter(value.toString()),
+                parser.encodeParameter("parameter", value.toString())
+            );
+        }
+    }
+
+    @Test
+    public void test_encodeParameterExamples() throws Exception {
+        ElasticsearchQualificationParser parser = new ElasticsearchQualificationParser();
+
+        assertNull(parser.encodeParameter("parameter", null));
+        assertNull(parser.encodeParameter("parameter", ""));
+        assertEquals("error", parser.encodeParameter("parameter", "error"));
+        assertEquals("\\\\AND\\ \\-\\ \\\\OR\\ \\*\\+", parser.encodeParameter("parameter", "AND - OR *+"));
+        assertEquals("a\\|||\\ b\\&&&", parser.encodeParameter("parameter", "a||| b&&&"));
+        assertEquals("ANDROID_NOT\\ NOTE", parser.encodeParameter("parameter", "ANDROID_NOT NOTE"));
+    }
+
+    @Test
+    public void test_kineticDslToQueryDsl() throws Exception {
+        String originalQuery = "{\"type\": \"Kinetic DSL\", \"queryFormat\": \"Query DSL\", "
+            + "\"query\": \"{\\\"message\\\":{\\\"value\\\":\\\"<%= parameter[\"message\"] %>\\\",\\\"matcher\\\":\\\"like\\\"}}\"}";
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("message", "err*or");
+
+        assertEquals(
+            "{\"query\":{\"bool\":{\"filter\":[{\"wildcard\":{\"message\":\"*err\\\\*or*\"}}]}}}",
+            new ElasticsearchQualificationParser().parse(originalQuery, parameters)
+        );
+    }
+
+    @Test
+    public void test_kineticDslToQueryDslPhraseAndPrefix() throws Exception {
+        String originalQuery = "{\"type\": \"Kinetic DSL\", \"queryFormat\": \"Query DSL\", \"queryPrefix\": \"app:bridgehub\", "
+            + "\"query\": \"{\\\"message\\\":{\\\"value\\\":\\\"<%= parameter[\"message\"] %>\\\",\\\"isPhrase\\\":true}}\"}";
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("message", "an error");
+
+        assertEquals(
+            "{\"query\":{\"bool\":{\"must\":[{\"match_phrase\":{\"message\":\"an error\"}}],"
+                + "\"filter\":[{\"query_string\":{\"query\":\"app:bridgehub\"}}]}}}",
+            new ElasticsearchQualificationParser().parse(originalQuery, parameters)
+        );
+    }
+
+    /**
+     * The original chain of regular expression replacements, kept to check the single pass
+     * encoding against.
+     */
+    private static String legacyEncodeParameter(String value) {
+        String result = null;
+        String regexReservedCharactersPattern = "(\\*|\\+|\\-|\\=|\\~|\\\"|\\?|\\^|\\$|\\{|\\}|\\(|\\)|\\:|\\!|\\/|\\[|\\]|\\\\|\\s)";
+        if (value != null && value.length() > 0) {
+            result = value.replaceAll(regexReservedCharactersPattern, Matcher.quoteReplacement("\\") + "$1")
+                .replaceAll("\\|\\|", "\\\\||")
+                .replaceAll("\\&\\&", "\\\\&&")
+                .replaceAll("\\b+AND\\b+", Matcher.quoteReplacement("\\\\AND"))
+                .replaceAll("\\b+OR\\b+", Matcher.quoteReplacement("\\\\OR"))
+                .replaceAll("\\b+NOT\\b+", Matcher.quoteReplacement("\\\\NOT"));
+        }
+        return result;
+    }
+
+}
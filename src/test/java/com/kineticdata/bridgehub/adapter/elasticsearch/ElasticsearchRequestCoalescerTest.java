@@ -0,0 +1,91 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ElasticsearchRequestCoalescerTest {
+
+    @Test
+    public void test_concurrentRequestsShareResponse() throws Exception {
+        final ElasticsearchRequestCoalescer coalescer = new ElasticsearchRequestCoalescer();
+        final AtomicInteger executions = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        int callers = 10;
+
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<String>> responses = new ArrayList<Future<String>>();
+            for (int i = 0; i < callers; i++) {
+                responses.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws BridgeError {
+                        return coalescer.execute("key", new Callable<String>() {
+                            @Override
+                            public String call() throws InterruptedException {
+                                executions.incrementAndGet();
+                                started.countDown();
+                                release.await();
+                                return "response";
+                            }
+                        });
+                    }
+                }));
+            }
+            // Hold the request open until every caller is waiting on it.
+            started.await(5, TimeUnit.SECONDS);
+            while (coalescer.getCoalesced() < callers - 1) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            for (Future<String> response : responses) {
+                assertEquals("response", response.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1, executions.get());
+        assertEquals(1, coalescer.getRequests());
+        assertEquals(callers - 1, coalescer.getCoalesced());
+        assertEquals(0, coalescer.getInFlight());
+    }
+
+    @Test
+    public void test_completedRequestsAreNotReused() throws Exception {
+        ElasticsearchRequestCoalescer coalescer = new ElasticsearchRequestCoalescer();
+        final AtomicInteger executions = new AtomicInteger();
+        Callable<String> request = new Callable<String>() {
+            @Override
+            public String call() {
+                return "response " + executions.incrementAndGet();
+            }
+        };
+
+        assertEquals("response 1", coalescer.execute("key", request));
+        assertEquals("response 2", coalescer.execute("key", request));
+        assertEquals(0, coalescer.getCoalesced());
+    }
+
+    @Test(expected = BridgeError.class)
+    public void test_errorsArePropagated() throws Exception {
+        new ElasticsearchRequestCoalescer().execute("key", new Callable<String>() {
+            @Override
+            public String call() throws BridgeError {
+                throw new BridgeError("The Elasticsearch server returned a HTTP status code of 503");
+            }
+        });
+    }
+
+}
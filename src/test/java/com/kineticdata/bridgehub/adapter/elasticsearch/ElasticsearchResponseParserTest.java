@@ -0,0 +1,104 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.InvalidPathException;
+import com.jayway.jsonpath.JsonPath;
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import com.kineticdata.bridgehub.adapter.Record;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ElasticsearchResponseParserTest {
+
+    private final String searchResponse = "{\"took\":3,\"timed_out\":false,"
+        + "\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},"
+        + "\"hits\":{\"total\":2,\"max_score\":1.0,\"hits\":["
+        + "{\"_index\":\"examples\",\"_id\":\"1\",\"_score\":1.0,\"_source\":{\"message\":\"this is an error message.\","
+        + "\"app\":{\"name\":\"bridgehub\",\"port\":8080,\"tags\":[\"a\",\"b\"]},\"ratio\":0.5}},"
+        + "{\"_index\":\"examples\",\"_id\":\"2\",\"_score\":1.0,\"_source\":{\"message\":\"another message\","
+        + "\"app\":{\"name\":\"kinetic\",\"port\":9200000000}}}"
+        + "]}}";
+
+    @Test
+    public void test_matchesDocumentParsing() throws Exception {
+        List<String> fields = Arrays.asList(
+            "_id",
+            "_source.message",
+            "_source.app.name",
+            "_source.app.port",
+            "_source.app.tags",
+            "_source.ratio"
+        );
+
+        ElasticsearchResponseParser parser = new ElasticsearchResponseParser(fields)
+            .parse(new StringReader(searchResponse));
+
+        List<Object> hits = JsonPath.parse(searchResponse).read(ElasticsearchAdapter.JSON_ROOT_DEFAULT);
+        assertEquals(hits.size(), parser.getRecords().size());
+        for (int i = 0; i < hits.size(); i++) {
+            DocumentContext hit = JsonPath.parse(hits.get(i));
+            Map<String, Object> expectedValues = new HashMap();
+            for (String field : fields) {
+                try {
+                    expectedValues.put(field, hit.read(field));
+                } catch (InvalidPathException e) {
+                    expectedValues.put(field, null);
+                }
+            }
+            assertEquals(expectedValues, parser.getRecords().get(i).getRecord());
+        }
+        assertEquals("2", parser.getTotal());
+    }
+
+    @Test
+    public void test_totalObject() throws Exception {
+        String response = "{\"hits\":{\"total\":{\"value\":10000,\"relation\":\"gte\"},\"hits\":[]}}";
+
+        ElasticsearchResponseParser parser = new ElasticsearchResponseParser(Arrays.asList("_id"))
+            .parse(new StringReader(response));
+
+        assertEquals("10000", parser.getTotal());
+        assertEquals(0, parser.getRecords().size());
+    }
+
+    @Test
+    public void test_matchesStandardRecordList() throws Exception {
+        // Elasticsearch 7 and later return the total as an object.
+        String response = searchResponse.replace("\"total\":2,", "\"total\":{\"value\":2,\"relation\":\"eq\"},");
+        BridgeRequest request = new BridgeRequest();
+        request.setFields(Arrays.asList("_id", "_source.app.name"));
+
+        RecordList expected = new ElasticsearchAdapter().buildRecordList(
+            JsonPath.parse(response), ElasticsearchAdapter.JSON_ROOT_DEFAULT, request);
+        ElasticsearchResponseParser parser = new ElasticsearchResponseParser(request.getFields())
+            .parse(new StringReader(response));
+
+        assertEquals("2", expected.getMetadata().get("count"));
+        assertEquals(expected.getMetadata().get("count"), parser.getTotal());
+        assertEquals(expected.getRecords().size(), parser.getRecords().size());
+        for (int i = 0; i < parser.getRecords().size(); i++) {
+            assertEquals(expected.getRecords().get(i).getRecord(), parser.getRecords().get(i).getRecord());
+        }
+    }
+
+    @Test
+    public void test_nestedHitsAreIgnored() throws Exception {
+        String response = "{\"aggregations\":{\"top\":{\"hits\":{\"total\":5,\"hits\":[{\"_id\":\"x\"}]}}},"
+            + "\"hits\":{\"total\":1,\"hits\":[{\"_id\":\"1\"}]}}";
+
+        ElasticsearchResponseParser parser = new ElasticsearchResponseParser(Arrays.asList("_id"))
+            .parse(new StringReader(response));
+
+        List<Record> records = parser.getRecords();
+        assertEquals(1, records.size());
+        assertEquals("1", records.get(0).getValue("_id"));
+        assertEquals("1", parser.getTotal());
+    }
+
+}
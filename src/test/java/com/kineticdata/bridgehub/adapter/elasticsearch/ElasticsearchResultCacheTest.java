@@ -0,0 +1,101 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ElasticsearchResultCacheTest {
+
+    @Test
+    public void test_leastRecentlyUsedEviction() throws Exception {
+        ElasticsearchResultCache cache = new ElasticsearchResultCache(60000, new HashMap<String, Long>(), 2, Long.MAX_VALUE);
+
+        cache.put("a", "1", 60000);
+        cache.put("b", "2", 60000);
+        // Reading a makes b the least recently used entry.
+        assertEquals("1", cache.get("a"));
+        cache.put("c", "3", 60000);
+
+        assertNull(cache.get("b"));
+        assertEquals("1", cache.get("a"));
+        assertEquals("3", cache.get("c"));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(2, cache.getEntryCount());
+    }
+
+    @Test
+    public void test_byteBudget() throws Exception {
+        // Each entry below is estimated at 2 * (1 + 4) bytes.
+        ElasticsearchResultCache cache = new ElasticsearchResultCache(60000, new HashMap<String, Long>(), 100, 25);
+
+        cache.put("a", "1111", 60000);
+        cache.put("b", "2222", 60000);
+        cache.put("c", "3333", 60000);
+
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(20, cache.getByteCount());
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void test_oversizedEntry() throws Exception {
+        ElasticsearchResultCache cache = new ElasticsearchResultCache(60000, new HashMap<String, Long>(), 100, 25);
+
+        cache.put("a", "1111", 60000);
+        cache.put("b", "2222", 60000);
+        // Estimated at 2 * (1 + 20) bytes, more than the whole budget.
+        cache.put("c", "33333333333333333333", 60000);
+
+        assertEquals(1, cache.getOversized());
+        assertEquals(0, cache.getEvictions());
+        assertEquals(2, cache.getEntryCount());
+        assertEquals("1111", cache.get("a"));
+        assertNull(cache.get("c"));
+    }
+
+    @Test
+    public void test_expiration() throws Exception {
+        ElasticsearchResultCache cache = new ElasticsearchResultCache(60000, new HashMap<String, Long>(), 100, Long.MAX_VALUE);
+
+        cache.put("a", "1", 1);
+        Thread.sleep(5);
+
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getExpirations());
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void test_structureTimeToLives() throws Exception {
+        Map<String, Long> timeToLives = ElasticsearchResultCache.parseTimeToLives("users = 30, logs=0");
+        ElasticsearchResultCache cache = new ElasticsearchResultCache(5000, timeToLives, 100, Long.MAX_VALUE);
+
+        assertEquals(30000L, cache.getTimeToLive("users"));
+        assertEquals(0L, cache.getTimeToLive("logs"));
+        assertEquals(5000L, cache.getTimeToLive("examples/doc"));
+    }
+
+    @Test(expected = BridgeError.class)
+    public void test_invalidStructureTimeToLives() throws Exception {
+        ElasticsearchResultCache.parseTimeToLives("users:30");
+    }
+
+    @Test
+    public void test_keysArePerCredential() throws Exception {
+        String url = "http://localhost:9200/examples/_search?q=message%3Aerror";
+
+        assertEquals(
+            ElasticsearchResultCache.buildKey("admin:secret", url, null),
+            ElasticsearchResultCache.buildKey("admin:secret", url, null)
+        );
+        assertFalse(
+            ElasticsearchResultCache.buildKey("admin:secret", url, null).equals(
+            ElasticsearchResultCache.buildKey("reader:secret", url, null))
+        );
+    }
+
+}
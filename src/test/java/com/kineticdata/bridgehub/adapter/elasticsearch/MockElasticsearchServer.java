@@ -0,0 +1,444 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.json.simple.JSONValue;
+
+/**
+ * A stand in for an Elasticsearch node, used to test and load test the adapter without a cluster.
+ *
+ * The server answers /_cat/health, _search, _count, _msearch, scroll and point in time requests.
+ * Search hits are generated from the configured hit total and field count, honoring the size, from
+ * and search_after of the request, so the size of the responses can be varied. The sort value of
+ * a hit is its position. A fixture can replace the
+ * response of a path. Every response can be delayed by a fixed latency plus a random jitter, and
+ * a fraction of the requests can be failed with an error status. Like Elasticsearch with
+ * http.compression enabled, responses are gzipped when the client accepts it and gzipped request
+ * bodies are decompressed. JSON responses are sent as SMILE or CBOR when the client asks for them.
+ * filter_path and _source are not applied, the full hits are always returned, except that like
+ * Elasticsearch a filtered response leaves out an empty hits array.
+ */
+public class MockElasticsearchServer {
+
+    static {
+        // Without TCP_NODELAY small responses wait on delayed acknowledgements, which adds tens of
+        // milliseconds to every request. The JDK server reads this once, when it is first used.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, String> fixtures = new ConcurrentHashMap<String, String>();
+    private final ConcurrentMap<String, Scroll> scrolls = new ConcurrentHashMap<String, Scroll>();
+    private final AtomicInteger nextScrollId = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong compressedRequests = new AtomicLong();
+    private final AtomicLong compressedResponses = new AtomicLong();
+    private final AtomicInteger openPointInTimes = new AtomicInteger();
+
+    private volatile int totalHits = 100;
+    private volatile int fieldCount = 5;
+    private volatile long latency = 0;
+    private volatile long latencyJitter = 0;
+    private volatile double errorRate = 0;
+    private volatile int errorStatus = 503;
+    private volatile boolean compression = true;
+
+    /**
+     * Starts a server on a free local port.
+     */
+    public MockElasticsearchServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.executor = Executors.newCachedThreadPool();
+        this.server.setExecutor(executor);
+        this.server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    MockElasticsearchServer.this.handle(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        this.server.start();
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * CONFIGURATION
+     *--------------------------------------------------------------------------------------------*/
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /** The number of documents every search and count matches. */
+    public MockElasticsearchServer setTotalHits(int totalHits) {
+        this.totalHits = totalHits;
+        return this;
+    }
+
+    /** The number of _source fields of every hit, named field0, field1 and so on. */
+    public MockElasticsearchServer setFieldCount(int fieldCount) {
+        this.fieldCount = fieldCount;
+        return this;
+    }
+
+    /**
+     * Delays every response by the latency plus a random time of up to the jitter, in
+     * milliseconds.
+     */
+    public MockElasticsearchServer setLatency(long latency, long latencyJitter) {
+        this.latency = latency;
+        this.latencyJitter = latencyJitter;
+        return this;
+    }
+
+    /**
+     * Fails the given fraction of requests, other than health checks, with the status.
+     */
+    public MockElasticsearchServer setErrorRate(double errorRate, int errorStatus) {
+        this.errorRate = errorRate;
+        this.errorStatus = errorStatus;
+        return this;
+    }
+
+    /** Whether responses are gzipped for clients that accept it. */
+    public MockElasticsearchServer setCompression(boolean compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    /**
+     * Answers requests to the path, for example /examples/_search, with the JSON body instead of
+     * a generated response.
+     */
+    public MockElasticsearchServer setFixture(String path, String body) {
+        fixtures.put(path, body);
+        return this;
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getInjectedErrorCount() {
+        return injectedErrors.get();
+    }
+
+    /** The number of requests that were sent with a gzipped body. */
+    public long getCompressedRequestCount() {
+        return compressedRequests.get();
+    }
+
+    /** The number of responses that were gzipped. */
+    public long getCompressedResponseCount() {
+        return compressedResponses.get();
+    }
+
+    /** The number of scroll contexts that have not been cleared. */
+    public int getOpenScrollCount() {
+        return scrolls.size();
+    }
+
+    /** The number of points in time that have been opened and not closed. */
+    public int getOpenPointInTimeCount() {
+        return openPointInTimes.get();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * REQUEST HANDLING
+     *--------------------------------------------------------------------------------------------*/
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+        InputStream requestBody = exchange.getRequestBody();
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            compressedRequests.incrementAndGet();
+            requestBody = new GZIPInputStream(requestBody);
+        }
+        String body = readBody(requestBody);
+
+        if (path.equals("/_cat/health")) {
+            respond(exchange, 200, "1609459200 00:00:00 mock green 1 1 0 0 0 0 0 0 - 100.0%", "text/plain");
+            return;
+        }
+        requests.incrementAndGet();
+        delay();
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            injectedErrors.incrementAndGet();
+            respond(exchange, errorStatus, "{\"error\":{\"type\":\"mock_exception\",\"reason\":\"Injected error\"},\"status\":"
+                + errorStatus + "}", "application/json");
+            return;
+        }
+        if (fixtures.containsKey(path)) {
+            respond(exchange, 200, fixtures.get(path), "application/json");
+            return;
+        }
+
+        if (path.equals("/_search/scroll")) {
+            if ("DELETE".equals(method)) {
+                respond(exchange, 200, clearScroll(body), "application/json");
+            } else {
+                String page = scroll(body);
+                if (page == null) {
+                    respond(exchange, 404, "{\"error\":{\"type\":\"search_context_missing_exception\",\"reason\":\"No search context found\"},\"status\":404}", "application/json");
+                } else {
+                    respond(exchange, 200, page, "application/json");
+                }
+            }
+        } else if (path.endsWith("/_pit")) {
+            if ("DELETE".equals(method)) {
+                openPointInTimes.decrementAndGet();
+            } else {
+                openPointInTimes.incrementAndGet();
+            }
+            respond(exchange, 200, "DELETE".equals(method)
+                ? "{\"succeeded\":true,\"num_freed\":1}"
+                : "{\"id\":\"mock-pit\"}", "application/json");
+        } else if (path.endsWith("/_msearch")) {
+            respond(exchange, 200, filter(parameters, multiSearch(body)), "application/json");
+        } else if (path.endsWith("/_count")) {
+            respond(exchange, 200, "{\"count\":" + totalHits + ",\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0}}", "application/json");
+        } else if (path.endsWith("/_search")) {
+            respond(exchange, 200, filter(parameters, search(parameters, parseBody(body))), "application/json");
+        } else {
+            respond(exchange, 404, "{\"error\":{\"type\":\"mock_exception\",\"reason\":\"Unknown path " + path + "\"},\"status\":404}", "application/json");
+        }
+    }
+
+    private String search(Map<String, String> parameters, Map<String, Object> body) {
+        int size = readInteger(parameters.get("size"), body.get("size"), 10);
+        int from = readInteger(parameters.get("from"), body.get("from"), 0);
+        if (body.get("search_after") instanceof List && ((List<Object>)body.get("search_after")).isEmpty() == false) {
+            from = readInteger(null, ((List<Object>)body.get("search_after")).get(0), -1) + 1;
+        }
+        if (parameters.containsKey("scroll") == false) {
+            return searchResponse(from, Math.min(totalHits, from + size), "");
+        }
+
+        // A sliced scroll reads its share of the documents, the slices together read them all.
+        int start = 0;
+        int end = totalHits;
+        if (body.get("slice") instanceof Map) {
+            Map<String, Object> slice = (Map<String, Object>)body.get("slice");
+            int id = readInteger(null, slice.get("id"), 0);
+            int max = readInteger(null, slice.get("max"), 1);
+            start = (int)((long)totalHits * id / max);
+            end = (int)((long)totalHits * (id + 1) / max);
+        }
+        String scrollId = "mock-scroll-" + nextScrollId.incrementAndGet();
+        Scroll scroll = new Scroll(start, end, size);
+        scrolls.put(scrollId, scroll);
+        return scroll.nextPage(scrollId);
+    }
+
+    /**
+     * Elasticsearch drops empty arrays from responses filtered with filter_path, so a search that
+     * matched nothing has no hits.hits.
+     */
+    private static String filter(Map<String, String> parameters, String response) {
+        return parameters.containsKey("filter_path") ? response.replace(",\"hits\":[]", "") : response;
+    }
+
+    private String scroll(String body) {
+        String scrollId = (String)parseBody(body).get("scroll_id");
+        Scroll scroll = (scrollId == null) ? null : scrolls.get(scrollId);
+        return (scroll == null) ? null : scroll.nextPage(scrollId);
+    }
+
+    private String clearScroll(String body) {
+        Object scrollIds = parseBody(body).get("scroll_id");
+        int freed = 0;
+        for (Object scrollId : (scrollIds instanceof List) ? (List<Object>)scrollIds : Collections.singletonList(scrollIds)) {
+            if (scrollId != null && scrolls.remove(scrollId) != null) {
+                freed++;
+            }
+        }
+        return "{\"succeeded\":true,\"num_freed\":" + freed + "}";
+    }
+
+    private String multiSearch(String body) {
+        StringBuilder response = new StringBuilder("{\"took\":1,\"responses\":[");
+        String[] lines = body.split("\n");
+        for (int i = 0; i + 1 < lines.length; i += 2) {
+            if (i > 0) {
+                response.append(",");
+            }
+            Map<String, Object> itemBody = parseBody(lines[i + 1]);
+            String item = searchResponse(0, Math.min(totalHits, readInteger(null, itemBody.get("size"), 10)), "");
+            // Each item has a status, inserted after the opening brace.
+            response.append("{\"status\":200,").append(item.substring(1));
+        }
+        return response.append("]}").toString();
+    }
+
+    /**
+     * Generates a search response with the hits from the start up to, but not including, the end.
+     */
+    private String searchResponse(int from, int end, String prefix) {
+        StringBuilder response = new StringBuilder(256 + Math.max(end - from, 0) * (64 + fieldCount * 24));
+        response.append("{").append(prefix)
+            .append("\"took\":1,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},")
+            .append("\"hits\":{\"total\":{\"value\":").append(totalHits).append(",\"relation\":\"eq\"},\"max_score\":1.0,\"hits\":[");
+        for (int i = from; i < end; i++) {
+            if (i > from) {
+                response.append(",");
+            }
+            response.append("{\"_index\":\"mock\",\"_type\":\"_doc\",\"_id\":\"doc-").append(i)
+                .append("\",\"_score\":1.0,\"_source\":{");
+            for (int f = 0; f < fieldCount; f++) {
+                if (f > 0) {
+                    response.append(",");
+                }
+                response.append("\"field").append(f).append("\":");
+                if (f % 2 == 0) {
+                    response.append("\"value ").append(i).append("-").append(f).append("\"");
+                } else {
+                    response.append(i * 31 + f);
+                }
+            }
+            response.append("},\"sort\":[").append(i).append("]}");
+        }
+        return response.append("]}}").toString();
+    }
+
+    private void delay() {
+        long delay = latency + (latencyJitter > 0 ? ThreadLocalRandom.current().nextLong(latencyJitter + 1) : 0);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * The position of a scroll, which pages through its documents with the size of its first
+     * page.
+     */
+    private class Scroll {
+        private final int end;
+        private final int size;
+        private int position;
+
+        Scroll(int start, int end, int size) {
+            this.position = start;
+            this.end = end;
+            this.size = size;
+        }
+
+        synchronized String nextPage(String scrollId) {
+            int from = position;
+            position = Math.min(end, position + size);
+            return searchResponse(from, position, "\"_scroll_id\":\"" + scrollId + "\",");
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, String body, String contentType) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        ElasticsearchBinaryFormat format = ElasticsearchBinaryFormat.forContentType(exchange.getRequestHeaders().getFirst("Accept"));
+        if (format != null && contentType.equals("application/json")) {
+            bytes = transcode(bytes, format);
+            exchange.getResponseHeaders().set("Content-Type", format.getContentType());
+        } else {
+            exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=UTF-8");
+        }
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (compression && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+            gzip.write(bytes);
+            gzip.close();
+            bytes = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            compressedResponses.incrementAndGet();
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream output = exchange.getResponseBody();
+        output.write(bytes);
+        output.close();
+    }
+
+    private static byte[] transcode(byte[] json, ElasticsearchBinaryFormat format) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonParser parser = new JsonFactory().createParser(json);
+        JsonGenerator generator = format.getFactory().createGenerator(output);
+        parser.nextToken();
+        generator.copyCurrentStructure(parser);
+        generator.close();
+        parser.close();
+        return output.toByteArray();
+    }
+
+    private static String readBody(InputStream input) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+        }
+        return body.toString("UTF-8");
+    }
+
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> parameters = new LinkedHashMap<String, String>();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                String[] parts = pair.split("=", 2);
+                parameters.put(URLDecoder.decode(parts[0], "UTF-8"), parts.length > 1 ? URLDecoder.decode(parts[1], "UTF-8") : "");
+            }
+        }
+        return parameters;
+    }
+
+    private static Map<String, Object> parseBody(String body) {
+        Object parsed = (body == null || body.trim().isEmpty()) ? null : JSONValue.parse(body);
+        return (parsed instanceof Map) ? (Map<String, Object>)parsed : new LinkedHashMap<String, Object>();
+    }
+
+    private static int readInteger(String parameter, Object bodyValue, int defaultValue) {
+        if (parameter != null) {
+            return Integer.parseInt(parameter);
+        }
+        if (bodyValue instanceof Number) {
+            return ((Number)bodyValue).intValue();
+        }
+        return defaultValue;
+    }
+
+}
@@ -0,0 +1,616 @@
+package com.kineticdata.bridgehub.adapter.elasticsearch;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import com.kineticdata.bridgehub.adapter.Count;
+import com.kineticdata.bridgehub.adapter.Record;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Runs the adapter against a MockElasticsearchServer, so unlike ElasticsearchAdapterTest it does
+ * not need an Elasticsearch cluster.
+ */
+public class MockElasticsearchServerTest {
+
+    private MockElasticsearchServer server;
+    private ElasticsearchAdapter adapter;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockElasticsearchServer().setTotalHits(25).setFieldCount(3);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (adapter != null) {
+            adapter.destroy();
+        }
+        server.stop();
+    }
+
+    private ElasticsearchAdapter initializeAdapter(Map<String,String> extraProperties) throws Exception {
+        Map<String,String> properties = new LinkedHashMap<String,String>();
+        properties.put(ElasticsearchAdapter.Properties.API_URL, server.getUrl());
+        properties.put(ElasticsearchAdapter.Properties.METRICS_REGISTRY, ElasticsearchAdapter.METRICS_REGISTRY_NONE);
+        properties.put(ElasticsearchAdapter.Properties.RETRY_BACKOFF, "1");
+        properties.putAll(extraProperties);
+        adapter = new ElasticsearchAdapter();
+        adapter.setProperties(properties);
+        adapter.initialize();
+        return adapter;
+    }
+
+    private BridgeRequest buildRequest(String pageSize) {
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("examples");
+        request.setQuery("*");
+        request.setFields(Arrays.asList("_source.field0", "_source.field1"));
+        request.setParameters(new LinkedHashMap<String,String>());
+        Map<String,String> metadata = new LinkedHashMap<String,String>();
+        if (pageSize != null) {
+            metadata.put("pageSize", pageSize);
+            metadata.put("offset", "0");
+        }
+        request.setMetadata(metadata);
+        return request;
+    }
+
+    @Test
+    public void test_searchAndCount() throws Exception {
+        initializeAdapter(Collections.<String,String>emptyMap());
+        BridgeRequest request = buildRequest("10");
+
+        RecordList records = adapter.search(request);
+        assertEquals(10, records.getRecords().size());
+        assertEquals("value 0-0", records.getRecords().get(0).getValue("_source.field0"));
+        assertEquals("10", records.getMetadata().get("size"));
+        assertEquals("25", records.getMetadata().get("count"));
+
+        Count count = adapter.count(request);
+        assertEquals(Integer.valueOf(25), count.getValue());
+    }
+
+    @Test
+    public void test_emptyFilteredResults() throws Exception {
+        server.setTotalHits(0);
+        for (String parsing : Arrays.asList(ElasticsearchAdapter.RESPONSE_PARSING_STANDARD, ElasticsearchAdapter.RESPONSE_PARSING_STREAMING)) {
+            Map<String,String> properties = new LinkedHashMap<String,String>();
+            properties.put(ElasticsearchAdapter.Properties.RESPONSE_PARSING, parsing);
+            initializeAdapter(properties);
+
+            RecordList records = adapter.search(buildRequest("10"));
+            assertEquals(0, records.getRecords().size());
+            assertEquals("0", records.getMetadata().get("size"));
+            assertNull(adapter.retrieve(buildRequest(null)).getRecord());
+
+            List<ElasticsearchBatchResult> results = adapter.batch(Arrays.asList(
+                ElasticsearchBatchRequest.search(buildRequest("5")),
+                ElasticsearchBatchRequest.search(buildRequest("10"))
+            ));
+            assertNull(results.get(0).getError());
+            assertEquals(0, results.get(0).getRecordList().getRecords().size());
+            assertEquals(0, results.get(1).getRecordList().getRecords().size());
+            adapter.destroy();
+            adapter = null;
+        }
+    }
+
+    @Test
+    public void test_batch() throws Exception {
+        Map<String,String> properties = new LinkedHashMap<String,String>();
+        properties.put(ElasticsearchAdapter.Properties.COUNT_METHOD, ElasticsearchAdapter.COUNT_METHOD_SEARCH_TOTALS);
+        initializeAdapter(properties);
+
+        List<ElasticsearchBatchResult> results = adapter.batch(Arrays.asList(
+            ElasticsearchBatchRequest.search(buildRequest("5")),
+            ElasticsearchBatchRequest.count(buildRequest(null))
+        ));
+        assertEquals(1, server.getRequestCount());
+        assertEquals(5, results.get(0).getRecordList().getRecords().size());
+        assertEquals(Integer.valueOf(25), results.get(1).getCount().getValue());
+    }
+
+    @Test
+    public void test_batchCountApi() throws Exception {
+        initializeAdapter(Collections.<String,String>emptyMap());
+        server.setFixture("/examples/_count", "{\"count\":7}");
+
+        // Counts made with the count API are sent with _count, outside of the _msearch request.
+        List<ElasticsearchBatchResult> results = adapter.batch(Arrays.asList(
+            ElasticsearchBatchRequest.search(buildRequest("5")),
+            ElasticsearchBatchRequest.count(buildRequest(null))
+        ));
+        assertEquals(2, server.getRequestCount());
+        assertEquals(5, results.get(0).getRecordList().getRecords().size());
+        assertEquals(Integer.valueOf(7), results.get(1).getCount().getValue());
+    }
+
+    @Test
+    public void test_microBatchedCounts() throws Exception {
+        Map<String,String> properties = new LinkedHashMap<String,String>();
+        properties.put(ElasticsearchAdapter.Properties.MICRO_BATCH_WINDOW, "5");
+        initializeAdapter(properties);
+        server.setFixture("/examples/_count", "{\"count\":7}");
+
+        // The count API is used unless counts are read from search totals.
+        assertEquals(Integer.valueOf(7), adapter.count(buildRequest(null)).getValue());
+        assertEquals(0, adapter.getMicroBatcher().getFlushes());
+
+        adapter.destroy();
+        properties.put(ElasticsearchAdapter.Properties.COUNT_METHOD, ElasticsearchAdapter.COUNT_METHOD_SEARCH_TOTALS);
+        initializeAdapter(properties);
+        assertEquals(Integer.valueOf(25), adapter.count(buildRequest(null)).getValue());
+        assertEquals(1, adapter.getMicroBatcher().getFlushes());
+    }
+
+    @Test
+    public void test_searchAfterClosesPointInTime() throws Exception {
+        initializeAdapter(Collections.<String,String>emptyMap());
+        BridgeRequest request = buildRequest("10");
+        request.setQuery("{\"type\":\"Elasticsearch DSL\",\"paginationMode\":\"searchAfter\",\"query\":\"{\\\"match_all\\\":{}}\"}");
+
+        RecordList records = adapter.search(request);
+        assertEquals(10, records.getRecords().size());
+        assertEquals(1, server.getOpenPointInTimeCount());
+
+        // A first page that can not be read closes the point in time it opened.
+        server.setFixture("/_search", "{\"took\":1}");
+        try {
+            adapter.search(request);
+            fail("Expected the unreadable page to fail the search.");
+        } catch (RuntimeException e) {
+        }
+        assertEquals(1, server.getOpenPointInTimeCount());
+    }
+
+    @Test
+    public void test_export() throws Exception {
+        initializeAdapter(Collections.<String,String>emptyMap());
+        final Set<Object> values = Collections.synchronizedSet(new HashSet<Object>());
+        ElasticsearchRecordHandler handler = new ElasticsearchRecordHandler() {
+            @Override
+            public void handle(Record record) throws BridgeError {
+                values.add(record.getValue("_source.field0"));
+            }
+        };
+
+        assertEquals(25, adapter.export(buildRequest("4"), handler));
+        assertEquals(25, values.size());
+        assertEquals(0, server.getOpenScrollCount());
+
+        values.clear();
+        assertEquals(25, adapter.export(buildRequest("4"), handler, 3));
+        assertEquals(25, values.size());
+        assertEquals(0, server.getOpenScrollCount());
+    }
+
+    @Test
+    public void test_exportSliceFailure() throws Exception {
+        initializeAdapter(Collections.<String,String>emptyMap());
+        server.setTotalHits(100);
+        final Set<Object> values = Collections.synchronizedSet(new HashSet<Object>());
+        // The second slice reads documents 25 to 49, so it fails on its second batch.
+        ElasticsearchRecordHandler handler = new ElasticsearchRecordHandler() {
+            @Override
+            public void handle(Record record) throws BridgeError {
+                Object value = record.getValue("_source.field0");
+                if ("value 37-0".equals(value)) {
+                    throw new BridgeError("Unable to handle " + value);
+                }
+                values.add(value);
+            }
+        };
+
+        try {
+            adapter.export(buildRequest("10"), handler, 4);
+            fail("Expected the failed slice to fail the export.");
+        } catch (BridgeError e) {
+            assertEquals("Unable to handle value 37-0", e.getMessage());
+        }
+        // The slices stop after the batch they are reading, and every scroll is cleared.
+        assertTrue(values.size() < 100);
+        assertTrue(values.contains("value 35-0"));
+        assertEquals(0, server.getOpenScrollCount());
+    }
+
+    @Test
+    public void test_injectedErrors() throws Exception {
+        Map<String,String> properties = new LinkedHashMap<String,String>();
+        properties.put(ElasticsearchAdapter.Properties.MAX_RETRIES, "0");
+        initializeAdapter(properties);
+        server.setErrorRate(1, 503);
+
+        try {
+            adapter.search(buildRequest("10"));
+            fail("Expected the injected error to fail the search.");
+        } catch (BridgeError e) {
+            assertTrue(e.getMessage().contains("503"));
+        }
+        assertEquals(1, server.getInjectedErrorCount());
+    }
+
+    @Test
+    public void test_retriesInjectedErrors() throws Exception {
+        Map<String,String> properties = new LinkedHashMap<String,String>();
+        properties.put(ElasticsearchAdapter.Properties.MAX_RETRIES, "20");
+        initializeAdapter(properties);
+        server.setErrorRate(0.5, 429);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(10, adapter.search(buildRequest("10")).getRecords().size());
+        }
+        assertEquals(10 + server.getInjectedErrorCount(), server.getRequestCount());
+    }
+
+    @Test
+    public void test_timeoutNotRetried() throws Exception {
+        Map<String,String> properties = new LinkedHashMap<String,String>();
+        properties.put(ElasticsearchAdapter.Properties.MAX_RETRIES, "2");
+        properties.put(ElasticsearchAdapter.Properties.SOCKET_TIMEOUT, "100");
+        initializeAdapter(properties);
+        server.setLatency(500, 0);
+
+        try {
+            adapter.search(buildRequest("10"));
+            fail("Expected the slow response to time out the search.");
+        } catch (BridgeError e) {
+        }
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void test_scrollSearchNotRetried() throws Exception {
+        Map<String,String> properties = new LinkedHashMap<String,String>();
+        properties.put(ElasticsearchAdapter.Properties.MAX_RETRIES, "3");
+        initializeAdapter(properties);
+        server.setErrorRate(1, 503);
+
+        try {
+            adapter.export(buildRequest("4"), new ElasticsearchRecordHandler() {
+                @Override
+                public void handle(Record record) throws BridgeError {
+                }
+            });
+            fail("Expected the injected error to fail the export.");
+        } catch (BridgeError e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("503"));
+        }
+        // The search that opens the scroll is sent once, a retry could leave a scroll open.
+        assertEquals(1, server.getRequestCount());
+        assertEquals(0, server.getOpenScrollCount());
+
+        // Searches without a scroll are retried.
+        try {
+            adapter.search(buildRequest("10"));
+            fail("Expected the injected error to fail the search.");
+        } catch (BridgeError e) {
+            assertEquals(1 + 4, server.getRequestCount());
+        }
+    }
+
+    @Test
+    public void test_compression() throws Exception {
+        server.setTotalHits(200).setFieldCount(10);
+        Map<String,String> properties = new LinkedHashMap<String,String>();
+        properties.put(ElasticsearchAdapter.Properties.METRICS_REGISTRY, ElasticsearchAdapter.METRICS_REGISTRY_JMX);
+        properties.put(ElasticsearchAdapter.Properties.REQUEST_COMPRESSION_THRESHOLD, "100");
+        initializeAdapter(properties);
+        BridgeRequest request = buildRequest("100");
+
+        // The search body is under the threshold, the _msearch payload of two searches is not.
+        RecordList records = adapter.search(request);
+        assertEquals(100, records.getRecords().size());
+        assertEquals("value 99-0", records.getRecords().get(99).getValue("_source.field0"));
+        assertEquals(0, server.getCompressedRequestCount());
+        assertEquals(1, server.getCompressedResponseCount());
+
+        List<ElasticsearchBatchResult> results = adapter.batch(Arrays.asList(
+            ElasticsearchBatchRequest.search(request),
+            ElasticsearchBatchRequest.search(request)
+        ));
+        assertEquals(100, results.get(1).getRecordList().getRecords().size());
+        assertEquals(1, server.getCompressedRequestCount());
+
+        ElasticsearchMetrics metrics = (ElasticsearchMetrics)adapter.getMetrics();
+        ElasticsearchHistogram.Snapshot responseBytes = metrics.getValues("search.responseBytes").snapshot();
+        ElasticsearchHistogram.Snapshot responseBytesSaved = metrics.getValues("search.responseBytesSaved").snapshot();
+        assertTrue(responseBytesSaved.getMax() > responseBytes.getMax());
+        assertTrue(metrics.getValues("batch.requestBytesSaved").snapshot().getMax() > 0);
+        assertNull(metrics.getValues("search.requestBytesSaved"));
+    }
+
+    @Test
+    public void test_compressionDisabled() throws Exception {
+        Map<String,String> properties = new LinkedHashMap<String,String>();
+        properties.put(ElasticsearchAdapter.Properties.COMPRESS_RESPONSES, "false");
+        initializeAdapter(properties);
+
+        assertEquals(10, adapter.search(buildRequest("10")).getRecords().size());
+        assertEquals(0, server.getCompressedResponseCount());
+        assertEquals(0, server.getCompressedRequestCount());
+    }
+
+    @Test
+    public void test_binaryResponseFormats() throws Exception {
+        server.setFixture("/examples/_search", "{\"took\":3,\"hits\":{\"total\":{\"value\":2,\"relation\":\"eq\"},\"hits\":["
+            + "{\"_id\":\"1\",\"_source\":{\"field0\":\"caf\u00e9\",\"field1\":12,\"field2\":{\"score\":1.5,\"tags\":[\"a\",\"b\"]}}},"
+            + "{\"_id\":\"2\",\"_source\":{\"field0\":null,\"field1\":9007199254740993,\"field2\":{\"score\":-0.25,\"active\":true}}}]}}");
+        BridgeRequest request = buildRequest("10");
+        request.setFields(Arrays.asList("_source.field0", "_source.field1", "_source.field2", "_source.field2.score"));
+
+        for (String parsing : Arrays.asList(ElasticsearchAdapter.RESPONSE_PARSING_STANDARD, ElasticsearchAdapter.RESPONSE_PARSING_STREAMING)) {
+            String json = searchWithFormat(ElasticsearchAdapter.RESPONSE_FORMAT_JSON, parsing, request);
+            assertEquals(json, searchWithFormat(ElasticsearchAdapter.RESPONSE_FORMAT_SMILE, parsing, request));
+            assertEquals(json, searchWithFormat(ElasticsearchAdapter.RESPONSE_FORMAT_CBOR, parsing, request));
+        }
+    }
+
+    @Test
+    public void test_binaryErrorResponse() throws Exception {
+        Map<String,String> properties = new LinkedHashMap<String,String>();
+        properties.put(ElasticsearchAdapter.Properties.RESPONSE_FORMAT, ElasticsearchAdapter.RESPONSE_FORMAT_SMILE);
+        properties.put(ElasticsearchAdapter.Properties.MAX_RETRIES, "0");
+        initializeAdapter(properties);
+        server.setErrorRate(1, 400);
+
+        try {
+            adapter.count(buildRequest(null));
+            fail("Expected the injected error to fail the count.");
+        } catch (BridgeError e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Injected error"));
+        }
+    }
+
+    @Test
+    public void test_asynchronousQueries() throws Exception {
+        initializeAdapter(Collections.<String,String>emptyMap());
+        server.setLatency(100, 0);
+
+        CompletableFuture<RecordList> search = adapter.searchAsync(buildRequest("10"));
+        // The request is still in flight, so the dependent runs on the thread completing the search.
+        // It is waited for first, as a thread waiting for the search itself may run the dependent.
+        CompletableFuture<String> completingThread = search.thenApply(new Function<RecordList, String>() {
+            @Override
+            public String apply(RecordList records) {
+                return Thread.currentThread().getName();
+            }
+        });
+        assertTrue(completingThread.get(), completingThread.get().startsWith("elasticsearch-async-response-"));
+        RecordList records = search.get();
+        assertEquals(10, records.getRecords().size());
+        assertEquals("value 0-0", records.getRecords().get(0).getValue("_source.field0"));
+        assertEquals("25", records.getMetadata().get("count"));
+
+        assertEquals(Integer.valueOf(25), adapter.countAsync(buildRequest(null)).get().getValue());
+
+        server.setTotalHits(1);
+        Record record = adapter.retrieveAsync(buildRequest(null)).get();
+        assertEquals("value 0-0", record.getValue("_source.field0"));
+    }
+
+    @Test
+    public void test_asynchronousSearchAfter() throws Exception {
+        initializeAdapter(Collections.<String,String>emptyMap());
+        BridgeRequest request = buildRequest("10");
+        request.setQuery("{\"type\":\"Elasticsearch DSL\",\"paginationMode\":\"searchAfter\",\"query\":\"{\\\"match_all\\\":{}}\"}");
+
+        // Opening the point in time and the search are not waited for by the calling thread.
+        server.setLatency(100, 0);
+        CompletableFuture<RecordList> firstPage = adapter.searchAsync(request);
+        assertFalse(firstPage.isDone());
+        assertEquals(10, firstPage.get().getRecords().size());
+        assertEquals(1, server.getOpenPointInTimeCount());
+        server.setLatency(0, 0);
+
+        // Pages are read until a page that is not full, which closes the point in time.
+        List<Integer> pageSizes = new ArrayList<Integer>();
+        String firstValue = null;
+        String pageToken = null;
+        do {
+            if (pageToken != null) {
+                request.getMetadata().put("pageToken", pageToken);
+            }
+            RecordList records = adapter.searchAsync(request).get();
+            pageSizes.add(records.getRecords().size());
+            if (firstValue == null) {
+                assertEquals(2, server.getOpenPointInTimeCount());
+            }
+            firstValue = (String)records.getRecords().get(0).getValue("_source.field0");
+            pageToken = records.getMetadata().get("nextPageToken");
+        } while (pageToken != null);
+        assertEquals(Arrays.asList(10, 10, 5), pageSizes);
+        assertEquals("value 20-0", firstValue);
+        assertEquals(1, server.getOpenPointInTimeCount());
+
+        // A first page that can not be read closes the point in time it opened.
+        request.getMetadata().remove("pageToken");
+        server.setFixture("/_search", "{\"took\":1}");
+        try {
+            adapter.searchAsync(request).get();
+            fail("Expected the unreadable page to fail the search.");
+        } catch (ExecutionException e) {
+        }
+        assertEquals(1, server.getOpenPointInTimeCount());
+    }
+
+    @Test
+    public void test_asynchronousRetries() throws Exception {
+        Map<String,String> properties = new LinkedHashMap<String,String>();
+        properties.put(ElasticsearchAdapter.Properties.QUERY_EXECUTION, ElasticsearchAdapter.QUERY_EXECUTION_ASYNCHRONOUS);
+        properties.put(ElasticsearchAdapter.Properties.MAX_RETRIES, "20");
+        initializeAdapter(properties);
+        server.setErrorRate(0.5, 503);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(10, adapter.search(buildRequest("10")).getRecords().size());
+        }
+        assertEquals(10 + server.getInjectedErrorCount(), server.getRequestCount());
+    }
+
+    @Test
+    public void test_asynchronousFailover() throws Exception {
+        Map<String,String> properties = new LinkedHashMap<String,String>();
+        properties.put(ElasticsearchAdapter.Properties.QUERY_EXECUTION, ElasticsearchAdapter.QUERY_EXECUTION_ASYNCHRONOUS);
+        properties.put(ElasticsearchAdapter.Properties.MAX_RETRIES, "0");
+        // The first node refuses connections, requests sent to it are sent on to the mock server.
+        // Without a backoff it stays in rotation, so every other request is sent to it first.
+        properties.put(ElasticsearchAdapter.Properties.API_URL, "http://127.0.0.1:1," + server.getUrl());
+        properties.put(ElasticsearchAdapter.Properties.DEAD_NODE_BACKOFF, "0");
+        initializeAdapter(properties);
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(10, adapter.searchAsync(buildRequest("10")).get().getRecords().size());
+        }
+        assertEquals(4, server.getRequestCount());
+    }
+
+    @Test
+    public void test_asynchronousErrorResponse() throws Exception {
+        Map<String,String> properties = new LinkedHashMap<String,String>();
+        properties.put(ElasticsearchAdapter.Properties.QUERY_EXECUTION, ElasticsearchAdapter.QUERY_EXECUTION_ASYNCHRONOUS);
+        properties.put(ElasticsearchAdapter.Properties.MAX_RETRIES, "0");
+        initializeAdapter(properties);
+        server.setErrorRate(1, 400);
+
+        try {
+            adapter.searchAsync(buildRequest("10")).get();
+            fail("Expected the injected error to fail the search.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BridgeError);
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("Injected error"));
+        }
+        // Asynchronous query execution hands the same error to the blocking methods.
+        try {
+            adapter.count(buildRequest(null));
+            fail("Expected the injected error to fail the count.");
+        } catch (BridgeError e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Injected error"));
+        }
+        assertEquals(2, server.getInjectedErrorCount());
+    }
+
+    @Test
+    public void test_lazyRecords() throws Exception {
+        BridgeRequest request = buildRequest("10");
+        for (String parsing : Arrays.asList(ElasticsearchAdapter.RESPONSE_PARSING_STANDARD, ElasticsearchAdapter.RESPONSE_PARSING_STREAMING)) {
+            Map<String,String> properties = new LinkedHashMap<String,String>();
+            properties.put(ElasticsearchAdapter.Properties.RESPONSE_PARSING, parsing);
+            List<Record> expected = initializeAdapter(properties).search(request).getRecords();
+            adapter.destroy();
+
+            properties.put(ElasticsearchAdapter.Properties.LAZY_RECORDS, "true");
+            List<Record> records = initializeAdapter(properties).search(request).getRecords();
+            assertEquals(expected.size(), records.size());
+            ElasticsearchLazyRecord record = (ElasticsearchLazyRecord)records.get(3);
+            assertEquals("value 3-0", record.getValue("_source.field0"));
+            assertEquals(1, record.getResolvedCount());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getRecord(), records.get(i).getRecord());
+            }
+            adapter.destroy();
+            adapter = null;
+        }
+    }
+
+    @Test
+    public void test_columnarRecords() throws Exception {
+        server.setTotalHits(200).setFieldCount(4);
+        BridgeRequest request = buildRequest("200");
+        request.setFields(Arrays.asList("_id", "_source.field0", "_source.field1", "_source.field3"));
+        for (String parsing : Arrays.asList(ElasticsearchAdapter.RESPONSE_PARSING_STANDARD, ElasticsearchAdapter.RESPONSE_PARSING_STREAMING)) {
+            Map<String,String> properties = new LinkedHashMap<String,String>();
+            properties.put(ElasticsearchAdapter.Properties.RESPONSE_PARSING, parsing);
+            RecordList expected = initializeAdapter(properties).search(request);
+            adapter.destroy();
+
+            properties.put(ElasticsearchAdapter.Properties.COLUMNAR_RECORDS, "true");
+            properties.put(ElasticsearchAdapter.Properties.METRICS_REGISTRY, ElasticsearchAdapter.METRICS_REGISTRY_JMX);
+            RecordList records = initializeAdapter(properties).search(request);
+            assertTrue(records instanceof ElasticsearchColumnarRecordList);
+            assertEquals(expected.getMetadata(), records.getMetadata());
+            assertEquals(expected.getRecords().size(), records.getRecords().size());
+            for (int i = 0; i < expected.getRecords().size(); i++) {
+                assertEquals(expected.getRecords().get(i).getRecord(), records.getRecords().get(i).getRecord());
+            }
+            assertEquals("int", ((ElasticsearchColumnarRecordList)records).getStorage("_source.field1"));
+
+            ElasticsearchMetrics metrics = (ElasticsearchMetrics)adapter.getMetrics();
+            assertEquals(((ElasticsearchColumnarRecordList)records).getBytesSaved(),
+                metrics.getValues("search.recordBytesSaved").snapshot().getMax());
+            adapter.destroy();
+            adapter = null;
+        }
+    }
+
+    @Test
+    public void test_parallelExtraction() throws Exception {
+        server.setTotalHits(500).setFieldCount(4);
+        BridgeRequest request = buildRequest("500");
+        request.setFields(Arrays.asList("_id", "_source.field0", "_source.field1", "_source.missing"));
+        List<Record> expected = initializeAdapter(Collections.<String,String>emptyMap()).search(request).getRecords();
+        adapter.destroy();
+
+        for (String columnar : Arrays.asList("false", "true")) {
+            Map<String,String> properties = new LinkedHashMap<String,String>();
+            properties.put(ElasticsearchAdapter.Properties.PARALLEL_EXTRACTION_THRESHOLD, "100");
+            properties.put(ElasticsearchAdapter.Properties.PARALLEL_EXTRACTION_THREADS, "3");
+            properties.put(ElasticsearchAdapter.Properties.COLUMNAR_RECORDS, columnar);
+            List<Record> records = initializeAdapter(properties).search(request).getRecords();
+            assertEquals(expected.size(), records.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getRecord(), records.get(i).getRecord());
+            }
+            adapter.destroy();
+            adapter = null;
+        }
+    }
+
+    private String searchWithFormat(String format, String parsing, BridgeRequest request) throws Exception {
+        Map<String,String> properties = new LinkedHashMap<String,String>();
+        properties.put(ElasticsearchAdapter.Properties.RESPONSE_FORMAT, format);
+        properties.put(ElasticsearchAdapter.Properties.RESPONSE_PARSING, parsing);
+        initializeAdapter(properties);
+        try {
+            return adapter.search(request).toJsonString() + adapter.count(request).getValue();
+        } finally {
+            adapter.destroy();
+            adapter = null;
+        }
+    }
+
+    @Test
+    public void test_loadDriver() throws Exception {
+        initializeAdapter(Collections.<String,String>emptyMap());
+        server.setLatency(2, 2);
+        final BridgeRequest request = buildRequest("10");
+
+        ElasticsearchLoadDriver.Result result = ElasticsearchLoadDriver.run(new ElasticsearchLoadDriver.Operation() {
+            @Override
+            public void execute() throws Exception {
+                adapter.search(request);
+            }
+        }, 4, 300);
+
+        assertEquals(0, result.getErrors());
+        assertTrue(result.getOperations() > 0);
+        assertEquals(result.getOperations(), server.getRequestCount());
+        assertTrue(result.getLatency(0.5) >= 2);
+        assertTrue(result.getMaxLatency() >= result.getLatency(0.99));
+    }
+
+}